@@ -0,0 +1,226 @@
+package org.apache.directory.scim.server.patch.metadata;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.directory.scim.spec.annotation.ScimAttribute;
+import org.apache.directory.scim.spec.annotation.ScimExtensionType;
+import org.apache.directory.scim.spec.annotation.ScimResourceType;
+
+/**
+ * Generates the {@code PatchMetadata} of compiled SCIM resource and extension classes, so the patch engine resolves
+ * the element classes of multi-valued attributes without reading fields and generic types at runtime.
+ * <p>
+ * The resource classes the server serves come precompiled in the spec jar, so they are read with reflection once, at
+ * build time: the {@code scim-server-patch} module runs {@link #main} in {@code generate-sources} with the classes to
+ * generate for. For a class {@code Foo} it writes {@code Foo_PatchMetadata} into the
+ * {@value #PACKAGE} package, with the schema URN of its {@code @ScimResourceType} or {@code @ScimExtensionType} and the
+ * element classes of the {@code @ScimAttribute} fields of type {@code Collection<E>}, of the class and its
+ * superclasses, and one level down, of the attributes' complex types. The generated classes are listed in
+ * {@code META-INF/services}, the engine loads them with the {@link java.util.ServiceLoader}.
+ *
+ * @since 2.23
+ */
+public final class PatchMetadataGenerator {
+  static final String PACKAGE = "org.apache.directory.scim.server.patch.metadata";
+  static final String PATCH_METADATA = "org.apache.directory.scim.server.patch.utility.PatchMetadata";
+  static final String SUFFIX = "_PatchMetadata";
+
+  private final Path sources;
+  private final Path resources;
+  private final Set<String> generated = new TreeSet<>();
+
+  /**
+   * @param sources   the root directory of the generated sources
+   * @param resources the root directory of the generated resources, for the service registration
+   */
+  public PatchMetadataGenerator(final Path sources, final Path resources) {
+    this.sources = sources;
+    this.resources = resources;
+  }
+
+  /**
+   * @param args the sources directory, the resources directory and the names of the classes to generate for
+   * @throws Exception if a class can't be loaded, has no schema URN or the output can't be written
+   */
+  public static void main(final String[] args) throws Exception {
+    if (args.length < 3) {
+      throw new IllegalArgumentException("Expected <sources> <resources> <class>... but found " + Arrays.toString(args));
+    }
+
+    final PatchMetadataGenerator generator = new PatchMetadataGenerator(Paths.get(args[0]), Paths.get(args[1]));
+    for (String className : Arrays.asList(args).subList(2, args.length)) {
+      generator.generate(Class.forName(className, false, PatchMetadataGenerator.class.getClassLoader()));
+    }
+    generator.services();
+  }
+
+  /**
+   * Write the {@code PatchMetadata} source of the {@code type}.
+   *
+   * @param type a class annotated with {@code @ScimResourceType} or {@code @ScimExtensionType}
+   * @throws IOException if the source can't be written
+   */
+  public void generate(final Class<?> type) throws IOException {
+    final String urn = urn(type);
+    if (urn == null || urn.isEmpty()) {
+      throw new IllegalArgumentException("No schema URN on " + type.getName() + ", no patch metadata");
+    }
+
+    final Map<String, String> elementClasses = new LinkedHashMap<>();
+    for (Field field : attributes(type)) {
+      final String name = attributeName(field);
+      final Class<?> element = elementType(field);
+      if (element != null) {
+        elementClasses.put(name, element.getCanonicalName());
+      }
+
+      // one level down, the multi-valued sub-attributes of complex attributes
+      final Class<?> complex = element != null ? element : field.getType();
+      if (!complex.isPrimitive() && !complex.isArray() && !complex.getName().startsWith("java.")) {
+        for (Field subField : attributes(complex)) {
+          final Class<?> subElement = elementType(subField);
+          if (subElement != null) {
+            elementClasses.put(name + "." + attributeName(subField), subElement.getCanonicalName());
+          }
+        }
+      }
+    }
+
+    final String simpleName = generatedName(type);
+    final Path file = sources.resolve(PACKAGE.replace('.', '/')).resolve(simpleName + ".java");
+    Files.createDirectories(file.getParent());
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write(source(PACKAGE, simpleName, type.getCanonicalName(), urn, elementClasses));
+    }
+    generated.add(PACKAGE + "." + simpleName);
+  }
+
+  /**
+   * Register the classes written by {@link #generate} as {@code PatchMetadata} services.
+   *
+   * @throws IOException if the registration can't be written
+   */
+  public void services() throws IOException {
+    final Path file = resources.resolve("META-INF/services").resolve(PATCH_METADATA);
+    Files.createDirectories(file.getParent());
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (String it : generated) {
+        writer.write(it);
+        writer.write('\n');
+      }
+    }
+  }
+
+  static String source(final String packageName, final String simpleName, final String type, final String urn,
+                       final Map<String, String> elementClasses) {
+    final StringBuilder source = new StringBuilder();
+    source.append("package ").append(packageName).append(";\n\n")
+      .append("/**\n")
+      .append(" * Patch metadata of {@link ").append(type).append("}, generated, don't edit.\n")
+      .append(" */\n")
+      .append("public final class ").append(simpleName).append(" implements ").append(PATCH_METADATA).append(" {\n")
+      .append("  private static final java.util.Map<String, Class<?>> ELEMENT_CLASSES;\n\n")
+      .append("  static {\n")
+      .append("    final java.util.Map<String, Class<?>> elementClasses = new java.util.HashMap<>();\n");
+    for (Map.Entry<String, String> it : elementClasses.entrySet()) {
+      source.append("    elementClasses.put(\"").append(escape(it.getKey())).append("\", ")
+        .append(it.getValue()).append(".class);\n");
+    }
+    source.append("    ELEMENT_CLASSES = java.util.Collections.unmodifiableMap(elementClasses);\n")
+      .append("  }\n\n")
+      .append("  @Override\n")
+      .append("  public String urn() {\n")
+      .append("    return \"").append(escape(urn)).append("\";\n")
+      .append("  }\n\n")
+      .append("  @Override\n")
+      .append("  public Class<?> type() {\n")
+      .append("    return ").append(type).append(".class;\n")
+      .append("  }\n\n")
+      .append("  @Override\n")
+      .append("  public java.util.Map<String, Class<?>> elementClasses() {\n")
+      .append("    return ELEMENT_CLASSES;\n")
+      .append("  }\n")
+      .append("}\n");
+
+    return source.toString();
+  }
+
+  private static String urn(final Class<?> type) {
+    final ScimResourceType resourceType = type.getAnnotation(ScimResourceType.class);
+    if (resourceType != null) {
+      return resourceType.schema();
+    }
+
+    final ScimExtensionType extensionType = type.getAnnotation(ScimExtensionType.class);
+    return extensionType == null ? null : extensionType.id();
+  }
+
+  /**
+   * @return Returns the {@code @ScimAttribute} fields of {@code type} and its superclasses, superclasses first
+   */
+  private static List<Field> attributes(final Class<?> type) {
+    final List<Field> attributes = new ArrayList<>();
+    final Class<?> superclass = type.getSuperclass();
+    if (superclass != null && !Object.class.equals(superclass)) {
+      attributes.addAll(attributes(superclass));
+    }
+
+    for (Field field : type.getDeclaredFields()) {
+      if (!Modifier.isStatic(field.getModifiers()) && field.isAnnotationPresent(ScimAttribute.class)) {
+        attributes.add(field);
+      }
+    }
+
+    return attributes;
+  }
+
+  /**
+   * @return Returns the element class of a {@code Collection<E>} field, or {@code null} for any other type
+   */
+  private static Class<?> elementType(final Field field) {
+    if (!Collection.class.isAssignableFrom(field.getType()) || !(field.getGenericType() instanceof ParameterizedType)) {
+      return null;
+    }
+
+    final Type[] arguments = ((ParameterizedType) field.getGenericType()).getActualTypeArguments();
+    return arguments.length == 1 && arguments[0] instanceof Class ? (Class<?>) arguments[0] : null;
+  }
+
+  private static String attributeName(final Field field) {
+    final String name = field.getAnnotation(ScimAttribute.class).name();
+    return name == null || name.isEmpty() ? field.getName() : name;
+  }
+
+  /**
+   * @return Returns {@code Outer_Inner_PatchMetadata} for nested classes, {@code Foo_PatchMetadata} otherwise
+   */
+  private static String generatedName(final Class<?> type) {
+    final StringBuilder name = new StringBuilder(type.getSimpleName());
+    for (Class<?> enclosing = type.getEnclosingClass(); enclosing != null; enclosing = enclosing.getEnclosingClass()) {
+      name.insert(0, enclosing.getSimpleName() + "_");
+    }
+
+    return name.append(SUFFIX).toString();
+  }
+
+  private static String escape(final String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}
@@ -0,0 +1,59 @@
+package org.apache.directory.scim.server.patch.metadata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PatchMetadataGeneratorUnitTest {
+
+  @TempDir
+  Path output;
+
+  @Test
+  void main_specResources_metadataAndServicesWritten() throws Exception {
+    PatchMetadataGenerator.main(new String[] {
+      output.resolve("java").toString(),
+      output.resolve("resources").toString(),
+      ScimUser.class.getName(),
+      ScimGroup.class.getName(),
+      EnterpriseExtension.class.getName()
+    });
+
+    final String user = read("java/org/apache/directory/scim/server/patch/metadata/ScimUser_PatchMetadata.java");
+    assertThat(user)
+      .contains("return \"" + ScimUser.SCHEMA_URI + "\";")
+      .contains("return " + ScimUser.class.getCanonicalName() + ".class;")
+      .contains("elementClasses.put(\"emails\", " + Email.class.getCanonicalName() + ".class);")
+      .doesNotContain("\"userName\"");
+    assertThat(read("java/org/apache/directory/scim/server/patch/metadata/ScimGroup_PatchMetadata.java"))
+      .contains("elementClasses.put(\"members\", ");
+    assertThat(read("java/org/apache/directory/scim/server/patch/metadata/EnterpriseExtension_PatchMetadata.java"))
+      .contains("return \"" + EnterpriseExtension.URN + "\";");
+    assertThat(read("resources/META-INF/services/" + PatchMetadataGenerator.PATCH_METADATA)).isEqualTo(
+      "org.apache.directory.scim.server.patch.metadata.EnterpriseExtension_PatchMetadata\n"
+        + "org.apache.directory.scim.server.patch.metadata.ScimGroup_PatchMetadata\n"
+        + "org.apache.directory.scim.server.patch.metadata.ScimUser_PatchMetadata\n");
+  }
+
+  @Test
+  void generate_classWithoutSchema_throwsIllegalArgumentException() {
+    final PatchMetadataGenerator generator = new PatchMetadataGenerator(output, output);
+
+    assertThrows(IllegalArgumentException.class, () -> generator.generate(Email.class));
+  }
+
+  private String read(final String path) throws IOException {
+    return new String(Files.readAllBytes(output.resolve(path)), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,118 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+/**
+ * The top-level attributes of a resource a patch operation reads or writes.
+ * <p>
+ * Used as a Jackson property filter, only the attributes in scope of the resource itself are materialised in its map
+ * tree, nested values and extensions are serialized as usual. {@link #absentAsNull} marks the attributes the
+ * operation removed from the map tree, so updating the resource from the map tree writes back exactly the
+ * attributes in scope.
+ *
+ * @since 2.23
+ */
+final class AttributeScope extends SimpleBeanPropertyFilter {
+  static final String FILTER_ID = "scim.patch.attributeScope";
+
+  private final Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+  private final Set<String> materialised = new HashSet<>();
+  private Object root;
+
+  private AttributeScope() {
+  }
+
+  /**
+   * @param operation the patch operation
+   * @return Returns the scope of the {@code operation}, or {@code null} if all attributes are in scope
+   */
+  static AttributeScope of(final PatchOperation operation) {
+    if (operation.getPath() == null || operation.getPath().getValuePathExpression() == null) {
+      return null;
+    }
+
+    final AttributeReference reference = operation.getPath().getValuePathExpression().getAttributePath();
+    if (reference == null || reference.getAttributeName() == null) {
+      return null;
+    }
+
+    final AttributeScope scope = new AttributeScope();
+    scope.names.add(PatchOperations.SCHEMAS);
+    scope.names.add(reference.getAttributeName());
+    if (reference.getUrn() != null) {
+      scope.names.add(reference.getUrn());
+    }
+
+    return scope;
+  }
+
+  /**
+   * @param operations the patch operations applied to the same map tree
+   * @return Returns the union of the scopes of the {@code operations}, or {@code null} if all attributes are in scope
+   */
+  static AttributeScope of(final Collection<PatchOperation> operations) {
+    final AttributeScope scope = new AttributeScope();
+    for (PatchOperation operation : operations) {
+      final AttributeScope it = of(operation);
+      if (it == null) {
+        return null;
+      }
+      scope.names.addAll(it.names);
+    }
+
+    return scope;
+  }
+
+  /**
+   * @param root the resource about to be represented as a map tree
+   * @return Returns the filters restricting {@code root} to this scope
+   */
+  FilterProvider filters(final Object root) {
+    this.root = root;
+    return new SimpleFilterProvider().addFilter(FILTER_ID, this);
+  }
+
+  /**
+   * Put {@code null} for the attributes that were materialised but are no longer in the {@code resourceAsMap}.
+   *
+   * @param resourceAsMap the patched map tree
+   */
+  void absentAsNull(final Map<String, Object> resourceAsMap) {
+    for (String name : materialised) {
+      resourceAsMap.putIfAbsent(name, null);
+    }
+  }
+
+  @Override
+  public void serializeAsField(final Object pojo, final JsonGenerator jgen, final SerializerProvider provider,
+                               final PropertyWriter writer) throws Exception {
+    if (pojo != root) {
+      writer.serializeAsField(pojo, jgen, provider);
+    } else if (names.contains(writer.getName())) {
+      materialised.add(writer.getName());
+      writer.serializeAsField(pojo, jgen, provider);
+    }
+  }
+
+  /**
+   * Applies the filter to every bean, the filter itself only restricts the root resource.
+   */
+  @JsonFilter(FILTER_ID)
+  abstract static class MixIn {
+  }
+}
@@ -0,0 +1,469 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.Locale;
+
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
+import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
+import org.apache.directory.scim.spec.protocol.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.protocol.filter.AttributePresentExpression;
+import org.apache.directory.scim.spec.protocol.filter.CompareOperator;
+import org.apache.directory.scim.spec.protocol.filter.FilterExpression;
+import org.apache.directory.scim.spec.protocol.filter.GroupExpression;
+import org.apache.directory.scim.spec.protocol.filter.LogicalExpression;
+import org.apache.directory.scim.spec.protocol.filter.LogicalOperator;
+import org.apache.directory.scim.spec.protocol.filter.ValuePathExpression;
+
+/**
+ * A hand-written recursive-descent parser for the filter grammar of section 3.4.2.2 of RFC7644 and for patch paths
+ * with a value filter, section 3.5.2 of RFC7644.
+ * <p>
+ * It builds the same {@link FilterExpression} tree as the ANTLR grammar: attribute paths inside a value filter are
+ * qualified with the filtered attribute, {@code and} binds tighter than {@code or}, both are left associative, and
+ * {@code not(...)}/{@code (...)} become a {@link GroupExpression}. The input is scanned in place, only the tree itself
+ * and its strings are allocated, there are no tokens, parse-tree contexts or visitors.
+ * <p>
+ * Input the parser doesn't accept yields {@code null}, the caller falls back to the ANTLR grammar, which also reports
+ * the syntax error.
+ *
+ * @since 2.23
+ */
+final class DescentFilterParser {
+  private final String text;
+  private int position;
+
+  private DescentFilterParser(final String text) {
+    this.text = text;
+  }
+
+  /**
+   * @param filter the filter, e.g. {@code emails[type eq "work"] and userName sw "b"}
+   * @return Returns the parsed filter, or {@code null} if it isn't accepted
+   */
+  static FilterExpression parseFilter(final String filter) {
+    if (filter == null) {
+      return null;
+    }
+
+    final DescentFilterParser parser = new DescentFilterParser(filter);
+    final FilterExpression expression = parser.filter(null);
+    return expression != null && parser.atEnd() ? expression : null;
+  }
+
+  /**
+   * @param path the patch path, e.g. {@code emails[type eq "work"].value}
+   * @return Returns the parsed path, or {@code null} if it isn't accepted
+   */
+  static PatchOperationPath parsePath(final String path) {
+    if (path == null) {
+      return null;
+    }
+
+    final DescentFilterParser parser = new DescentFilterParser(path);
+    final ValuePathExpression expression = parser.path();
+    if (expression == null || !parser.atEnd()) {
+      return null;
+    }
+
+    final PatchOperationPath parsed = new PatchOperationPath();
+    parsed.setValuePathExpression(expression);
+    return parsed;
+  }
+
+  /**
+   * PATH = attrPath / valuePath [subAttr]
+   */
+  private ValuePathExpression path() {
+    final AttributeReference attribute = attributePath(null);
+    if (attribute == null) {
+      return null;
+    }
+
+    if (!consume('[')) {
+      return new ValuePathExpression(attribute);
+    }
+    if (attribute.getSubAttributeName() != null) {
+      return null;
+    }
+
+    final FilterExpression filter = filter(attribute);
+    if (filter == null || !consume(']')) {
+      return null;
+    }
+
+    String subAttributeName = null;
+    if (consume('.')) {
+      subAttributeName = name();
+      if (subAttributeName == null) {
+        return null;
+      }
+    }
+
+    return new ValuePathExpression(
+      new AttributeReference(attribute.getUrn(), attribute.getAttributeName(), subAttributeName), filter);
+  }
+
+  /**
+   * filter = term *("or" term)
+   *
+   * @param parent the filtered attribute within a value filter, {@code null} otherwise
+   */
+  private FilterExpression filter(final AttributeReference parent) {
+    FilterExpression left = term(parent);
+    while (left != null && keyword("or")) {
+      final FilterExpression right = term(parent);
+      if (right == null) {
+        return null;
+      }
+      left = new LogicalExpression(left, LogicalOperator.OR, right);
+    }
+
+    return left;
+  }
+
+  /**
+   * term = factor *("and" factor)
+   */
+  private FilterExpression term(final AttributeReference parent) {
+    FilterExpression left = factor(parent);
+    while (left != null && keyword("and")) {
+      final FilterExpression right = factor(parent);
+      if (right == null) {
+        return null;
+      }
+      left = new LogicalExpression(left, LogicalOperator.AND, right);
+    }
+
+    return left;
+  }
+
+  /**
+   * factor = ["not"] "(" filter ")" / attrPath "[" valFilter "]" / attrPath "pr" / attrPath compareOp compValue
+   */
+  private FilterExpression factor(final AttributeReference parent) {
+    skipSpaces();
+
+    final int start = position;
+    if (keyword("not")) {
+      skipSpaces();
+      if (peek() != '(') {
+        position = start;
+        return null;
+      }
+      return group(parent, true);
+    }
+    if (peek() == '(') {
+      return group(parent, false);
+    }
+
+    final AttributeReference attribute = attributePath(parent);
+    if (attribute == null) {
+      return null;
+    }
+
+    if (peek() == '[') {
+      // value paths can't be nested
+      if (parent != null || attribute.getSubAttributeName() != null) {
+        return null;
+      }
+      position++;
+      final FilterExpression filter = filter(attribute);
+      if (filter == null || !consume(']')) {
+        return null;
+      }
+      return new ValuePathExpression(attribute, filter);
+    }
+
+    if (keyword("pr")) {
+      return new AttributePresentExpression(attribute);
+    }
+
+    final CompareOperator operator = compareOperator();
+    if (operator == null || !space()) {
+      return null;
+    }
+
+    final int before = position;
+    final Object value = compareValue();
+    if (position == before) {
+      return null;
+    }
+
+    return new AttributeComparisonExpression(attribute, operator, value);
+  }
+
+  private FilterExpression group(final AttributeReference parent, final boolean not) {
+    position++;
+    final FilterExpression filter = filter(parent);
+    skipSpaces();
+    if (filter == null || !consume(')')) {
+      return null;
+    }
+
+    return new GroupExpression(not, filter);
+  }
+
+  /**
+   * attrPath = [URI ":"] ATTRNAME *1subAttr, within a value filter the path is relative to the filtered attribute
+   */
+  private AttributeReference attributePath(final AttributeReference parent) {
+    skipSpaces();
+
+    final int start = position;
+    while (position < text.length() && isPathChar(text.charAt(position))) {
+      position++;
+    }
+    if (start == position) {
+      return null;
+    }
+
+    final int colon = text.lastIndexOf(':', position - 1);
+    final String urn = colon >= start ? text.substring(start, colon) : null;
+    final int nameStart = colon >= start ? colon + 1 : start;
+    final int dot = text.indexOf('.', nameStart);
+    final int nameEnd = dot >= 0 && dot < position ? dot : position;
+
+    final String attributeName = text.substring(nameStart, nameEnd);
+    final String subAttributeName = nameEnd < position ? text.substring(nameEnd + 1, position) : null;
+    if (!isName(attributeName) || (subAttributeName != null && !isName(subAttributeName))) {
+      return null;
+    }
+
+    if (parent == null) {
+      return new AttributeReference(urn, attributeName, subAttributeName);
+    }
+
+    // within a value filter: "type" is "emails.type"
+    if (urn != null || subAttributeName != null) {
+      return null;
+    }
+    return new AttributeReference(parent.getUrn(), parent.getAttributeName(), attributeName);
+  }
+
+  private CompareOperator compareOperator() {
+    if (!space()) {
+      return null;
+    }
+
+    if (position + 2 > text.length()) {
+      return null;
+    }
+
+    final String operator = text.substring(position, position + 2).toUpperCase(Locale.ROOT);
+    for (CompareOperator it : CompareOperator.values()) {
+      if (it.name().equals(operator)) {
+        position += 2;
+        return it;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * compValue = false / null / true / number / string
+   */
+  private Object compareValue() {
+    if (peek() == '"') {
+      return string();
+    }
+
+    final int start = position;
+    while (position < text.length() && !isDelimiter(text.charAt(position))) {
+      position++;
+    }
+
+    final String token = text.substring(start, position);
+    if ("true".equalsIgnoreCase(token)) {
+      return Boolean.TRUE;
+    }
+    if ("false".equalsIgnoreCase(token)) {
+      return Boolean.FALSE;
+    }
+    if ("null".equalsIgnoreCase(token)) {
+      return null;
+    }
+
+    try {
+      if (token.indexOf('.') >= 0 || token.indexOf('e') >= 0 || token.indexOf('E') >= 0) {
+        return Double.parseDouble(token);
+      }
+      final long value = Long.parseLong(token);
+      return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (Object) (int) value : (Object) value;
+    } catch (NumberFormatException e) {
+      position = start;
+      return null;
+    }
+  }
+
+  /**
+   * A JSON string, section 7 of RFC7159.
+   */
+  private String string() {
+    final int start = position;
+    position++;
+
+    StringBuilder unescaped = null;
+    int run = position;
+    while (position < text.length()) {
+      final char c = text.charAt(position);
+      if (c == '"') {
+        final String value = unescaped == null
+          ? text.substring(run, position)
+          : unescaped.append(text, run, position).toString();
+        position++;
+        return value;
+      }
+
+      if (c == '\\') {
+        if (unescaped == null) {
+          unescaped = new StringBuilder();
+        }
+        unescaped.append(text, run, position);
+        if (position + 1 >= text.length()) {
+          break;
+        }
+
+        final char escaped = text.charAt(position + 1);
+        switch (escaped) {
+          case '"':
+          case '\\':
+          case '/':
+            unescaped.append(escaped);
+            break;
+          case 'b':
+            unescaped.append('\b');
+            break;
+          case 'f':
+            unescaped.append('\f');
+            break;
+          case 'n':
+            unescaped.append('\n');
+            break;
+          case 'r':
+            unescaped.append('\r');
+            break;
+          case 't':
+            unescaped.append('\t');
+            break;
+          case 'u':
+            if (position + 6 > text.length()) {
+              position = start;
+              return null;
+            }
+            try {
+              unescaped.append((char) Integer.parseInt(text.substring(position + 2, position + 6), 16));
+            } catch (NumberFormatException e) {
+              position = start;
+              return null;
+            }
+            position += 4;
+            break;
+          default:
+            position = start;
+            return null;
+        }
+        position += 2;
+        run = position;
+      } else {
+        position++;
+      }
+    }
+
+    // unterminated
+    position = start;
+    return null;
+  }
+
+  private String name() {
+    final int start = position;
+    while (position < text.length() && isNameChar(text.charAt(position))) {
+      position++;
+    }
+
+    final String name = text.substring(start, position);
+    return isName(name) ? name : null;
+  }
+
+  /**
+   * @return Returns {@code true} if the keyword, case-insensitive and preceded by spaces, was consumed
+   */
+  private boolean keyword(final String keyword) {
+    final int start = position;
+    skipSpaces();
+
+    final int end = position + keyword.length();
+    if (end <= text.length() && text.regionMatches(true, position, keyword, 0, keyword.length())
+      && (end == text.length() || !isNameChar(text.charAt(end)))) {
+      position = end;
+      return true;
+    }
+
+    position = start;
+    return false;
+  }
+
+  private boolean consume(final char c) {
+    if (peek() == c) {
+      position++;
+      return true;
+    }
+
+    return false;
+  }
+
+  private boolean space() {
+    if (peek() != ' ') {
+      return false;
+    }
+
+    skipSpaces();
+    return true;
+  }
+
+  private void skipSpaces() {
+    while (position < text.length() && text.charAt(position) == ' ') {
+      position++;
+    }
+  }
+
+  private boolean atEnd() {
+    skipSpaces();
+    return position == text.length();
+  }
+
+  private char peek() {
+    return position < text.length() ? text.charAt(position) : '\0';
+  }
+
+  private static boolean isName(final String name) {
+    if (name.isEmpty()) {
+      return false;
+    }
+    if ("$ref".equals(name)) {
+      return true;
+    }
+    if (!Character.isLetter(name.charAt(0))) {
+      return false;
+    }
+
+    for (int i = 1; i < name.length(); i++) {
+      if (!isNameChar(name.charAt(i))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean isNameChar(final char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '$';
+  }
+
+  private static boolean isPathChar(final char c) {
+    return isNameChar(c) || c == ':' || c == '.';
+  }
+
+  private static boolean isDelimiter(final char c) {
+    return c == ' ' || c == ')' || c == ']';
+  }
+}
@@ -0,0 +1,166 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.scim.spec.protocol.filter.FilterParseException;
+
+import com.google.common.collect.ImmutableList;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Primes the DFA cache of the filter grammar with a corpus of representative patch paths and value filters.
+ * <p>
+ * The generated ANTLR parser and lexer keep their DFA states and prediction contexts in static fields, shared by
+ * every instance, so parsing the corpus once at startup spares the first requests the full adaptive prediction. All
+ * grammar parsing of the engine goes through {@link PatchPathParser#grammar(String)}, the warm-up uses the same entry
+ * point. The first and the last pass over the corpus are timed, their difference is reported as the time saved.
+ * <p>
+ * The number of passes is set with {@code -Dscim.patch.warmup.grammarRounds}, {@code 0} disables the priming.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class FilterGrammarWarmup {
+  static final String ROUNDS_PROPERTY = "scim.patch.warmup.grammarRounds";
+  static final int DEFAULT_ROUNDS = 5;
+
+  /**
+   * Covers every alternative of the grammar: plain and URN qualified paths, the comparison operators, string,
+   * number, boolean and null values, presence, {@code and}/{@code or} precedence, grouping and negation.
+   */
+  static final List<String> CORPUS = ImmutableList.of(
+    "userName",
+    "name.givenName",
+    "urn:ietf:params:scim:schemas:core:2.0:User:name.familyName",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager.value",
+    "emails[type eq \"work\"]",
+    "emails[type eq \"work\"].value",
+    "emails[type ne \"home\" and primary eq true].display",
+    "emails[value ew \"@example.com\" or value sw \"admin\"]",
+    "emails[value co \"example\" and not (type eq \"home\")]",
+    "emails[(type eq \"work\" or type eq \"home\") and value pr]",
+    "emails[display eq null]",
+    "phoneNumbers[type eq \"mobile\" and primary eq false].value",
+    "addresses[postalCode gt \"90000\" and postalCode le \"99999\"].locality",
+    "addresses[type eq \"work\"].streetAddress",
+    "ims[type eq \"xmpp\"].value",
+    "photos[type eq \"thumbnail\"].value",
+    "entitlements[value eq \"admin\"]",
+    "roles[primary eq true and value ne \"guest\"]",
+    "x509Certificates[value pr]",
+    "members[value eq \"2819c223-7f76-453a-919d-413861904646\"]",
+    "members[value eq \"2819c223-7f76-453a-919d-413861904646\"].display",
+    "members[$ref eq \"https://example.com/v2/Users/2819c223\"]",
+    "members[type eq \"User\" and (value sw \"28\" or display ew \"Smith\")]",
+    "groups[value eq \"e9e30dba-f08f-4109-8486-d5c6a331660a\"]",
+    "meta[lastModified ge \"2011-05-13T04:42:34Z\" and lastModified lt \"2012-05-13T04:42:34Z\"]",
+    "emails[type eq \"work\" and value ew \"@example.com\" and primary eq true and display pr]");
+
+  private FilterGrammarWarmup() {
+  }
+
+  /**
+   * Prime with the {@link #CORPUS}, the {@code paths} and the configured number of passes.
+   *
+   * @param paths additional paths, e.g. derived from the registered schemas
+   * @return Returns the timings of the priming
+   */
+  static Priming prime(final Collection<String> paths) {
+    return prime(paths, Integer.getInteger(ROUNDS_PROPERTY, DEFAULT_ROUNDS));
+  }
+
+  /**
+   * @param paths  additional paths, e.g. derived from the registered schemas
+   * @param rounds the number of passes over the corpus
+   * @return Returns the timings of the priming
+   */
+  static Priming prime(final Collection<String> paths, final int rounds) {
+    if (rounds <= 0) {
+      return Priming.NONE;
+    }
+
+    final Set<String> corpus = new LinkedHashSet<>(CORPUS);
+    if (paths != null) {
+      corpus.addAll(paths);
+    }
+    final List<String> ordered = new ArrayList<>(corpus);
+
+    final long cold = pass(ordered);
+    long primed = cold;
+    for (int i = 1; i < rounds; i++) {
+      primed = pass(ordered);
+    }
+
+    final Priming priming = new Priming(ordered.size(), rounds, cold, primed);
+    log.info("Filter grammar primed with {} path(s) in {} pass(es), first pass {} µs, primed pass {} µs, {} µs saved",
+      priming.paths(), rounds, TimeUnit.NANOSECONDS.toMicros(cold), TimeUnit.NANOSECONDS.toMicros(primed),
+      TimeUnit.NANOSECONDS.toMicros(priming.savedNanos()));
+
+    return priming;
+  }
+
+  /**
+   * @return Returns the nanoseconds to parse the {@code paths} once
+   */
+  private static long pass(final List<String> paths) {
+    final long start = System.nanoTime();
+    for (String path : paths) {
+      try {
+        PatchPathParser.grammar(path);
+      } catch (FilterParseException | RuntimeException e) {
+        log.debug("Warm-up path '{}' not parsed, {}", path, e.getMessage());
+      }
+    }
+
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * The timings of a priming, the first pass runs against an empty DFA cache, the last against the primed one.
+   */
+  static final class Priming {
+    static final Priming NONE = new Priming(0, 0, 0L, 0L);
+
+    private final int paths;
+    private final int rounds;
+    private final long coldNanos;
+    private final long primedNanos;
+
+    Priming(final int paths, final int rounds, final long coldNanos, final long primedNanos) {
+      this.paths = paths;
+      this.rounds = rounds;
+      this.coldNanos = coldNanos;
+      this.primedNanos = primedNanos;
+    }
+
+    int paths() {
+      return paths;
+    }
+
+    int rounds() {
+      return rounds;
+    }
+
+    long coldNanos() {
+      return coldNanos;
+    }
+
+    long primedNanos() {
+      return primedNanos;
+    }
+
+    /**
+     * @return Returns the nanoseconds the first requests would have spent filling the DFA cache, never negative
+     */
+    long savedNanos() {
+      return Math.max(0L, coldNanos - primedNanos);
+    }
+  }
+}
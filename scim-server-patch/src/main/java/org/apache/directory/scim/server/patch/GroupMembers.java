@@ -0,0 +1,270 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.throwScimException;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.ADD;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REMOVE;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REPLACE;
+import static org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.core.Response;
+
+import org.apache.directory.scim.server.patch.utility.CompactMemberSet;
+import org.apache.directory.scim.server.patch.utility.CompiledAttribute;
+import org.apache.directory.scim.server.patch.utility.CompiledSchema;
+import org.apache.directory.scim.spec.protocol.ErrorMessageType;
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.exception.ScimException;
+import org.apache.directory.scim.spec.protocol.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.protocol.filter.CompareOperator;
+import org.apache.directory.scim.spec.protocol.filter.FilterExpression;
+import org.apache.directory.scim.spec.protocol.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.ResourceReference;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies the operations on a group's {@code members} attribute as a whole, and {@code remove members[value eq "..."]},
+ * to a {@link CompactMemberSet}, without converting the group to a {@link java.util.Map} and back for every
+ * operation.
+ * <p>
+ * The first such operation moves the group's members into the set and drops the group's list, so the member objects
+ * don't stay on the heap next to it; the following ones work on the set. {@link #flush()} builds the members list from
+ * the set again, once, before any other operation of the request and at its end. The outcome and the errors are those
+ * of the generic handling: {@code add} and {@code replace} of a list of members replace all of them, {@code remove}
+ * without a filter removes all of them and a filtered {@code remove} fails if no member matches. Only the
+ * {@code value}, {@code $ref}, {@code display} and {@code type} of the members, the sub-attributes of the schema, are
+ * kept.
+ * <p>
+ * The set of a very large group lives in direct memory, see {@link CompactMemberSet}, it's released by
+ * {@link #flush()} or, if the request fails, by {@link #close()}.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class GroupMembers implements AutoCloseable {
+  private static final String MEMBERS = "members";
+  private static final String VALUE = "value";
+  private static final ResourceReference.ReferenceType[] TYPES = ResourceReference.ReferenceType.values();
+
+  private final PatchEngineContext context;
+
+  private ScimGroup group;
+  private CompactMemberSet memberSet;
+
+  GroupMembers(final PatchEngineContext context) {
+    this.context = context;
+  }
+
+  /**
+   * @param resource  the SCIM resource being patched
+   * @param operation the patch operation
+   * @return Returns {@code true} if the {@code operation} adds, replaces or removes all of a group's members, or
+   * removes members by their {@code value}
+   */
+  boolean accepts(final ScimResource resource, final PatchOperation operation) {
+    if (!(resource instanceof ScimGroup) || operation.getPath() == null) {
+      return false;
+    }
+
+    final ValuePathExpression valuePathExpression = operation.getPath().getValuePathExpression();
+    final AttributeReference reference = valuePathExpression == null ? null : valuePathExpression.getAttributePath();
+    if (reference == null || reference.getUrn() != null || !MEMBERS.equals(reference.getAttributeName())
+      || reference.getSubAttributeName() != null || valueAttribute(resource) == null) {
+      return false;
+    }
+
+    final FilterExpression filterExpression = valuePathExpression.getAttributeExpression();
+    if (REMOVE.equals(operation.getOperation())) {
+      return filterExpression == null || compareValue(filterExpression) != null;
+    }
+
+    return (ADD.equals(operation.getOperation()) || REPLACE.equals(operation.getOperation()))
+      && filterExpression == null && isMembers(operation.getValue());
+  }
+
+  /**
+   * Apply the {@code operation} to the members of the {@code group}.
+   *
+   * @param group     the group being patched
+   * @param operation an operation {@link #accepts accepted} for the {@code group}, already validated
+   * @throws ScimException if no member matches a filtered {@code remove}, or a member can't be read
+   */
+  void apply(final ScimGroup group, final PatchOperation operation) throws ScimException {
+    if (this.group != group) {
+      flush();
+      index(group);
+    }
+
+    final FilterExpression filterExpression = operation.getPath().getValuePathExpression().getAttributeExpression();
+    if (!REMOVE.equals(operation.getOperation())) {
+      replace(group, (List<?>) operation.getValue());
+    } else if (filterExpression == null) {
+      release();
+    } else {
+      remove(compareValue(filterExpression), operation);
+    }
+  }
+
+  /**
+   * Set the members of the group last seen by {@link #apply} to those of the set, and forget it.
+   */
+  void flush() {
+    if (group != null) {
+      group.setMembers(members());
+    }
+
+    close();
+  }
+
+  /**
+   * Forget the group last seen by {@link #apply} without writing its members back, and release the set.
+   */
+  @Override
+  public void close() {
+    release();
+    this.group = null;
+  }
+
+  private void index(final ScimGroup group) {
+    this.group = group;
+    final List<ResourceReference> members = group.getMembers();
+    if (members == null) {
+      return;
+    }
+
+    this.memberSet = new CompactMemberSet(valueAttribute(group).isCaseExact(), members.size());
+    for (ResourceReference member : members) {
+      add(member);
+    }
+
+    // the set is the working state now, the members are built again by flush()
+    group.setMembers(null);
+  }
+
+  private void remove(final String value, final PatchOperation operation) throws ScimException {
+    if (memberSet == null || memberSet.size() == 0) {
+      // We can't remove what isn't there. - see section 3.5.2.3 of RFC7644
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.NO_TARGET);
+    }
+
+    final int removed = memberSet.remove(value);
+
+    log.debug("There are {} existing entries matching the filter '{}'", removed, operation.getPath());
+
+    if (removed == 0) {
+      // see section 3.5.2.3 of RFC7644
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.NO_TARGET);
+    }
+  }
+
+  private void replace(final ScimGroup group, final List<?> members) throws ScimException {
+    release();
+    this.memberSet = new CompactMemberSet(valueAttribute(group).isCaseExact(), members.size());
+    for (Object member : members) {
+      if (member instanceof ResourceReference) {
+        add((ResourceReference) member);
+        continue;
+      }
+
+      try {
+        add(context.objectMapper().convertValue(member, ResourceReference.class));
+      } catch (IllegalArgumentException e) {
+        log.debug("Member '{}' can't be read, {}", member, e.getMessage());
+        throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
+      }
+    }
+  }
+
+  private void add(final ResourceReference member) {
+    if (member == null) {
+      memberSet.addNull();
+    } else {
+      memberSet.add(member.getValue(), member.getRef(), member.getDisplay(),
+        member.getType() == null ? -1 : member.getType().ordinal());
+    }
+  }
+
+  /**
+   * @return Returns the members of the set, or {@code null} if there are none
+   */
+  private List<ResourceReference> members() {
+    if (memberSet == null || memberSet.size() == 0) {
+      return null;
+    }
+
+    final List<ResourceReference> members = new ArrayList<>(memberSet.size());
+    memberSet.forEach((value, ref, display, type) -> {
+      if (type == CompactMemberSet.NULL_MEMBER_TYPE) {
+        members.add(null);
+        return;
+      }
+
+      final ResourceReference member = new ResourceReference();
+      member.setValue(value);
+      member.setRef(ref);
+      member.setDisplay(display);
+      member.setType(type < 0 ? null : TYPES[type]);
+      members.add(member);
+    });
+
+    return members;
+  }
+
+  private void release() {
+    if (memberSet != null) {
+      memberSet.close();
+      memberSet = null;
+    }
+  }
+
+  /**
+   * @return Returns the compare value of a {@code value eq "..."} filter, otherwise {@code null}
+   */
+  private static String compareValue(final FilterExpression filterExpression) {
+    if (!(filterExpression instanceof AttributeComparisonExpression)) {
+      return null;
+    }
+
+    final AttributeComparisonExpression comparison = (AttributeComparisonExpression) filterExpression;
+    return CompareOperator.EQ.equals(comparison.getOperation())
+      && VALUE.equals(comparison.getAttributePath().getSubAttributeName())
+      && comparison.getCompareValue() instanceof String ? (String) comparison.getCompareValue() : null;
+  }
+
+  /**
+   * @return Returns {@code true} if the {@code value} is a non empty list of members
+   */
+  private static boolean isMembers(final Object value) {
+    if (!(value instanceof List) || ((List<?>) value).isEmpty()) {
+      return false;
+    }
+
+    for (Object member : (List<?>) value) {
+      if (member != null && !(member instanceof ResourceReference) && !(member instanceof Map)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return Returns the {@code members.value} sub-attribute if it is a string, otherwise {@code null}
+   */
+  private CompiledAttribute valueAttribute(final ScimResource resource) {
+    final CompiledSchema schema = context.schemas().schema(resource.getBaseUrn());
+    final CompiledAttribute membersAttribute = schema == null ? null : schema.attribute(MEMBERS);
+    if (membersAttribute == null || !membersAttribute.isMultiValuedComplex()) {
+      return null;
+    }
+
+    final CompiledAttribute valueAttribute = membersAttribute.subAttribute(VALUE);
+    return valueAttribute != null && Attribute.Type.STRING.equals(valueAttribute.type()) ? valueAttribute : null;
+  }
+}
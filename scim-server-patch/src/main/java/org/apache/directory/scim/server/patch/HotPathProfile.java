@@ -0,0 +1,306 @@
+package org.apache.directory.scim.server.patch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
+import org.apache.directory.scim.spec.protocol.filter.FilterParseException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counts the operation shapes, operation type and path, the engine applies and persists the most frequent ones, so a
+ * restarted node can parse their paths and prime the filter grammar before the first request arrives.
+ * <p>
+ * The compare values of a path's value filter are replaced before the path is counted, strings by {@code "?"} and
+ * numbers by {@code 0}, e.g. {@code members[value eq "?"]}: the values may be personal data and never reach the
+ * profile file, and filters on ids count as one shape instead of one shape per id. The normalised path still primes
+ * the filter grammar for its shape.
+ * <p>
+ * The profile is a text file, one {@code count TAB op TAB path} line per shape, most frequent first. It is written to
+ * a temporary file and moved over the previous one, a node reading it never sees a partial profile. Up to
+ * {@link #TRACKED_FACTOR} times the persisted number of shapes are counted; when full, new shapes aren't counted until
+ * the next {@link #save()}, which keeps the shapes it persisted and drops the others, so a miss never scans the
+ * table.
+ * <p>
+ * The profile is off unless {@code -Dscim.patch.profile.file} is set. {@code -Dscim.patch.profile.size} is the number
+ * of shapes persisted (default 256), {@code -Dscim.patch.profile.intervalSeconds} the persist interval (default 300).
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class HotPathProfile {
+  static final String FILE_PROPERTY = "scim.patch.profile.file";
+  static final String SIZE_PROPERTY = "scim.patch.profile.size";
+  static final String INTERVAL_PROPERTY = "scim.patch.profile.intervalSeconds";
+  static final int SIZE = Integer.getInteger(SIZE_PROPERTY, 256);
+  static final long INTERVAL_SECONDS = Long.getLong(INTERVAL_PROPERTY, 300L);
+  static final int TRACKED_FACTOR = 16;
+
+  private static final char SEPARATOR = '\t';
+  private static final String HEADER = "# patch hot-path profile: count, op, path";
+  private static final Pattern STRING_VALUE = Pattern.compile("\"(?:[^\"\\\\]|\\\\.)*\"");
+  private static final Pattern NUMBER_VALUE = Pattern.compile("(?i)(?<operator>\\s(?:eq|ne|co|sw|ew|gt|ge|lt|le)\\s+)-?[0-9][0-9.eE+-]*");
+
+  private final Path file;
+  private final int maximumSize;
+  private final ConcurrentMap<Shape, LongAdder> counts = new ConcurrentHashMap<>();
+
+  HotPathProfile(final Path file, final int maximumSize) {
+    this.file = file;
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * @return Returns the profile configured by the system properties, disabled if no file is set
+   */
+  static HotPathProfile fromProperties() {
+    final String file = System.getProperty(FILE_PROPERTY);
+    return new HotPathProfile(file == null || file.isEmpty() ? null : Paths.get(file), SIZE);
+  }
+
+  boolean isEnabled() {
+    return file != null && maximumSize > 0;
+  }
+
+  Path file() {
+    return file;
+  }
+
+  /**
+   * @param type the operation type
+   * @param path the path of the operation
+   */
+  void record(final PatchOperation.Type type, final PatchOperationPath path) {
+    if (isEnabled() && path != null) {
+      record(type, path.toString());
+    }
+  }
+
+  /**
+   * @param type the operation type
+   * @param path the path of the operation, a path-less operation's map key
+   */
+  void record(final PatchOperation.Type type, final String path) {
+    if (!isEnabled() || type == null || path == null || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+      return;
+    }
+
+    final Shape shape = new Shape(type, normalise(path));
+    LongAdder count = counts.get(shape);
+    if (count == null) {
+      if (counts.size() >= maximumSize * TRACKED_FACTOR) {
+        // full until the next save
+        return;
+      }
+      count = counts.computeIfAbsent(shape, it -> new LongAdder());
+    }
+    count.increment();
+  }
+
+  /**
+   * @param path the path of an operation
+   * @return Returns the {@code path} with the compare values of its value filter replaced
+   */
+  static String normalise(final String path) {
+    if (path.indexOf('[') < 0) {
+      return path;
+    }
+
+    return NUMBER_VALUE.matcher(STRING_VALUE.matcher(path).replaceAll("\"?\"")).replaceAll("${operator}0");
+  }
+
+  /**
+   * @return Returns up to the maximum size of the most frequent shapes and their counts, most frequent first
+   */
+  List<Map.Entry<Shape, Long>> top() {
+    final List<Map.Entry<Shape, Long>> top = new ArrayList<>(counts.size());
+    for (Map.Entry<Shape, LongAdder> it : counts.entrySet()) {
+      top.add(new AbstractMap.SimpleImmutableEntry<>(it.getKey(), it.getValue().sum()));
+    }
+    top.sort(Map.Entry.<Shape, Long>comparingByValue(Comparator.reverseOrder())
+      .thenComparing(it -> it.getKey().path()));
+
+    return top.size() > maximumSize ? new ArrayList<>(top.subList(0, maximumSize)) : top;
+  }
+
+  /**
+   * Persist the most frequent shapes, failures are logged, the profile is an optimisation.
+   *
+   * @return Returns the number of shapes persisted
+   */
+  int save() {
+    if (!isEnabled()) {
+      return 0;
+    }
+
+    final List<Map.Entry<Shape, Long>> top = top();
+    if (counts.size() >= maximumSize * TRACKED_FACTOR) {
+      // make room for new shapes, the ones about to be persisted keep their counts
+      final Set<Shape> kept = new HashSet<>();
+      for (Map.Entry<Shape, Long> it : top) {
+        kept.add(it.getKey());
+      }
+      counts.keySet().retainAll(kept);
+    }
+
+    try {
+      final Path directory = file.toAbsolutePath().getParent();
+      if (directory != null) {
+        Files.createDirectories(directory);
+      }
+
+      final Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+        writer.write(HEADER);
+        writer.newLine();
+        for (Map.Entry<Shape, Long> it : top) {
+          writer.write(it.getValue() + String.valueOf(SEPARATOR) + it.getKey().type().name() + SEPARATOR + it.getKey().path());
+          writer.newLine();
+        }
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to persist the patch hot-path profile to {}, {}", file, e.getMessage());
+      return 0;
+    }
+
+    log.debug("Persisted {} patch shape(s) to {}", top.size(), file);
+    return top.size();
+  }
+
+  /**
+   * Read the persisted shapes, their counts seed this profile, so a node restarted before the next save keeps them.
+   *
+   * @return Returns the persisted shapes, most frequent first, empty if there is no readable profile
+   */
+  List<Shape> load() {
+    final List<Shape> shapes = new ArrayList<>();
+    if (!isEnabled() || !Files.isReadable(file)) {
+      return shapes;
+    }
+
+    final List<String> lines;
+    try {
+      lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to read the patch hot-path profile {}, {}", file, e.getMessage());
+      return shapes;
+    }
+
+    for (String line : lines) {
+      if (shapes.size() >= maximumSize) {
+        break;
+      }
+      if (line.isEmpty() || line.charAt(0) == '#') {
+        continue;
+      }
+
+      final String[] fields = line.split(String.valueOf(SEPARATOR), 3);
+      try {
+        final long count = Long.parseLong(fields[0]);
+        // profiles written before compare values were normalised
+        final Shape shape = new Shape(PatchOperation.Type.valueOf(fields[1]), normalise(fields[2]));
+        counts.computeIfAbsent(shape, it -> new LongAdder()).add(count);
+        shapes.add(shape);
+      } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+        log.debug("Skipping malformed profile line '{}'", line);
+      }
+    }
+
+    return shapes;
+  }
+
+  /**
+   * Load the persisted shapes, prime the filter grammar with their paths and parse them into the path cache of the
+   * {@code context}.
+   *
+   * @param context the current {@link PatchEngineContext}
+   * @return Returns the number of paths parsed
+   */
+  int preload(final PatchEngineContext context) {
+    final List<Shape> shapes = load();
+    if (shapes.isEmpty()) {
+      return 0;
+    }
+
+    final List<String> paths = new ArrayList<>(shapes.size());
+    for (Shape shape : shapes) {
+      paths.add(shape.path());
+    }
+    FilterGrammarWarmup.prime(paths);
+
+    int parsed = 0;
+    for (String path : paths) {
+      try {
+        context.pathParser().parse(path);
+        parsed++;
+      } catch (FilterParseException | RuntimeException e) {
+        log.debug("Profiled path '{}' not parsed, {}", path, e.getMessage());
+      }
+    }
+
+    log.info("Preloaded {} of {} profiled patch path(s) from {}", parsed, shapes.size(), file);
+    return parsed;
+  }
+
+  /**
+   * An operation type and the text of its path.
+   */
+  static final class Shape {
+    private final PatchOperation.Type type;
+    private final String path;
+
+    Shape(final PatchOperation.Type type, final String path) {
+      this.type = type;
+      this.path = path;
+    }
+
+    PatchOperation.Type type() {
+      return type;
+    }
+
+    String path() {
+      return path;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Shape)) {
+        return false;
+      }
+      final Shape shape = (Shape) o;
+      return type == shape.type && path.equals(shape.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * type.hashCode() + path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return type + " " + path;
+    }
+  }
+}
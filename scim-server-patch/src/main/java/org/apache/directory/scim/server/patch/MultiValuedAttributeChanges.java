@@ -0,0 +1,130 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The element-level changes of patch operations applied to a {@link MultiValuedAttributeSource}.
+ * <p>
+ * A provider applies them in this order: if {@link #isCleared()} drop all existing elements, remove the
+ * {@link #getRemoved() removed} elements, replace the {@link #getUpdated() updated} ones and append all
+ * {@link #getAdded() added} elements.
+ *
+ * @since 2.23
+ */
+public final class MultiValuedAttributeChanges {
+  private boolean cleared;
+  private final List<Map<String, Object>> added = new ArrayList<>();
+  private final Map<Map<String, Object>, Map<String, Object>> removed = new IdentityHashMap<>();
+  private final Map<Map<String, Object>, Map<String, Object>> updated = new IdentityHashMap<>();
+
+  /**
+   * @return Returns {@code true} if all elements the source held before the patch are dropped
+   */
+  public boolean isCleared() {
+    return cleared;
+  }
+
+  /**
+   * @return Returns the new elements to append
+   */
+  public List<Map<String, Object>> getAdded() {
+    return Collections.unmodifiableList(added);
+  }
+
+  /**
+   * @return Returns the elements, as handed out by the source, to remove
+   */
+  public List<Map<String, Object>> getRemoved() {
+    return Collections.unmodifiableList(new ArrayList<>(removed.keySet()));
+  }
+
+  /**
+   * @return Returns the elements, as handed out by the source, mapped to their patched copies
+   */
+  public Map<Map<String, Object>, Map<String, Object>> getUpdated() {
+    return Collections.unmodifiableMap(updated);
+  }
+
+  void clear() {
+    cleared = true;
+    added.clear();
+    removed.clear();
+    updated.clear();
+  }
+
+  void add(final Map<String, Object> element) {
+    added.add(element);
+  }
+
+  /**
+   * @param element an element of the source or an added one
+   */
+  void remove(final Map<String, Object> element) {
+    if (!removeAdded(element)) {
+      updated.remove(element);
+      removed.put(element, element);
+    }
+  }
+
+  /**
+   * @param element an element of the source or an added one
+   * @return Returns the copy of the {@code element} to patch
+   */
+  Map<String, Object> update(final Map<String, Object> element) {
+    for (Map<String, Object> it : added) {
+      if (it == element) {
+        return element;
+      }
+    }
+
+    return updated.computeIfAbsent(element, it -> new HashMap<>(it));
+  }
+
+  /**
+   * @param element     an element of the source or an added one
+   * @param replacement the element replacing it as a whole
+   */
+  void replace(final Map<String, Object> element, final Map<String, Object> replacement) {
+    for (int i = 0; i < added.size(); i++) {
+      if (added.get(i) == element) {
+        added.set(i, replacement);
+        return;
+      }
+    }
+
+    updated.put(element, replacement);
+  }
+
+  /**
+   * @param element an element handed out by the source
+   * @return Returns the current state of the {@code element}, or {@code null} if it's removed or dropped
+   */
+  Map<String, Object> current(final Map<String, Object> element) {
+    if (cleared || removed.containsKey(element)) {
+      return null;
+    }
+
+    final Map<String, Object> copy = updated.get(element);
+    return copy == null ? element : copy;
+  }
+
+  List<Map<String, Object>> added() {
+    return added;
+  }
+
+  private boolean removeAdded(final Map<String, Object> element) {
+    for (int i = 0; i < added.size(); i++) {
+      if (added.get(i) == element) {
+        added.remove(i);
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,282 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkElements;
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkMutability;
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkRequired;
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkSchema;
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkSupported;
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkTarget;
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkValue;
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.throwScimException;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.ADD;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REMOVE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.core.Response;
+
+import org.apache.directory.scim.server.patch.utility.CompiledAttribute;
+import org.apache.directory.scim.server.patch.utility.CompiledSchema;
+import org.apache.directory.scim.server.patch.utility.FilterMatchUtil;
+import org.apache.directory.scim.server.patch.utility.ValueCoercion;
+import org.apache.directory.scim.spec.protocol.ErrorMessageType;
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.exception.ScimException;
+import org.apache.directory.scim.spec.protocol.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.protocol.filter.CompareOperator;
+import org.apache.directory.scim.spec.protocol.filter.FilterExpression;
+import org.apache.directory.scim.spec.protocol.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.resources.ScimResource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies patch operations on one multi-valued complex attribute to a {@link MultiValuedAttributeSource}, element by
+ * element, and collects the {@link MultiValuedAttributeChanges}.
+ * <p>
+ * A value filter comparing {@code value} with {@code EQ} is answered by {@link MultiValuedAttributeSource#lookup},
+ * any other filter by {@link MultiValuedAttributeSource#iterate}; elements added earlier in the same request are
+ * matched as well. Without a filter an {@code add} appends its values (see section 3.5.2.1 of RFC7644), a
+ * {@code replace} replaces all elements and a {@code remove} drops them.
+ * <p>
+ * Every operation passes the checks of the in-memory operations against the compiled schemas before the source is
+ * asked for elements: the path, the value and its type, the mutability of the attribute and, for a {@code remove},
+ * that the attribute isn't required. The elements an {@code add} or a {@code replace} brings are checked against the
+ * types of their sub-attributes. Unlike the in-memory handling, the elements aren't checked for a unique
+ * {@code primary}, the source holds the elements the changes don't touch. A filtered {@code add} or {@code replace}
+ * without a sub-attribute replaces each matching element as a whole with the value, a map or a list of one element,
+ * as the in-memory handling does; the sub-attributes the value doesn't carry are dropped, not kept.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class MultiValuedAttributePatcher {
+  private static final String VALUE = "value";
+
+  private final PatchEngineContext context;
+
+  MultiValuedAttributePatcher(final PatchEngineContext context) {
+    this.context = context;
+  }
+
+  MultiValuedAttributeChanges apply(final ScimResource resource, final List<PatchOperation> patchOperations,
+                                    final MultiValuedAttributeSource source) throws ScimException {
+    final CompiledSchema schema = this.context.schemas().schema(resource.getBaseUrn());
+    final CompiledAttribute attribute = schema == null ? null : schema.attribute(source.attributeName());
+    if (attribute == null || !attribute.isMultiValuedComplex()) {
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_PATH);
+    }
+
+    final MultiValuedAttributeChanges changes = new MultiValuedAttributeChanges();
+    for (PatchOperation operation : patchOperations) {
+      if (operation == null) {
+        throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_SYNTAX);
+      }
+
+      apply(attribute, operation, source, changes);
+    }
+
+    return changes;
+  }
+
+  private void apply(final CompiledAttribute attribute, final PatchOperation operation,
+                     final MultiValuedAttributeSource source, final MultiValuedAttributeChanges changes) throws ScimException {
+    final ValuePathExpression valuePathExpression = operation.getPath() == null
+      ? null
+      : operation.getPath().getValuePathExpression();
+    final AttributeReference reference = valuePathExpression == null ? null : valuePathExpression.getAttributePath();
+    if (reference == null || reference.getUrn() != null || !attribute.name().equalsIgnoreCase(reference.getAttributeName())) {
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_PATH);
+    }
+
+    final String subAttributeName = reference.getSubAttributeName();
+    final CompiledAttribute subAttribute = attribute.subAttribute(subAttributeName);
+    if (subAttributeName != null && subAttribute == null) {
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_PATH);
+    }
+
+    log.debug("Applying Patch Operation '{}' to the elements of '{}'", operation.getOperation(), operation.getPath());
+
+    // the checks of patchAdd, patchReplace and patchRemove, before the source is asked for anything
+    final CompiledSchema schema = checkSchema(operation, this.context.schemas());
+    if (REMOVE.equals(operation.getOperation())) {
+      checkTarget(operation);
+      checkRequired(operation, schema);
+      checkSupported(operation);
+    } else {
+      checkValue(operation, schema);
+      checkMutability(attribute);
+    }
+
+    final FilterExpression filter = valuePathExpression.getAttributeExpression();
+    if (filter == null) {
+      unfiltered(attribute, operation, subAttributeName, changes);
+    } else {
+      final Object value = subAttribute == null
+        ? operation.getValue()
+        : ValueCoercion.assignable(subAttribute, operation.getValue());
+      filtered(attribute, operation, filter, subAttributeName, value, source, changes);
+    }
+  }
+
+  private void unfiltered(final CompiledAttribute attribute, final PatchOperation operation,
+                          final String subAttributeName, final MultiValuedAttributeChanges changes) throws ScimException {
+    if (subAttributeName != null) {
+      // a sub-attribute of every element can't be addressed without loading them
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_PATH);
+    }
+
+    switch (operation.getOperation()) {
+      case REPLACE:
+        changes.clear();
+        // fall through, the new values are added
+      case ADD:
+        final List<Map<String, Object>> elements = elements(operation.getValue());
+        checkElements(attribute, elements);
+        for (Map<String, Object> element : elements) {
+          changes.add(element);
+        }
+        break;
+      case REMOVE:
+        changes.clear();
+        break;
+      default:
+        throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_SYNTAX);
+    }
+  }
+
+  private void filtered(final CompiledAttribute attribute, final PatchOperation operation, final FilterExpression filter,
+                        final String subAttributeName, final Object value, final MultiValuedAttributeSource source,
+                        final MultiValuedAttributeChanges changes) throws ScimException {
+    final FilterMatchUtil.ElementMatcher matcher = FilterMatchUtil.matcher(attribute.attribute(), operation);
+    final List<Map<String, Object>> matches = new ArrayList<>();
+    for (Map<String, Object> candidate : candidates(filter, source)) {
+      final Map<String, Object> current = changes.current(candidate);
+      if (current != null && matcher.matches(current)) {
+        matches.add(candidate);
+      }
+    }
+    for (Map<String, Object> added : changes.added()) {
+      if (matcher.matches(added)) {
+        matches.add(added);
+      }
+    }
+
+    log.debug("There are {} existing entries matching the filter '{}'", matches.size(), operation.getPath());
+
+    if (matches.isEmpty()) {
+      if (ADD.equals(operation.getOperation()) && subAttributeName != null && filter instanceof AttributeComparisonExpression) {
+        final AttributeComparisonExpression comparison = (AttributeComparisonExpression) filter;
+        final Map<String, Object> element = new HashMap<>();
+        element.put(comparison.getAttributePath().getSubAttributeName(), comparison.getCompareValue());
+        element.put(subAttributeName, value);
+        changes.add(element);
+        log.debug("Entry added based on filter '{}'", operation.getPath());
+        return;
+      }
+
+      // see section 3.5.2.3/4 of RFC7644
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.NO_TARGET);
+    }
+
+    final Map<String, Object> replacement = REMOVE.equals(operation.getOperation()) || subAttributeName != null
+      ? null
+      : element(value);
+    if (replacement != null) {
+      checkElements(attribute, Collections.singletonList(replacement));
+    }
+
+    for (Map<String, Object> match : matches) {
+      if (REMOVE.equals(operation.getOperation())) {
+        if (subAttributeName == null) {
+          changes.remove(match);
+        } else {
+          changes.update(match).remove(subAttributeName);
+        }
+      } else if (subAttributeName != null) {
+        changes.update(match).put(subAttributeName, value);
+      } else {
+        // the whole element is replaced, like the in-memory handling does, sub-attributes not in the value are dropped
+        changes.replace(match, new HashMap<>(replacement));
+      }
+    }
+  }
+
+  /**
+   * @param value the value of a filtered {@code add} or {@code replace} without a sub-attribute
+   * @return Returns the element the value stands for: a map, or the only element of a list, like the in-memory handling
+   * @throws ScimException if the value is a list of more or less than one element, or isn't an element
+   */
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> element(final Object value) throws ScimException {
+    Object element = value;
+    if (value instanceof List) {
+      if (((List<?>) value).size() != 1) {
+        throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.UNIQUENESS);
+      }
+      element = ((List<?>) value).get(0);
+    }
+
+    if (element instanceof Map) {
+      return (Map<String, Object>) element;
+    }
+
+    if (element != null && value instanceof List) {
+      try {
+        return context.objectAsMap(element);
+      } catch (IllegalArgumentException e) {
+        log.debug("The element of '{}' can't be converted, {}", value, e.getMessage());
+      }
+    }
+
+    throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
+  }
+
+  private static Iterable<Map<String, Object>> candidates(final FilterExpression filter,
+                                                          final MultiValuedAttributeSource source) {
+    if (filter instanceof AttributeComparisonExpression) {
+      final AttributeComparisonExpression comparison = (AttributeComparisonExpression) filter;
+      if (CompareOperator.EQ.equals(comparison.getOperation())
+        && VALUE.equalsIgnoreCase(comparison.getAttributePath().getSubAttributeName())
+        && comparison.getCompareValue() instanceof String) {
+        return source.lookup((String) comparison.getCompareValue());
+      }
+    }
+
+    return source.iterate(filter);
+  }
+
+  /**
+   * @return Returns copies of the elements in the {@code value} of an operation
+   */
+  @SuppressWarnings("unchecked")
+  private List<Map<String, Object>> elements(final Object value) throws ScimException {
+    final Collection<?> values;
+    if (value instanceof Collection) {
+      values = (Collection<?>) value;
+    } else if (value instanceof Map) {
+      values = Collections.singletonList(value);
+    } else {
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
+    }
+
+    final List<Map<String, Object>> elements = new ArrayList<>(values.size());
+    for (Object it : values) {
+      if (it instanceof Map) {
+        elements.add(new HashMap<>((Map<String, Object>) it));
+      } else if (it instanceof String || it instanceof Number || it instanceof Boolean) {
+        // not an element of a complex attribute
+        throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
+      } else if (it != null) {
+        elements.add(this.context.objectAsMap(it));
+      }
+    }
+
+    return elements;
+  }
+}
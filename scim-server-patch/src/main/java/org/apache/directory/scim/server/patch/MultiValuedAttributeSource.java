@@ -0,0 +1,39 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.Map;
+
+import org.apache.directory.scim.spec.protocol.filter.FilterExpression;
+
+/**
+ * Lets a provider expose a multi-valued complex attribute of a resource, e.g. the members of a very large group,
+ * without loading all of its elements, see {@link PatchOperations#apply(org.apache.directory.scim.spec.resources.ScimResource, java.util.List, MultiValuedAttributeSource)}.
+ * <p>
+ * Elements are represented as {@link Map}s, like the elements of the engine's map tree. The engine never modifies an
+ * element it was handed, and reports changes with the same instances, so a provider can map them back to its storage.
+ *
+ * @since 2.23
+ */
+public interface MultiValuedAttributeSource {
+
+  /**
+   * @return Returns the name of the multi-valued attribute, e.g. {@code members}
+   */
+  String attributeName();
+
+  /**
+   * Look up the elements by their {@code value} sub-attribute, comparing like the {@code EQ} filter operator does.
+   *
+   * @param value the {@code value} to look for
+   * @return Returns the matching elements, may be empty
+   */
+  Iterable<Map<String, Object>> lookup(String value);
+
+  /**
+   * Iterate the elements a value filter may select. A provider may narrow the elements down with the
+   * {@code filter}, or return all of them page by page; the engine evaluates the filter on every element returned.
+   *
+   * @param filter the value filter of a patch operation
+   * @return Returns the candidate elements
+   */
+  Iterable<Map<String, Object>> iterate(FilterExpression filter);
+}
@@ -0,0 +1,156 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.throwScimException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.ws.rs.core.Response;
+
+import org.apache.directory.scim.server.patch.utility.CompiledAttribute;
+import org.apache.directory.scim.spec.protocol.ErrorMessageType;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.exception.ScimException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Patches multi-valued attributes of a simple type, e.g. a {@code List<String>}, in a map tree with set semantics.
+ * <p>
+ * The values of such an attribute are a set, section 2.4 of RFC7643, compared case-insensitively for strings that
+ * aren't {@code caseExact}. An add appends the values not yet present, a replace sets the distinct values, a remove
+ * without a value removes the attribute, with a value only those values. Membership is hashed, a patch is linear in
+ * the number of values, and the values are kept as they are, no element is wrapped or converted to a map. The order
+ * of the remaining values is kept, duplicates already stored keep their first occurrence.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class MultiValuedSimpleAttribute {
+
+  private MultiValuedSimpleAttribute() {
+  }
+
+  /**
+   * @param attribute the attribute
+   * @return Returns {@code true} if {@code attribute} is a multi-valued attribute of a simple type
+   */
+  static boolean accepts(final CompiledAttribute attribute) {
+    return attribute != null && attribute.isMultiValued() && !attribute.isComplex();
+  }
+
+  /**
+   * @param attribute the multi-valued simple attribute
+   * @param source    the map tree holding the attribute, the resource's or an extension's
+   * @param operation the patch operation on the attribute, its value coerced to the attribute's type
+   * @throws ScimException if the operation isn't supported
+   */
+  @SuppressWarnings("unchecked")
+  static void apply(final CompiledAttribute attribute, final Map<String, Object> source,
+                    final PatchOperation operation) throws ScimException {
+    final String name = attribute.name();
+    final Object current = source.get(name);
+    final Collection<Object> stored = current instanceof Collection
+      ? (Collection<Object>) current
+      : Collections.emptyList();
+    final Collection<?> values = values(operation.getValue());
+
+    log.debug("Multi-Valued Simple attribute - Operation: {} {} with {} value(s), {} stored",
+      operation.getOperation(), name, values.size(), stored.size());
+
+    switch (operation.getOperation()) {
+      case ADD:
+        /*
+         * https://datatracker.ietf.org/doc/html/rfc7644#section-3.5.2.1
+         *
+         * If the target location specifies a multi-valued attribute, a new value is added to the attribute.
+         */
+        put(source, name, distinct(attribute, stored, values));
+        break;
+      case REPLACE:
+        /*
+         * https://datatracker.ietf.org/doc/html/rfc7644#section-3.5.2.3
+         *
+         * If the target location is a multi-valued attribute and no filter is specified, the attribute and all values
+         * are replaced.
+         */
+        put(source, name, distinct(attribute, Collections.emptyList(), values));
+        break;
+      case REMOVE:
+        /*
+         * https://datatracker.ietf.org/doc/html/rfc7644#section-3.5.2.2
+         */
+        if (operation.getValue() == null) {
+          source.remove(name);
+        } else {
+          put(source, name, without(attribute, stored, values));
+        }
+        break;
+      default:
+        throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VERS);
+    }
+  }
+
+  /**
+   * @return Returns the distinct values of {@code stored} followed by those of {@code values}, in order
+   */
+  private static List<Object> distinct(final CompiledAttribute attribute, final Collection<Object> stored,
+                                       final Collection<?> values) {
+    final Map<Object, Object> distinct = new LinkedHashMap<>(stored.size() + values.size());
+    for (Object value : stored) {
+      distinct.putIfAbsent(key(attribute, value), value);
+    }
+    for (Object value : values) {
+      distinct.putIfAbsent(key(attribute, value), value);
+    }
+
+    return new ArrayList<>(distinct.values());
+  }
+
+  /**
+   * @return Returns the values of {@code stored} not in {@code values}, in order
+   */
+  private static List<Object> without(final CompiledAttribute attribute, final Collection<Object> stored,
+                                      final Collection<?> values) {
+    final Set<Object> removed = new HashSet<>(values.size());
+    for (Object value : values) {
+      removed.add(key(attribute, value));
+    }
+
+    final List<Object> remaining = new ArrayList<>(stored.size());
+    for (Object value : stored) {
+      if (!removed.contains(key(attribute, value))) {
+        remaining.add(value);
+      }
+    }
+
+    return remaining;
+  }
+
+  private static void put(final Map<String, Object> source, final String name, final List<Object> values) {
+    if (values.isEmpty()) {
+      // an empty multi-valued attribute is unassigned, section 2.5 of RFC7643
+      source.remove(name);
+    } else {
+      source.put(name, values);
+    }
+  }
+
+  private static Collection<?> values(final Object value) {
+    if (value == null) {
+      return Collections.emptyList();
+    }
+
+    return value instanceof Collection ? (Collection<?>) value : Collections.singletonList(value);
+  }
+
+  private static Object key(final CompiledAttribute attribute, final Object value) {
+    return value instanceof String && !attribute.isCaseExact() ? ((String) value).toLowerCase(Locale.ROOT) : value;
+  }
+}
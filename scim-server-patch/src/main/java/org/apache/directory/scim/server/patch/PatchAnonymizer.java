@@ -0,0 +1,194 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Replaces the values of a recorded PATCH request with keyed hashes while keeping its structure and sizes.
+ * <p>
+ * Hashing is format preserving, each character is replaced by a character of the same class (digit, lower case,
+ * upper case), anything else is kept. A value of hex digits and dashes only, e.g. a UUID, keeps its letters within
+ * {@code a-f}, so recorded ids take the same code paths when replayed. Equal values hash to equal values, so value
+ * filters such as {@code members[value EQ "..."]} keep matching the recorded resource. Attribute names, schema URNs,
+ * {@code meta} and the attributes listed in {@link #PRESERVED} are kept as is, since they carry no personal data but
+ * decide which code path a request takes. The exception is {@code meta.location}, which ends with the resource id:
+ * its last path segment is hashed like the {@code id} is, so it still names the recorded resource.
+ *
+ * @since 2.23
+ */
+final class PatchAnonymizer {
+  static final Set<String> PRESERVED = ImmutableSet.of("schemas", "meta", "type", "primary", "resourceType");
+
+  private static final String META = "meta";
+  private static final String LOCATION = "location";
+
+  private static final Pattern COMPARISON =
+    Pattern.compile("([\\w$.:]+)\\s+(?i:eq|ne|co|sw|ew|gt|ge|lt|le)\\s+\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+  private static final String HMAC = "HmacSHA256";
+  private static final String DIGITS = "0123456789";
+  private static final String LOWER = "abcdefghijklmnopqrstuvwxyz";
+  private static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  private static final String LOWER_HEX = "abcdef";
+  private static final String UPPER_HEX = "ABCDEF";
+
+  private final SecretKeySpec key;
+
+  PatchAnonymizer(final byte[] salt) {
+    this.key = new SecretKeySpec(salt, HMAC);
+  }
+
+  /**
+   * @param name  the attribute name the {@code value} belongs to, or {@code null}
+   * @param value the value, as produced by converting a resource or a patch value to a {@link Map}
+   * @return Returns the anonymised copy of {@code value}
+   */
+  @SuppressWarnings("unchecked")
+  Object value(final String name, final Object value) {
+    if (META.equals(name) && value instanceof Map) {
+      return meta((Map<String, Object>) value);
+    }
+
+    if (name != null && PRESERVED.contains(name)) {
+      return value;
+    }
+
+    if (value instanceof Map) {
+      Map<String, Object> copy = new LinkedHashMap<>();
+      ((Map<String, Object>) value).forEach((k, v) -> copy.put(k, value(k, v)));
+      return copy;
+    }
+
+    if (value instanceof List) {
+      List<Object> copy = new ArrayList<>();
+      for (Object it : (List<Object>) value) {
+        copy.add(value(name, it));
+      }
+      return copy;
+    }
+
+    if (value instanceof String) {
+      return hash((String) value);
+    }
+
+    // booleans, numbers and nulls are kept, they don't identify anybody and drive the engine's type checks
+    return value;
+  }
+
+  /**
+   * @param meta the {@code meta} attribute
+   * @return Returns a copy of {@code meta} whose {@code location} ends with the hashed resource id
+   */
+  private Map<String, Object> meta(final Map<String, Object> meta) {
+    final Object location = meta.get(LOCATION);
+    if (!(location instanceof String)) {
+      return meta;
+    }
+
+    final String url = (String) location;
+    final int id = url.lastIndexOf('/', url.endsWith("/") ? url.length() - 2 : url.length() - 1) + 1;
+    final Map<String, Object> copy = new LinkedHashMap<>(meta);
+    copy.put(LOCATION, url.substring(0, id) + hash(url.substring(id)));
+    return copy;
+  }
+
+  /**
+   * @param path the patch operation path, may contain a value filter
+   * @return Returns {@code path} with the compare values of its value filter anonymised
+   */
+  String path(final String path) {
+    if (path == null || path.indexOf('"') == -1) {
+      return path;
+    }
+
+    Matcher matcher = COMPARISON.matcher(path);
+    StringBuffer buffer = new StringBuffer();
+    while (matcher.find()) {
+      final String attribute = matcher.group(1);
+      final String name = attribute.substring(attribute.lastIndexOf('.') + 1);
+      final String literal = PRESERVED.contains(name) ? matcher.group(2) : hash(matcher.group(2));
+
+      final String comparison = matcher.group().substring(0, matcher.start(2) - matcher.start()) + literal + "\"";
+      matcher.appendReplacement(buffer, Matcher.quoteReplacement(comparison));
+    }
+    matcher.appendTail(buffer);
+
+    return buffer.toString();
+  }
+
+  /**
+   * @param value the value to hash
+   * @return Returns a keyed hash of {@code value} of the same length and character classes
+   */
+  String hash(final String value) {
+    final boolean hex = isHex(value);
+    final Mac mac = mac();
+    final StringBuilder builder = new StringBuilder(value.length());
+
+    byte[] digest = mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+    int offset = 0;
+    for (int i = 0; i < value.length(); i++) {
+      if (offset == digest.length) {
+        // stretch the digest for long values
+        digest = mac.doFinal(digest);
+        offset = 0;
+      }
+
+      final char c = value.charAt(i);
+      final int b = digest[offset++] & 0xff;
+      if (hex && Character.isLowerCase(c)) {
+        builder.append(LOWER_HEX.charAt(b % LOWER_HEX.length()));
+      } else if (hex && Character.isUpperCase(c)) {
+        builder.append(UPPER_HEX.charAt(b % UPPER_HEX.length()));
+      } else if (Character.isDigit(c)) {
+        builder.append(DIGITS.charAt(b % DIGITS.length()));
+      } else if (Character.isLowerCase(c)) {
+        builder.append(LOWER.charAt(b % LOWER.length()));
+      } else if (Character.isUpperCase(c)) {
+        builder.append(UPPER.charAt(b % UPPER.length()));
+      } else {
+        builder.append(c);
+      }
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * @return Returns {@code true} if {@code value} has hex digits and dashes only, and at least one digit
+   */
+  private static boolean isHex(final String value) {
+    boolean digit = false;
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digit = true;
+      } else if ((c < 'a' || c > 'f') && (c < 'A' || c > 'F') && c != '-') {
+        return false;
+      }
+    }
+
+    return digit;
+  }
+
+  private Mac mac() {
+    try {
+      Mac mac = Mac.getInstance(HMAC);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to initialise " + HMAC, e);
+    }
+  }
+}
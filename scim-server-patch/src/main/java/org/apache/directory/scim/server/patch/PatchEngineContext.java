@@ -0,0 +1,280 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.io.IOException;
+
+import org.apache.directory.scim.server.patch.utility.CompiledSchemas;
+import org.apache.directory.scim.server.patch.utility.SchemaGeneration;
+import org.apache.directory.scim.server.rest.ObjectMapperFactory;
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.extension.ScimExtensionRegistry;
+import org.apache.directory.scim.spec.resources.ScimExtension;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.ResourceType;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.google.common.collect.ImmutableList;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The {@link Registry} scoped state of the patch engine, shared by every {@link PatchOperations} instance of the
+ * same registry.
+ * <p>
+ * Holds one configured {@link ObjectMapper} and prebuilt {@link ObjectReader}/{@link ObjectWriter} instances for
+ * {@link ScimUser}, {@link ScimGroup}, the registered extensions and {@code Map<String, Object>}, so pooled bean
+ * instances don't each pay for mapper construction and cold serializer caches. A context is rebuilt once the
+ * {@link SchemaGeneration} of its registry advances, which it does when a schema or resource type of the registry is
+ * added, removed or replaced; checking that compares a handful of instances, cheap enough for every call.
+ * <p>
+ * The registry's schemas are compiled once per context, see {@link CompiledSchemas}, so the patch checks don't ask
+ * the registry, its schemas or the attributes' fields per request.
+ * <p>
+ * Map trees are built through a {@link TokenBuffer}, which hands the parser the serializers' property names and the
+ * beans' own {@code String} values, so neither the keys nor the values of a tree are copies, there's nothing to intern.
+ * <p>
+ * The mapper registers the {@link AfterburnerModule}, which replaces the reflective getter, setter and field access of
+ * the bean (de)serializers with generated bytecode. The annotations are still introspected once per class, the
+ * conversions only skip the reflective calls. {@code -Dscim.patch.afterburner=false} turns it off.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class PatchEngineContext {
+  static final String AFTERBURNER_PROPERTY = "scim.patch.afterburner";
+  static final boolean AFTERBURNER = Boolean.parseBoolean(System.getProperty(AFTERBURNER_PROPERTY, "true"));
+
+  static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
+  };
+
+  private static final List<Class<? extends ScimResource>> RESOURCE_CLASSES = 
+    ImmutableList.<Class<? extends ScimResource>>of(ScimUser.class, ScimGroup.class);
+  private static final Map<Registry, PatchEngineContext> CONTEXTS = new WeakHashMap<>();
+
+  private final SchemaGeneration schemaGeneration;
+  private final long generation;
+  private final CompiledSchemas schemas;
+  private final PatchPathParser pathParser;
+  private final ObjectMapper objectMapper;
+  private final ObjectReader mapReader;
+  private final ObjectWriter mapWriter;
+  private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+  private PatchEngineContext(final Registry registry) {
+    this.schemaGeneration = SchemaGeneration.of(registry);
+    this.generation = schemaGeneration.current();
+    this.schemas = CompiledSchemas.of(registry);
+    this.pathParser = new PatchPathParser(registry.getAllSchemaUrns(), PatchPathParser.MAX_SIZE);
+    this.objectMapper = new ObjectMapperFactory(registry).createObjectMapper();
+    this.objectMapper.registerModule(new PatchPathModule(this::pathParser));
+    if (AFTERBURNER) {
+      // String bean properties keep the optimised access as long as no String deserializer is registered
+      this.objectMapper.registerModule(new AfterburnerModule());
+    }
+    scopeable(this.objectMapper);
+
+    final JavaType mapType = objectMapper.getTypeFactory().constructType(MAP_TYPE);
+    this.mapReader = objectMapper.readerFor(mapType);
+    this.mapWriter = writer(objectMapper.writerFor(mapType));
+
+    prebuild(ScimUser.class);
+    prebuild(ScimGroup.class);
+    for (Class<?> extension : extensionClasses(registry)) {
+      prebuild(extension);
+    }
+  }
+
+  /**
+   * @param registry the {@link Registry}
+   * @return Returns the current context of the {@code registry}, a new one is built if the schemas changed
+   */
+  static PatchEngineContext of(final Registry registry) {
+    synchronized (CONTEXTS) {
+      PatchEngineContext context = CONTEXTS.get(registry);
+      if (context == null || context.isStale()) {
+        if (context != null) {
+          log.info("Schemas changed, rebuilding the patch engine context");
+        }
+
+        context = new PatchEngineContext(registry);
+        CONTEXTS.put(registry, context);
+      }
+
+      return context;
+    }
+  }
+
+  /**
+   * Discard the context of the {@code registry}, the next {@link #of} builds a new one.
+   *
+   * @param registry the {@link Registry}
+   */
+  static void invalidate(final Registry registry) {
+    SchemaGeneration.of(registry).bump();
+  }
+
+  /**
+   * @return Returns {@code true} if the schema generation of the registry advanced since this context was built
+   */
+  boolean isStale() {
+    // the registry isn't held on to, it's the weak key of the context
+    return generation != schemaGeneration.current();
+  }
+
+  long generation() {
+    return generation;
+  }
+
+  /**
+   * @return Returns the schemas of the registry, compiled for this generation
+   */
+  CompiledSchemas schemas() {
+    return schemas;
+  }
+
+  PatchPathParser pathParser() {
+    return pathParser;
+  }
+
+  ObjectMapper objectMapper() {
+    return objectMapper;
+  }
+
+  ObjectReader reader(final Class<?> clazz) {
+    return readers.computeIfAbsent(clazz, objectMapper::readerFor);
+  }
+
+  ObjectWriter writer(final Class<?> clazz) {
+    return writers.computeIfAbsent(clazz, it -> writer(objectMapper.writerFor(it)));
+  }
+
+  /**
+   * @param object the {@link Object} to represent as a {@link Map}
+   * @return Returns the {@link Map} representing {@code object}
+   */
+  Map<String, Object> objectAsMap(final Object object) {
+    if (object == null) {
+      return null;
+    }
+
+    return convert(writer(object.getClass()), mapReader, object);
+  }
+
+  /**
+   * @param object the {@link Object} to represent as a {@link Map}
+   * @param scope  the top-level attributes to materialise, {@code null} for all
+   * @return Returns the {@link Map} representing the attributes of {@code object} in {@code scope}
+   */
+  Map<String, Object> objectAsMap(final Object object, final AttributeScope scope) {
+    if (object == null || scope == null) {
+      return objectAsMap(object);
+    }
+
+    return convert(writer(object.getClass()).with(scope.filters(object)), mapReader, object);
+  }
+
+  /**
+   * @param map    the {@link Map} representing some of the attributes of {@code target}
+   * @param target the object to update, attributes not in {@code map} are left as they are
+   * @return Returns the updated {@code target}
+   */
+  <T> T mapIntoObject(final Map<String, Object> map, final T target) {
+    return convert(mapWriter, reader(target.getClass()).withValueToUpdate(target), map);
+  }
+
+  /**
+   * @param map   the {@link Map} representing an object
+   * @param clazz the target class
+   * @return Returns the {@code clazz} instance represented by {@code map}
+   */
+  <T> T mapAsObject(final Map<String, Object> map, final Class<T> clazz) {
+    if (map == null) {
+      return null;
+    }
+
+    return convert(mapWriter, reader(clazz), map);
+  }
+
+  /**
+   * The equivalent of {@link ObjectMapper#convertValue}, without resolving the root serializer and deserializer on
+   * every call.
+   */
+  private <T> T convert(final ObjectWriter writer, final ObjectReader reader, final Object value) {
+    try {
+      TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+      writer.writeValue(buffer, value);
+      return reader.readValue(buffer.asParser(objectMapper));
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Let every bean be restricted by an {@link AttributeScope}, unless the mapper already uses filters or mix-ins of
+   * its own, then scoped conversions materialise all attributes.
+   */
+  private static void scopeable(final ObjectMapper objectMapper) {
+    if (objectMapper.getSerializationConfig().getFilterProvider() != null
+      || objectMapper.findMixInClassFor(Object.class) != null) {
+      log.warn("The object mapper has its own filters, patches materialise all attributes");
+      return;
+    }
+
+    objectMapper.addMixIn(Object.class, AttributeScope.MixIn.class);
+    // conversions without a scope find no filter and serialize all properties
+    objectMapper.setFilterProvider(new SimpleFilterProvider().setFailOnUnknownId(false));
+  }
+
+  private void prebuild(final Class<?> clazz) {
+    reader(clazz);
+    writer(clazz);
+  }
+
+  private static ObjectWriter writer(final ObjectWriter writer) {
+    // same as ObjectMapper#convertValue
+    return writer.without(SerializationFeature.WRAP_ROOT_VALUE);
+  }
+
+  private static Collection<Class<? extends ScimExtension>> extensionClasses(final Registry registry) {
+    final Map<String, Class<? extends ScimExtension>> extensions = new HashMap<>();
+    final Collection<ResourceType> resourceTypes = registry.getAllResourceTypes();
+    if (resourceTypes == null) {
+      return extensions.values();
+    }
+
+    for (ResourceType resourceType : resourceTypes) {
+      if (resourceType.getSchemaExtensions() == null) {
+        continue;
+      }
+
+      for (ResourceType.SchemaExtentionConfiguration extension : resourceType.getSchemaExtensions()) {
+        for (Class<? extends ScimResource> resourceClass : RESOURCE_CLASSES) {
+          Class<? extends ScimExtension> extensionClass =
+            ScimExtensionRegistry.getInstance().getExtensionClass(resourceClass, extension.getSchemaUrn());
+          if (extensionClass != null) {
+            extensions.put(extension.getSchemaUrn(), extensionClass);
+          }
+        }
+      }
+    }
+
+    return extensions.values();
+  }
+}
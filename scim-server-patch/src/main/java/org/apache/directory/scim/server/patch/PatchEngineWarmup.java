@@ -0,0 +1,227 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.exception.ScimException;
+import org.apache.directory.scim.spec.protocol.filter.FilterParseException;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.ResourceType;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import com.google.common.collect.ImmutableMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs synthetic patches over all registered resource types, so the JIT, the Jackson serializer caches and the
+ * ANTLR DFA caches are hot before the first request arrives. The DFA caches are primed first by the
+ * {@link FilterGrammarWarmup}, with its corpus and the paths of the synthetic patches.
+ * <p>
+ * For every resource type the warm-up replaces each read-write singular string attribute, a sub-attribute of each
+ * complex attribute, and adds, replaces and removes a filtered entry of each multi-valued complex attribute with a
+ * {@code type} sub-attribute; registered extensions are handled the same way. Failing patches are logged and
+ * skipped, the warm-up never fails the deployment. The patches are applied as synthetic ones, see
+ * {@link PatchOperations#applySynthetic}, they aren't recorded, cached or logged per request.
+ * <p>
+ * The number of iterations is set with {@code -Dscim.patch.warmup.iterations}, {@code 0} disables the warm-up.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class PatchEngineWarmup {
+  static final String ITERATIONS_PROPERTY = "scim.patch.warmup.iterations";
+  static final int DEFAULT_ITERATIONS = 200;
+
+  private static final String VALUE = "warm-up";
+  private static final String TYPE = "type";
+
+  private static final Map<String, Class<? extends ScimResource>> RESOURCE_CLASSES =
+    ImmutableMap.<String, Class<? extends ScimResource>>of(
+      ScimUser.SCHEMA_URI, ScimUser.class,
+      ScimGroup.SCHEMA_URI, ScimGroup.class);
+
+  private PatchEngineWarmup() {
+  }
+
+  /**
+   * Warm up with the configured number of iterations.
+   *
+   * @param patchOperations the engine to warm up
+   * @param registry        the {@link Registry} of the engine
+   * @return Returns the number of patches applied
+   */
+  static int warmUp(final PatchOperations patchOperations, final Registry registry) {
+    return warmUp(patchOperations, registry, Integer.getInteger(ITERATIONS_PROPERTY, DEFAULT_ITERATIONS));
+  }
+
+  /**
+   * @param patchOperations the engine to warm up
+   * @param registry        the {@link Registry} of the engine
+   * @param iterations      the number of times every synthetic patch is applied
+   * @return Returns the number of patches applied
+   */
+  static int warmUp(final PatchOperations patchOperations, final Registry registry, final int iterations) {
+    if (iterations <= 0 || registry == null || registry.getAllResourceTypes() == null) {
+      return 0;
+    }
+
+    final Instant start = Instant.now();
+    int applied = 0;
+    int failed = 0;
+
+    final Map<Class<? extends ScimResource>, List<String[][]>> patchesByClass = new LinkedHashMap<>();
+    final Set<String> paths = new LinkedHashSet<>();
+    for (ResourceType resourceType : registry.getAllResourceTypes()) {
+      final Class<? extends ScimResource> clazz = RESOURCE_CLASSES.get(resourceType.getSchemaUrn());
+      if (clazz == null) {
+        log.debug("No resource class known for {}, skipping its warm-up", resourceType.getSchemaUrn());
+        continue;
+      }
+
+      final List<String[][]> patches = patches(registry, resourceType);
+      for (String[][] patch : patches) {
+        for (String[] it : patch) {
+          paths.add(it[1]);
+        }
+      }
+      patchesByClass.put(clazz, patches);
+    }
+
+    // the DFA cache first, so the patches below measure the engine, not the grammar's adaptive prediction
+    FilterGrammarWarmup.prime(paths);
+
+    for (Map.Entry<Class<? extends ScimResource>, List<String[][]>> entry : patchesByClass.entrySet()) {
+      final Class<? extends ScimResource> clazz = entry.getKey();
+      final List<String[][]> patches = entry.getValue();
+      for (int i = 0; i < iterations; i++) {
+        for (String[][] patch : patches) {
+          try {
+            // the paths are parsed every time, that's part of what is warmed up
+            patchOperations.applySynthetic(resource(clazz), operations(patch));
+            applied++;
+          } catch (ScimException | FilterParseException | RuntimeException e) {
+            failed++;
+            log.debug("Warm-up patch {} {} on {} failed, {}", patch[0][0], patch[0][1], clazz.getSimpleName(), e.getMessage());
+          }
+        }
+      }
+    }
+
+    log.info("Patch engine warm-up applied {} patch(es), {} failed, in {} ms", applied, failed,
+      Duration.between(start, Instant.now()).toMillis());
+
+    return applied;
+  }
+
+  /**
+   * @return Returns the synthetic patches of the {@code resourceType}, each a list of {@code {operation, path}} pairs
+   */
+  private static List<String[][]> patches(final Registry registry, final ResourceType resourceType) {
+    final List<String[][]> patches = new ArrayList<>();
+    patches(registry.getSchema(resourceType.getSchemaUrn()), "", patches);
+
+    if (resourceType.getSchemaExtensions() != null) {
+      for (ResourceType.SchemaExtentionConfiguration extension : resourceType.getSchemaExtensions()) {
+        patches(registry.getSchema(extension.getSchemaUrn()), extension.getSchemaUrn() + ":", patches);
+      }
+    }
+
+    return patches;
+  }
+
+  private static void patches(final Schema schema, final String prefix, final List<String[][]> patches) {
+    if (schema == null) {
+      return;
+    }
+
+    for (Attribute attribute : attributes(schema.getAttributes())) {
+      if (!isWritable(attribute)) {
+        continue;
+      }
+
+      if (!Attribute.Type.COMPLEX.equals(attribute.getType())) {
+        if (!attribute.isMultiValued() && Attribute.Type.STRING.equals(attribute.getType())) {
+          patches.add(patch(PatchOperation.Type.REPLACE, prefix + attribute.getName()));
+        }
+        continue;
+      }
+
+      final Attribute subAttribute = firstWritableString(attribute);
+      if (subAttribute == null) {
+        continue;
+      }
+
+      if (!attribute.isMultiValued()) {
+        patches.add(patch(PatchOperation.Type.REPLACE, prefix + attribute.getName() + "." + subAttribute.getName()));
+      } else if (attribute.getAttribute(TYPE) != null && !TYPE.equals(subAttribute.getName())) {
+        final String filter = String.format("%s%s[%s EQ \"%s\"]", prefix, attribute.getName(), TYPE, VALUE);
+        // one request, the filtered entry has to exist before it can be replaced and removed
+        patches.add(new String[][] {
+          {PatchOperation.Type.ADD.name(), filter + "." + subAttribute.getName()},
+          {PatchOperation.Type.REPLACE.name(), filter + "." + subAttribute.getName()},
+          {PatchOperation.Type.REMOVE.name(), filter}});
+      }
+    }
+  }
+
+  private static String[][] patch(final PatchOperation.Type type, final String path) {
+    return new String[][] {{type.name(), path}};
+  }
+
+  private static Attribute firstWritableString(final Attribute attribute) {
+    for (Attribute subAttribute : attributes(attribute.getAttributes())) {
+      if (isWritable(subAttribute) && !subAttribute.isMultiValued() && Attribute.Type.STRING.equals(subAttribute.getType())
+        && !TYPE.equals(subAttribute.getName())) {
+        return subAttribute;
+      }
+    }
+
+    return null;
+  }
+
+  private static boolean isWritable(final Attribute attribute) {
+    return Attribute.Mutability.READ_WRITE.equals(attribute.getMutability());
+  }
+
+  private static Collection<Attribute> attributes(final Collection<Attribute> attributes) {
+    return attributes == null ? Collections.emptyList() : attributes;
+  }
+
+  private static ScimResource resource(final Class<? extends ScimResource> clazz) {
+    try {
+      return clazz.getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Failed to create a " + clazz.getSimpleName() + " for the warm-up", e);
+    }
+  }
+
+  private static List<PatchOperation> operations(final String[][] patch) throws FilterParseException {
+    final List<PatchOperation> operations = new ArrayList<>(patch.length);
+    for (String[] it : patch) {
+      final PatchOperation operation = new PatchOperation();
+      operation.setOperation(PatchOperation.Type.valueOf(it[0]));
+      operation.setPath(PatchPathParser.grammar(it[1]));
+      if (!PatchOperation.Type.REMOVE.equals(operation.getOperation())) {
+        operation.setValue(VALUE);
+      }
+      operations.add(operation);
+    }
+
+    return operations;
+  }
+}
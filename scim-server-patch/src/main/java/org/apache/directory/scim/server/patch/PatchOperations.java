@@ -9,35 +9,50 @@ import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkSupp
 import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkTarget;
 import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkValue;
 import static org.apache.directory.scim.server.patch.utility.PatchUtil.checkValueEquals;
-import static org.apache.directory.scim.server.patch.utility.PatchUtil.genericClass;
-import static org.apache.directory.scim.server.patch.utility.PatchUtil.multiValuedPrimaryUniqueness;
+import static org.apache.directory.scim.server.patch.utility.PatchUtil.removeMarked;
 import static org.apache.directory.scim.server.patch.utility.PatchUtil.subAttributeLoggable;
 import static org.apache.directory.scim.server.patch.utility.PatchUtil.throwScimException;
 import static org.apache.directory.scim.server.patch.utility.PatchUtil.validateFilterPath;
 import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.ADD;
 import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REMOVE;
-import static org.apache.directory.scim.spec.schema.Schema.Attribute;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
-import javax.ejb.Stateless;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
 import javax.inject.Inject;
 import javax.ws.rs.core.Response;
 
 import org.antlr.v4.runtime.misc.Pair;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.directory.scim.server.patch.utility.CompiledAttribute;
+import org.apache.directory.scim.server.patch.utility.CompiledSchema;
 import org.apache.directory.scim.server.patch.utility.FilterMatchUtil;
-import org.apache.directory.scim.server.rest.ObjectMapperFactory;
+import org.apache.directory.scim.server.patch.utility.PrimaryTracker;
+import org.apache.directory.scim.server.patch.utility.ValueCoercion;
 import org.apache.directory.scim.server.schema.Registry;
 import org.apache.directory.scim.spec.protocol.ErrorMessageType;
 import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
@@ -48,12 +63,11 @@ import org.apache.directory.scim.spec.protocol.filter.AttributeComparisonExpress
 import org.apache.directory.scim.spec.protocol.filter.FilterExpression;
 import org.apache.directory.scim.spec.protocol.filter.FilterParseException;
 import org.apache.directory.scim.spec.protocol.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.resources.ScimExtension;
+import org.apache.directory.scim.spec.resources.ScimGroup;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.schema.Schema;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -62,28 +76,109 @@ import lombok.extern.slf4j.Slf4j;
  * <p>
  * Based on the Section 3.12 of the Spec, @see https://datatracker.ietf.org/doc/html/rfc7644#section-3.12, for the
  * error types are associated with PATCH operations.
+ * <p>
+ * The engine keeps no per request state, a single instance is shared by all callers (bean managed concurrency, so
+ * the container doesn't serialize calls) and warmed up at startup, see {@link PatchEngineWarmup}. Retried requests
+ * can optionally be answered from the {@link PatchResultCache}. Requests can be recorded anonymised for replay, see
+ * {@link PatchRecorder}.
  *
  * @since 2.23
  */
-@Stateless
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 @Slf4j
 public class PatchOperations {
-  private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
-  };
-
   private static final String NO_CHANGE = "Current value and requested target value are the same, no changes made for {}: '{}'";
   private static final String APPLYING_PATCH_OPERATION_FOR_ATTRIBUTE = "Applying Patch Operation '{}' for attribute '{}'";
   public static final String SCHEMAS = "schemas";
+  private static final String MEMBERS = "members";
+  private static final String WARM_UP_TIMER = "scim-patch-warm-up";
+  private static final String PROFILE_TIMER = "scim-patch-profile";
+  private static final String RECORD_TIMER = "scim-patch-record";
 
-  private final ObjectMapper objectMapper;
+  private volatile PatchEngineContext context;
+  private final PatchResultCache resultCache;
+  private final HotPathProfile profile;
+  private final PatchRecorder recorder;
 
   @Inject
   Registry registry;
 
+  @Resource
+  TimerService timerService;
+
   @Inject
   public PatchOperations(Registry registry) {
+    this(registry, new PatchResultCache(PatchResultCache.MAX_SIZE));
+  }
+
+  PatchOperations(final Registry registry, final PatchResultCache resultCache) {
+    this(registry, resultCache, HotPathProfile.fromProperties());
+  }
+
+  PatchOperations(final Registry registry, final PatchResultCache resultCache, final HotPathProfile profile) {
     this.registry = registry;
-    this.objectMapper = new ObjectMapperFactory(this.registry).createObjectMapper();
+    this.context = PatchEngineContext.of(this.registry);
+    this.resultCache = resultCache;
+    this.profile = profile;
+    this.recorder = PatchRecorder.fromProperties(registry);
+  }
+
+  /**
+   * Preload the paths of the persisted {@link HotPathProfile}, run synthetic patches over all registered resource
+   * types, and start persisting the profile periodically. In a container the synthetic patches and the persisting
+   * run on timers of the container, the deployment doesn't wait for them; outside of one the synthetic patches run
+   * right away and the profile is persisted on {@link #shutDown()} only.
+   */
+  @PostConstruct
+  void warmUp() {
+    profile.preload(context());
+    if (timerService == null) {
+      PatchEngineWarmup.warmUp(this, this.registry);
+      return;
+    }
+
+    timerService.createSingleActionTimer(0L, new TimerConfig(WARM_UP_TIMER, false));
+    if (profile.isEnabled() && HotPathProfile.INTERVAL_SECONDS > 0) {
+      final long interval = TimeUnit.SECONDS.toMillis(HotPathProfile.INTERVAL_SECONDS);
+      timerService.createIntervalTimer(interval, interval, new TimerConfig(PROFILE_TIMER, false));
+    }
+    if (recorder != null) {
+      timerService.createIntervalTimer(PatchRecorder.DRAIN_INTERVAL_MILLIS, PatchRecorder.DRAIN_INTERVAL_MILLIS,
+        new TimerConfig(RECORD_TIMER, false));
+    }
+  }
+
+  /**
+   * @param timer the expired {@link Timer}
+   */
+  @Timeout
+  void timeout(final Timer timer) {
+    if (WARM_UP_TIMER.equals(timer.getInfo())) {
+      PatchEngineWarmup.warmUp(this, this.registry);
+    } else if (PROFILE_TIMER.equals(timer.getInfo())) {
+      profile.save();
+    } else if (RECORD_TIMER.equals(timer.getInfo())) {
+      drainRecorder();
+    }
+  }
+
+  /**
+   * Persist the {@link HotPathProfile} a last time, and close the {@link PatchRecorder}. The container cancels the
+   * timers.
+   */
+  @PreDestroy
+  void shutDown() {
+    profile.save();
+
+    if (recorder != null) {
+      try {
+        recorder.close();
+      } catch (IOException e) {
+        log.warn("Failed to close the patch recording, {}", e.getMessage());
+      }
+    }
   }
 
   /**
@@ -94,8 +189,25 @@ public class PatchOperations {
    * @return Returns the patched SCIM resource
    * @throws ScimException if any of the patch operations can't be applied
    */
-  @SuppressWarnings("unchecked")
   public <T extends ScimResource> T apply(final T source, final List<PatchOperation> patchOperations) throws ScimException {
+    return apply(source, patchOperations, false);
+  }
+
+  /**
+   * Apply synthetic patch operations, e.g. the warm-up's, they aren't recorded, cached or logged at INFO.
+   *
+   * @param source          the SCIM resource to apply patches
+   * @param patchOperations the list of patch operations to be applied
+   * @return Returns the patched SCIM resource
+   * @throws ScimException if any of the patch operations can't be applied
+   */
+  <T extends ScimResource> T applySynthetic(final T source, final List<PatchOperation> patchOperations) throws ScimException {
+    return apply(source, patchOperations, true);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends ScimResource> T apply(final T source, final List<PatchOperation> patchOperations,
+                                           final boolean synthetic) throws ScimException {
     if (source==null) {
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.NO_TARGET);
     }
@@ -109,55 +221,275 @@ public class PatchOperations {
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_SYNTAX);
     }
 
+    if (recorder != null && !synthetic) {
+      record(source, patchOperations);
+    }
+
     final Instant start = Instant.now();
 
+    // a retried request, same operations on the same version, gets the previous result
+    final PatchEngineContext current = context();
+    final PatchResultCache.Key key = synthetic
+      ? null
+      : resultCache.key(source, patchOperations, current.generation(), current.objectMapper());
+    if (key != null) {
+      final T cached = resultCache.get(key);
+      if (cached != null) {
+        log.info("Patch operation(s) already applied to version '{}' of '{}', returning the previous result.",
+          source.getMeta().getVersion(), source.getId());
+        return cached;
+      }
+    }
+
     T scimResource;
+    final GroupMembers groupMembers = new GroupMembers(current);
     try {
       scimResource = SerializationUtils.clone(source);
+      final PrimaryTracker primaryTracker = new PrimaryTracker(this.registry);
 
       for (PatchOperation it : patchOperations) {
+        if (it != null && groupMembers.accepts(scimResource, it)) {
+          applyToMembers(groupMembers, (ScimGroup) scimResource, it);
+          primaryTracker.forget(MEMBERS);
+          continue;
+        }
+        groupMembers.flush();
+
         if (it.getPath()==null && it.getValue() instanceof Map) {
           Map<String, Object> properties = (Map<String, Object>) it.getValue();
 
+          final List<PatchOperation> exploded = new ArrayList<>(properties.size());
           for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            if (!synthetic) {
+              profile.record(it.getOperation(), entry.getKey());
+            }
             // convert SCIM patch to RFC-6902 patch
             PatchOperation newPatchOperation = new PatchOperation();
             newPatchOperation.setOperation(it.getOperation());
             newPatchOperation.setPath(patchOperationPath(entry.getKey()));
             newPatchOperation.setValue(entry.getValue());
-
-            scimResource = apply(scimResource, newPatchOperation);
+            exploded.add(newPatchOperation);
           }
+
+          scimResource = merge(scimResource, exploded, primaryTracker);
         } else if (it.getPath()==null && !(it.getValue() instanceof Map)) {
           checkTarget(it);
           throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
         } else {
-          scimResource = apply(scimResource, it);
+          if (!synthetic) {
+            profile.record(it.getOperation(), it.getPath());
+          }
+          scimResource = apply(scimResource, it, primaryTracker);
         }
       }
+      groupMembers.flush();
     } finally {
+      groupMembers.close();
       final Instant finish = Instant.now();
-      log.info("Processed {} Patch operation(s) in {} ms.", patchOperations.size(), Duration.between(start, finish).toMillis());
+      if (synthetic) {
+        log.debug("Processed {} synthetic Patch operation(s) in {} ms.", patchOperations.size(), Duration.between(start, finish).toMillis());
+      } else {
+        log.info("Processed {} Patch operation(s) in {} ms.", patchOperations.size(), Duration.between(start, finish).toMillis());
+      }
+    }
+
+    if (key != null) {
+      resultCache.put(key, scimResource);
     }
 
     return scimResource;
   }
 
+  /**
+   * Validate an operation {@link GroupMembers#accepts accepted} by {@code groupMembers} like the generic handling of the
+   * operation does, and apply it to the members of the {@code group}.
+   */
+  private void applyToMembers(final GroupMembers groupMembers, final ScimGroup group,
+                              final PatchOperation operation) throws ScimException {
+    if (operation.getPath().getValuePathExpression().getAttributeExpression() == null) {
+      final CompiledSchema schema = checkSchema(operation, context().schemas());
+      if (REMOVE.equals(operation.getOperation())) {
+        checkTarget(operation);
+        checkRequired(operation, schema);
+        checkSupported(operation);
+      } else {
+        checkValue(operation, schema);
+      }
+    }
+
+    groupMembers.apply(group, operation);
+  }
+
+  /**
+   * Record the request, a failure is logged and doesn't fail the request.
+   */
+  private void record(final ScimResource source, final List<PatchOperation> patchOperations) {
+    try {
+      recorder.record(source, patchOperations);
+    } catch (RuntimeException e) {
+      log.warn("Failed to record the patch request on '{}', {}", source.getId(), e.getMessage());
+    }
+  }
+
+  /**
+   * Write the recorded requests queued since the last drain, a failure is logged and the next drain carries on.
+   */
+  private void drainRecorder() {
+    try {
+      recorder.drain();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to write the recorded patch requests, {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Apply the supplied list of patch operations on one multi-valued complex attribute of the given SCIM resource to
+   * the elements exposed by the {@code source}, without loading all of them.
+   *
+   * @param resource        the SCIM resource owning the attribute
+   * @param patchOperations the list of patch operations to be applied, all with a path to the attribute
+   * @param source          the provider's elements of the attribute
+   * @return Returns the element-level changes for the provider to apply
+   * @throws ScimException if any of the patch operations can't be applied
+   */
+  public MultiValuedAttributeChanges apply(final ScimResource resource, final List<PatchOperation> patchOperations,
+                                           final MultiValuedAttributeSource source) throws ScimException {
+    if (resource==null || source==null) {
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.NO_TARGET);
+    }
+
+    if (patchOperations==null) {
+      throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_SYNTAX);
+    }
+
+    final Instant start = Instant.now();
+    try {
+      return new MultiValuedAttributePatcher(context()).apply(resource, patchOperations, source);
+    } finally {
+      final Instant finish = Instant.now();
+      log.info("Processed {} Patch operation(s) on '{}' in {} ms.", patchOperations.size(), source.attributeName(),
+        Duration.between(start, finish).toMillis());
+    }
+  }
+
+  /**
+   * Apply the operations a path-less operation's value map was split into, one per key, merging runs of them into
+   * the resource in a single conversion.
+   * <p>
+   * A run is validated as a whole, the schema and value checks of all its operations pass before the resource is
+   * converted, then every operation is applied to the same map tree with the same semantics as on its own. An
+   * operation with a value filter, a remove, or a second operation on an attribute already in the run ends the run
+   * and is applied on its own, so the keys take effect in their order.
+   *
+   * @param source         the SCIM resource to apply patches
+   * @param operations     the operations of the value map's keys, in order
+   * @param primaryTracker the {@link PrimaryTracker} of the request
+   * @return Returns the patched SCIM resource
+   * @throws ScimException if any of the patch operations can't be applied
+   */
+  private <T extends ScimResource> T merge(final T source, final List<PatchOperation> operations,
+                                           final PrimaryTracker primaryTracker) throws ScimException {
+    T target = source;
+    final List<PatchOperation> run = new ArrayList<>(operations.size());
+    final Set<String> attributes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    for (PatchOperation operation : operations) {
+      final String attribute = mergeable(operation);
+      if (attribute != null && attributes.add(attribute)) {
+        run.add(coerced(operation));
+        continue;
+      }
+
+      target = mergeRun(target, run, primaryTracker);
+      run.clear();
+      attributes.clear();
+      if (attribute == null) {
+        target = apply(target, operation, primaryTracker);
+      } else {
+        attributes.add(attribute);
+        run.add(coerced(operation));
+      }
+    }
+
+    return mergeRun(target, run, primaryTracker);
+  }
+
+  /**
+   * @return Returns the top-level attribute, {@code urn:attr} or {@code attr}, of an add or replace operation without
+   * a value filter, {@code null} if the operation can't be part of a merged run
+   */
+  private static String mergeable(final PatchOperation operation) {
+    if ((operation.getOperation() != ADD && operation.getOperation() != PatchOperation.Type.REPLACE)
+      || operation.getPath() == null || operation.getPath().getValuePathExpression() == null
+      || operation.getPath().getValuePathExpression().getAttributeExpression() != null) {
+      return null;
+    }
+
+    final AttributeReference reference = operation.getPath().getValuePathExpression().getAttributePath();
+    if (reference == null || reference.getAttributeName() == null) {
+      return null;
+    }
+
+    return reference.getUrn() == null ? reference.getAttributeName() : reference.getUrn() + ":" + reference.getAttributeName();
+  }
+
+  /**
+   * @param source         the SCIM resource to apply patches
+   * @param run            add or replace operations without value filters, each on another attribute, coerced
+   * @param primaryTracker the {@link PrimaryTracker} of the request
+   * @return Returns the patched SCIM resource
+   * @throws ScimException if any of the patch operations can't be applied
+   */
+  private <T extends ScimResource> T mergeRun(final T source, final List<PatchOperation> run,
+                                              final PrimaryTracker primaryTracker) throws ScimException {
+    if (run.isEmpty()) {
+      return source;
+    }
+    if (run.size() == 1) {
+      return apply(source, run.get(0), primaryTracker);
+    }
+
+    final Instant start = Instant.now();
+    for (PatchOperation operation : run) {
+      final CompiledSchema schema = checkSchema(operation, context().schemas());
+      checkValue(operation, schema);
+    }
+
+    try {
+      return detached(source, run, () -> {
+        final AttributeScope scope = AttributeScope.of(run);
+        final Map<String, Object> sourceAsMap = scimResourceAsMap(source, scope);
+
+        for (PatchOperation operation : run) {
+          log.debug(APPLYING_PATCH_OPERATION_FOR_ATTRIBUTE, operation.getOperation(), operation.getPath());
+          processPatchOperation(source.getBaseUrn(), sourceAsMap, operation, primaryTracker);
+        }
+
+        return writeBack(sourceAsMap, source, scope);
+      });
+    } finally {
+      log.debug("Merged {} path-less {} operation(s) in {} ms", run.size(), run.get(0).getOperation(),
+        Duration.between(start, Instant.now()).toMillis());
+    }
+  }
+
   /**
    * Apply the supplied patch operation to the given SCIM resource.
    *
    * @param source         the SCIM resource to apply patches
-   * @param patchOperation the patch operations to be applied
+   * @param operation      the patch operations to be applied
+   * @param primaryTracker the {@link PrimaryTracker} of the request
    * @return Returns the patched SCIM resource
    * @throws ScimException if the patch operation can't be applied
    */
-  private <T extends ScimResource> T apply(final T source, final PatchOperation patchOperation) throws ScimException {
+  private <T extends ScimResource> T apply(final T source, final PatchOperation operation,
+                                           final PrimaryTracker primaryTracker) throws ScimException {
 
     if (source==null) {
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.NO_TARGET);
     }
 
-    if (patchOperation==null) {
+    if (operation==null) {
       /*
        * The SCIM Spec doesn't call out how an empty or non-existing patch operation list should be handled.
        *
@@ -166,6 +498,9 @@ public class PatchOperations {
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_SYNTAX);
     }
 
+    // the value is converted once, validation, filters and assignment all see the same typed value
+    final PatchOperation patchOperation = coerced(operation);
+
     final Instant start = Instant.now();
     T target;
 
@@ -188,21 +523,21 @@ public class PatchOperations {
               ? ""
               :path.substring(i + 2);
 
-            return applyWithValueFilter(source, patchOperation, valSelFilter,
-              attribute, subAttribute);
+            return detached(source, patchOperation, () -> applyWithValueFilter(source, patchOperation, valSelFilter,
+              attribute, subAttribute, primaryTracker));
           }
         }
       }
 
       switch (patchOperation.getOperation()) {
         case ADD:
-          target = patchAdd(patchOperation, source);
+          target = patchAdd(patchOperation, source, primaryTracker);
           break;
         case REMOVE:
-          target = patchRemove(patchOperation, source);
+          target = patchRemove(patchOperation, source, primaryTracker);
           break;
         case REPLACE:
-          target = patchReplace(patchOperation, source);
+          target = patchReplace(patchOperation, source, primaryTracker);
           break;
         default:
           log.info("Unsupported Patch Operation {}", patchOperation.getOperation());
@@ -210,7 +545,7 @@ public class PatchOperations {
       }
     } finally {
       final Instant finish = Instant.now();
-      log.info("Processed {} Patch operation for attribute {} took {} ms to process", patchOperation.getOperation(), patchOperation.getPath(),
+      log.debug("Processed {} Patch operation for attribute {} took {} ms to process", patchOperation.getOperation(), patchOperation.getPath(),
         Duration.between(start, finish).toMillis());
     }
 
@@ -223,6 +558,7 @@ public class PatchOperations {
    * @param valSelFilter a {@link String} representing the value filter
    * @param attribute    the value attribute
    * @param subAttribute the sub-attribute
+   * @param primaryTracker the {@link PrimaryTracker} of the request
    * @param <T>          the parameter
    * @return Returns the patched {@link ScimResource}
    * @throws ScimException if any errors occur while trying to patch the supplied resource
@@ -232,18 +568,20 @@ public class PatchOperations {
                                                           final PatchOperation operation,
                                                           final String valSelFilter,
                                                           final String attribute,
-                                                          final String subAttribute) throws ScimException {
-    log.info("Applying Patch Operation '{}' with value filter '{}' attribute '{}'",
+                                                          final String subAttribute,
+                                                          final PrimaryTracker primaryTracker) throws ScimException {
+    log.debug("Applying Patch Operation '{}' with value filter '{}' attribute '{}'",
       operation.getOperation(), valSelFilter, attribute);
 
-    Schema schema = this.registry.getSchema(resource.getBaseUrn());
-    Map<String, Object> fromMap = scimResourceAsMap(resource);
+    final CompiledSchema schema = compiledSchema(resource.getBaseUrn());
+    final AttributeScope scope = AttributeScope.of(operation);
+    Map<String, Object> fromMap = scimResourceAsMap(resource, scope);
     List<Map<String, Object>> targetAttributes = null;
 
-    final Attribute parentAttribute = schema.getAttribute(attribute);
-    Map<String, Object> resourceAsMap = scimResourceAsMap(resource);
+    final CompiledAttribute parentAttribute = schema.attribute(attribute);
+    Map<String, Object> resourceAsMap = scimResourceAsMap(resource, scope);
     if (parentAttribute != null) {
-      if (parentAttribute.isMultiValued() && Attribute.Type.COMPLEX.equals(parentAttribute.getType())) {
+      if (parentAttribute.isMultiValuedComplex()) {
         Object object = fromMap.getOrDefault(attribute, null);
         targetAttributes = (object==null)
           ? null
@@ -261,16 +599,19 @@ public class PatchOperations {
       targetAttributes = new ArrayList<>();
     }
 
-    Deque<Integer> matchingIndexes = new LinkedList<>();
+    final BitSet matches = new BitSet(targetAttributes.size());
+    final FilterMatchUtil.ElementMatcher matcher = targetAttributes.isEmpty()
+      ? null
+      : FilterMatchUtil.matcher(parentAttribute == null ? null : parentAttribute.attribute(), operation);
     for (int i = 0; i < targetAttributes.size(); i++) {
-      if (FilterMatchUtil.complexAttributeMatch(parentAttribute, targetAttributes.get(i), operation)) {
-        matchingIndexes.push(i);
+      if (matcher.matches(targetAttributes.get(i))) {
+        matches.set(i);
       }
     }
 
-    log.info("There are {} existing entries matching the filter '{}'", matchingIndexes.size(), operation.getPath());
+    log.debug("There are {} existing entries matching the filter '{}'", matches.cardinality(), operation.getPath());
 
-    if (matchingIndexes.isEmpty()) {
+    if (matches.isEmpty()) {
       if(ADD.equals(operation.getOperation()) && attribute != null && subAttribute != null) {
         /*
          * Based on the Spec complex filters aren't supported. So we should only care about AttributeComparisonExpression
@@ -281,8 +622,8 @@ public class PatchOperations {
         if(fe instanceof AttributeComparisonExpression) {
           AttributeComparisonExpression ace = (AttributeComparisonExpression)fe;
           targetAttributes.add(createFromAddOperation(ace));
-          matchingIndexes.push(targetAttributes.size() - 1);
-          log.info("Entry added based on filter '{}'", operation.getPath());
+          matches.set(targetAttributes.size() - 1);
+          log.debug("Entry added based on filter '{}'", operation.getPath());
         }
       } else {
         /*
@@ -296,29 +637,32 @@ public class PatchOperations {
       }
     }
 
-    for (Integer index : matchingIndexes) {
-      if (REMOVE.equals(operation.getOperation())) {
-        if (subAttribute == null || subAttribute.isEmpty()) {
-          // Remove the whole item
-          targetAttributes.remove(index.intValue());  // If intValue is not used, the remove(Object) method is
-        } else {
+    final boolean itemsRemoved = REMOVE.equals(operation.getOperation()) && (subAttribute == null || subAttribute.isEmpty());
+    final int[] matchingIndexes = matches.stream().toArray();
+    if (itemsRemoved) {
+      // Remove the whole items, in a single pass
+      removeMarked(targetAttributes, matches);
+    } else {
+      for (int index : matchingIndexes) {
+        if (REMOVE.equals(operation.getOperation())) {
           // remove sub-attribute only
           targetAttributes.get(index).remove(subAttribute);
+        } else {
+          applyPartialUpdate(parentAttribute,
+            parentAttribute != null
+              ? parentAttribute.subAttribute(subAttribute)
+             : null,
+            targetAttributes, index, operation.getValue());
         }
-      } else {
-        applyPartialUpdate(parentAttribute,
-          parentAttribute != null
-            ? parentAttribute.getAttribute(subAttribute)
-           : null,
-          targetAttributes, index, operation.getValue());
       }
     }
 
     resourceAsMap.put(attribute, targetAttributes.size() == 0 ? null : targetAttributes);
 
-    multiValuedPrimaryUniqueness(resourceAsMap, operation, this.registry);
+    // removing whole items shifts the indexes, the tracker has to scan all elements then
+    primaryTracker.enforce(resourceAsMap, operation, itemsRemoved ? null : matchingIndexes);
 
-    return (T) mapAsScimResource(resourceAsMap, resource.getClass());
+    return writeBack(resourceAsMap, resource, scope);
   }
 
   private Map<String, Object> createFromAddOperation(AttributeComparisonExpression filter) {
@@ -336,8 +680,8 @@ public class PatchOperations {
    * @throws ScimException if any errors occur while trying to patch the supplied resource
    */
   @SuppressWarnings("unchecked")
-  private void applyPartialUpdate(final Attribute attribute,
-                                  final Attribute subAttribute,
+  private void applyPartialUpdate(final CompiledAttribute attribute,
+                                  final CompiledAttribute subAttribute,
                                   List<Map<String, Object>> list,
                                   final int index,
                                   final Object value)
@@ -351,23 +695,22 @@ public class PatchOperations {
        */
       Map<String, Object> map;
       if(value instanceof List) {
-        try {
-          Class<?> clazz = genericClass(attribute);
-          if(clazz.isAssignableFrom(Map.class)) {
-            List<Map<String, Object>> valueList = (List<Map<String, Object>>) value;
-            if(valueList.size()!=1) {
-              throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.UNIQUENESS);
-            }
-            map = valueList.get(0);
-          } else {
-            map = objectMapper.convertValue(((List<?>) value).get(0), MAP_TYPE);
-          }
-        } catch (ClassNotFoundException e) {
-          log.error("Failed to determine the generic class list of elements, {}.", e.getMessage());
-          log.debug("STACKTRACE::", e);
+        final Class<?> clazz = attribute.elementClass();
+        if(clazz == null) {
+          log.error("Failed to determine the generic class list of elements of '{}'.", attribute.name());
 
           throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
         }
+
+        if(clazz.isAssignableFrom(Map.class)) {
+          List<Map<String, Object>> valueList = (List<Map<String, Object>>) value;
+          if(valueList.size()!=1) {
+            throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.UNIQUENESS);
+          }
+          map = valueList.get(0);
+        } else {
+          map = context().objectAsMap(((List<?>) value).get(0));
+        }
       } else {
         map = (Map<String, Object>) value;
       }
@@ -377,88 +720,175 @@ public class PatchOperations {
       }
 
       for (String subAttr : map.keySet()) {
-        log.debug("Attribute: {} SubAttribute: {}", attribute.getName(), subAttr);
+        log.debug("Attribute: {} SubAttribute: {}", attribute.name(), subAttr);
         checkMutability(attribute);
       }
 
       list.set(index, map);
     } else {
-      log.debug("Full Attribute {}.{}", attribute.getName(), subAttribute.getName());
+      log.debug("Full Attribute {}.{}", attribute.name(), subAttribute.name());
       checkMutability(attribute);
-      if(list.get(index).containsKey(subAttribute.getName())) {
-        if (!checkValueEquals(list.get(index).get(subAttribute.getName()), value)) {
-          list.get(index).replace(subAttribute.getName(), value);
+      if(list.get(index).containsKey(subAttribute.name())) {
+        if (!checkValueEquals(list.get(index).get(subAttribute.name()), value)) {
+          list.get(index).replace(subAttribute.name(), value);
         } else {
-          log.info(NO_CHANGE, index, attribute.getName());
+          log.debug(NO_CHANGE, index, attribute.name());
         }
       } else {
-        if (!checkValueEquals(list.get(index).get(subAttribute.getName()), value)) {
-          list.get(index).put(subAttribute.getName(), value);
+        if (!checkValueEquals(list.get(index).get(subAttribute.name()), value)) {
+          list.get(index).put(subAttribute.name(), value);
         } else {
-          log.info(NO_CHANGE, index, attribute.getName());
+          log.debug(NO_CHANGE, index, attribute.name());
         }
       }
     }
   }
 
-  @SuppressWarnings("unchecked")
-  private <T extends ScimResource> T patchAdd(final PatchOperation patchOperation, T source) throws ScimException {
-    log.info(APPLYING_PATCH_OPERATION_FOR_ATTRIBUTE,
+  private <T extends ScimResource> T patchAdd(final PatchOperation patchOperation, T source,
+                                                final PrimaryTracker primaryTracker) throws ScimException {
+    log.debug(APPLYING_PATCH_OPERATION_FOR_ATTRIBUTE,
       Objects.requireNonNull(patchOperation, "patchOperation must not be null.").getOperation(),
       Objects.requireNonNull(patchOperation.getPath(), "patchOperation PATH must not be null."));
 
-    final Schema schema = checkSchema(patchOperation, this.registry);
+    final CompiledSchema schema = checkSchema(patchOperation, context().schemas());
     checkValue(patchOperation, schema);
 
-    Map<String, Object> sourceAsMap = scimResourceAsMap(source);
+    return detached(source, patchOperation, () -> {
+      final AttributeScope scope = AttributeScope.of(patchOperation);
+      Map<String, Object> sourceAsMap = scimResourceAsMap(source, scope);
 
-    processPatchOperation(source.getBaseUrn(), sourceAsMap, patchOperation);
+      processPatchOperation(source.getBaseUrn(), sourceAsMap, patchOperation, primaryTracker);
 
-    return (T) mapAsScimResource(sourceAsMap, source.getClass());
+      return writeBack(sourceAsMap, source, scope);
+    });
   }
 
-  @SuppressWarnings("unchecked")
-  private <T extends ScimResource> T patchReplace(final PatchOperation patchOperation, T source) throws ScimException {
-    log.info(APPLYING_PATCH_OPERATION_FOR_ATTRIBUTE,
+  private <T extends ScimResource> T patchReplace(final PatchOperation patchOperation, T source,
+                                                final PrimaryTracker primaryTracker) throws ScimException {
+    log.debug(APPLYING_PATCH_OPERATION_FOR_ATTRIBUTE,
       Objects.requireNonNull(patchOperation, "patchOperation must not be null.").getOperation(),
       Objects.requireNonNull(patchOperation.getPath(), "patchOperation PATH must not be null."));
 
-    final Schema schema = checkSchema(patchOperation, this.registry);
+    final CompiledSchema schema = checkSchema(patchOperation, context().schemas());
     checkValue(patchOperation, schema);
 
-    Map<String, Object> sourceAsMap = scimResourceAsMap(source);
+    return detached(source, patchOperation, () -> {
+      final AttributeScope scope = AttributeScope.of(patchOperation);
+      Map<String, Object> sourceAsMap = scimResourceAsMap(source, scope);
 
-    processPatchOperation(source.getBaseUrn(), sourceAsMap, patchOperation);
+      processPatchOperation(source.getBaseUrn(), sourceAsMap, patchOperation, primaryTracker);
 
-    return (T) mapAsScimResource(sourceAsMap, source.getClass());
+      return writeBack(sourceAsMap, source, scope);
+    });
   }
 
-  @SuppressWarnings("unchecked")
-  private <T extends ScimResource> T patchRemove(final PatchOperation patchOperation, T source) throws ScimException {
-    log.info(APPLYING_PATCH_OPERATION_FOR_ATTRIBUTE,
+  private <T extends ScimResource> T patchRemove(final PatchOperation patchOperation, T source,
+                                                final PrimaryTracker primaryTracker) throws ScimException {
+    log.debug(APPLYING_PATCH_OPERATION_FOR_ATTRIBUTE,
       Objects.requireNonNull(patchOperation, "patchOperation must not be null.").getOperation(),
       Objects.requireNonNull(patchOperation.getPath(), "patchOperation PATH must not be null."));
 
-    final Schema schema = checkSchema(patchOperation, this.registry);
+    final CompiledSchema schema = checkSchema(patchOperation, context().schemas());
 
     checkTarget(patchOperation);
-    checkRequired(patchOperation, schema, this.registry);
-    checkSupported(patchOperation, schema, this.registry);
+    checkRequired(patchOperation, schema);
+    checkSupported(patchOperation);
 
-    Map<String, Object> sourceAsMap = scimResourceAsMap(source);
+    return detached(source, patchOperation, () -> {
+      final AttributeScope scope = AttributeScope.of(patchOperation);
+      Map<String, Object> sourceAsMap = scimResourceAsMap(source, scope);
 
-    processPatchOperation(source.getBaseUrn(), sourceAsMap, patchOperation);
+      processPatchOperation(source.getBaseUrn(), sourceAsMap, patchOperation, primaryTracker);
 
-    return (T) mapAsScimResource(sourceAsMap, source.getClass());
+      return writeBack(sourceAsMap, source, scope);
+    });
   }
 
   /**
-   * @param scimResourceAsMap the {@link Map} representing the SCIM resource
-   * @param clazz             the {@link ScimResource} class
-   * @return Returns a {@link ScimResource} representing the {@code scimResourceAsMap}
+   * Run the {@code conversion} of {@code source} with the extensions the {@code patchOperation} doesn't touch
+   * detached, they're attached to the patched resource as they are, without being converted or copied.
+   *
+   * @param source         the SCIM resource to apply patches
+   * @param patchOperation the patch operation, an extension is touched if its URN prefixes the operation's path
+   * @param conversion     converts the {@code source} to a {@link Map}, patches it and converts it back
+   * @return Returns the patched SCIM resource
+   * @throws ScimException if the patch operation can't be applied
    */
-  private <T extends ScimResource> T mapAsScimResource(final Map<String, Object> scimResourceAsMap, final Class<T> clazz) {
-    return objectMapper.convertValue(scimResourceAsMap, clazz);
+  private <T extends ScimResource> T detached(final T source, final PatchOperation patchOperation,
+                                              final Conversion<T> conversion) throws ScimException {
+    return detached(source, Collections.singletonList(patchOperation), conversion);
+  }
+
+  /**
+   * @param source          the SCIM resource to apply patches
+   * @param patchOperations the patch operations, an extension is touched if its URN prefixes any operation's path
+   * @param conversion      converts the {@code source} to a {@link Map}, patches it and converts it back
+   * @return Returns the patched SCIM resource
+   * @throws ScimException if the patch operations can't be applied
+   */
+  private <T extends ScimResource> T detached(final T source, final List<PatchOperation> patchOperations,
+                                              final Conversion<T> conversion) throws ScimException {
+    final Map<String, ScimExtension> extensions = source.getExtensions();
+    if (extensions == null || extensions.isEmpty()) {
+      return conversion.apply();
+    }
+
+    final List<String> paths = new ArrayList<>(patchOperations.size());
+    for (PatchOperation patchOperation : patchOperations) {
+      paths.add(patchOperation.getPath() != null ? patchOperation.getPath().toString() : "");
+    }
+    final Map<String, ScimExtension> untouched = new LinkedHashMap<>();
+    for (Map.Entry<String, ScimExtension> entry : extensions.entrySet()) {
+      if (!touches(paths, entry.getKey())) {
+        untouched.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    if (untouched.isEmpty()) {
+      return conversion.apply();
+    }
+
+    extensions.keySet().removeAll(untouched.keySet());
+    try {
+      final T target = conversion.apply();
+      for (Map.Entry<String, ScimExtension> entry : untouched.entrySet()) {
+        target.getExtensions().put(entry.getKey(), entry.getValue());
+      }
+
+      return target;
+    } finally {
+      extensions.putAll(untouched);
+    }
+  }
+
+  private static boolean touches(final List<String> paths, final String urn) {
+    for (String path : paths) {
+      if (path.regionMatches(true, 0, urn, 0, urn.length())) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Write the attributes of the patched map tree back to the working resource, attributes outside of the
+   * {@code scope} aren't touched.
+   *
+   * @param scimResourceAsMap the patched {@link Map} of the attributes in {@code scope}
+   * @param scimResource      the working SCIM resource, updated in place
+   * @param scope             the {@link AttributeScope} the map tree was materialised with, {@code null} for all
+   * @return Returns the updated {@code scimResource}
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends ScimResource> T writeBack(final Map<String, Object> scimResourceAsMap, final T scimResource,
+                                               final AttributeScope scope) {
+    if (scope == null) {
+      return context().mapAsObject(scimResourceAsMap, (Class<T>) scimResource.getClass());
+    }
+
+    scope.absentAsNull(scimResourceAsMap);
+    return context().mapIntoObject(scimResourceAsMap, scimResource);
   }
 
   /**
@@ -466,38 +896,98 @@ public class PatchOperations {
    * @return Returns the {@link Map<>} representing {@code object}
    */
   private Map<String, Object> objectAsMap(final Object object) {
-    return objectMapper.convertValue(object, MAP_TYPE);
+    return context().objectAsMap(object);
   }
 
   /**
    * @param scimResource the {@link ScimResource} representing the SCIM resource
-   * @return Returns a {@link Map} representing the {@link ScimResource}
+   * @param scope        the attributes to materialise, {@code null} for all
+   * @return Returns a {@link Map} representing the attributes of the {@link ScimResource} in {@code scope}
+   */
+  private <T extends ScimResource> Map<String, Object> scimResourceAsMap(final T scimResource, final AttributeScope scope) {
+    return context().objectAsMap(scimResource, scope);
+  }
+
+  /**
+   * @return Returns the {@link PatchEngineContext} shared by all instances for the current schemas of the registry
    */
-  private <T extends ScimResource> Map<String, Object> scimResourceAsMap(final T scimResource) {
-    return objectAsMap(scimResource);
+  private PatchEngineContext context() {
+    PatchEngineContext current = this.context;
+    if (current == null || current.isStale()) {
+      current = PatchEngineContext.of(this.registry);
+      this.context = current;
+    }
+
+    return current;
+  }
+
+  /**
+   * @param operation the {@link PatchOperation}
+   * @return Returns the {@code operation}, or a copy with its value converted to the target attribute's type, date
+   * times excepted
+   * @see ValueCoercion#assignable
+   */
+  private PatchOperation coerced(final PatchOperation operation) {
+    if (operation.getValue() == null || operation.getPath() == null
+      || operation.getPath().getValuePathExpression() == null) {
+      return operation;
+    }
+
+    final AttributeReference reference = operation.getPath().getValuePathExpression().getAttributePath();
+    if (reference == null || reference.getAttributeName() == null) {
+      return operation;
+    }
+
+    final CompiledSchema schema = reference.getUrn() != null
+      ? compiledSchema(reference.getUrn())
+      : context().schemas().declaring(reference.getAttributeName());
+    CompiledAttribute target = schema == null ? null : schema.attribute(reference.getAttributeName());
+    if (target != null && reference.getSubAttributeName() != null) {
+      target = target.subAttribute(reference.getSubAttributeName());
+    }
+
+    final Object value = ValueCoercion.assignable(target, operation.getValue());
+    if (value == operation.getValue()) {
+      return operation;
+    }
+
+    final PatchOperation coerced = new PatchOperation();
+    coerced.setOperation(operation.getOperation());
+    coerced.setPath(operation.getPath());
+    coerced.setValue(value);
+    return coerced;
+  }
+
+  /**
+   * @param urn the schema URN
+   * @return Returns the compiled schema of the {@code urn}, or {@code null} if the registry doesn't know it
+   */
+  private CompiledSchema compiledSchema(final String urn) {
+    return context().schemas().lookup(urn);
   }
 
   /**
    * @param resourceUrn    the {@link String} representing the SCIM resource's URN
    * @param source         the {@link Map} representing the SCIM resource
    * @param patchOperation the {@link PatchOperation}.
+   * @param primaryTracker the {@link PrimaryTracker} of the request
    */
   @SuppressWarnings("unchecked")
   private void processPatchOperation(final String resourceUrn,
                                      Map<String, Object> source,
-                                     final PatchOperation patchOperation) throws ScimException {
+                                     final PatchOperation patchOperation,
+                                     final PrimaryTracker primaryTracker) throws ScimException {
     final AttributeReference attributeReference = attributeReference(patchOperation);
 
-    Schema baseSchema;
-    Schema subSchema;
+    CompiledSchema baseSchema;
+    CompiledSchema subSchema;
 
     // patch operation is for a SCIM Extension
     if(attributeReference.getUrn() != null) {
-      baseSchema = this.registry.getSchema(attributeReference.getUrn());
+      baseSchema = compiledSchema(attributeReference.getUrn());
       Map<String, Object> extensionMap;
-      final Attribute attribute = baseSchema.getAttribute(attributeReference.getAttributeName());
-      Attribute subAttribute = Optional.ofNullable(attributeReference.getSubAttributeName())
-        .map(attribute::getAttribute).orElse(null);
+      final CompiledAttribute attribute = baseSchema.attribute(attributeReference.getAttributeName());
+      final CompiledAttribute subAttribute = attribute.subAttribute(attributeReference.getSubAttributeName());
 
       if(source.containsKey(attributeReference.getUrn())) {
         extensionMap = (Map<String, Object>) source.get(attributeReference.getUrn());
@@ -509,12 +999,14 @@ public class PatchOperations {
         }
       }
 
-      if(isSingularAttribute(attribute)) {
-        singularValuedAttribute(attribute, extensionMap, patchOperation);
+      if(subAttribute == null && MultiValuedSimpleAttribute.accepts(attribute)) {
+        MultiValuedSimpleAttribute.apply(attribute, extensionMap, patchOperation);
+      } else if(isSingularAttribute(attribute)) {
+        singularValuedAttribute(attribute.attribute(), extensionMap, patchOperation);
       } else if(isComplexValuedAttribute(attribute)) {
-        complexValuedAttribute(attribute, subAttribute, extensionMap,patchOperation);
+        complexValuedAttribute(attribute.attribute(), schemaAttribute(subAttribute), extensionMap,patchOperation);
       } else { /* isMultiValuedComplexAttribute(attribute)) */
-        multiValuedComplexAttribute(attribute, subAttribute, extensionMap,patchOperation);
+        multiValuedComplexAttribute(attribute.attribute(), schemaAttribute(subAttribute), extensionMap,patchOperation);
       }
 
       Object schemaAttributeValue = source.get(SCHEMAS);
@@ -527,37 +1019,39 @@ public class PatchOperations {
       }
 
       source.put(attributeReference.getUrn(), extensionMap);
+      primaryTracker.forget(attributeReference.getAttributeName());
     } else {
       // patch operation is for a SCIM Resource
-      baseSchema = this.registry.getSchema(resourceUrn);
+      baseSchema = compiledSchema(resourceUrn);
       subSchema = attributeReference.getUrn()!=null
-        ? this.registry.getSchema(attributeReference.getUrn())
+        ? compiledSchema(attributeReference.getUrn())
         :null;
 
-      Attribute attribute;
-      Attribute subAttribute = null;
+      CompiledAttribute attribute;
+      CompiledAttribute subAttribute = null;
       if (subSchema==null) {
-        attribute = baseSchema.getAttribute(attributeReference.getAttributeName());
+        attribute = baseSchema.attribute(attributeReference.getAttributeName());
       } else { // looks to be an extension
-        attribute = subSchema.getAttribute(attributeReference.getAttributeName());
+        attribute = subSchema.attribute(attributeReference.getAttributeName());
       }
 
       if (attributeReference.getSubAttributeName()!=null) {
-        subAttribute = Optional.ofNullable(attribute.getAttribute(
-          attributeReference.getSubAttributeName())).orElse(null);
+        subAttribute = attribute.subAttribute(attributeReference.getSubAttributeName());
       }
 
-      if (isMultiValuedComplexAttribute(attribute)) {
-        multiValuedComplexAttribute(attribute, subAttribute, source,
+      if (subAttribute == null && MultiValuedSimpleAttribute.accepts(attribute)) {
+        MultiValuedSimpleAttribute.apply(attribute, source, patchOperation);
+      } else if (isMultiValuedComplexAttribute(attribute)) {
+        multiValuedComplexAttribute(attribute.attribute(), schemaAttribute(subAttribute), source,
           patchOperation);
       } else if (isComplexValuedAttribute(attribute)) {
-        complexValuedAttribute(attribute, subAttribute, source,
+        complexValuedAttribute(attribute.attribute(), schemaAttribute(subAttribute), source,
           patchOperation);
       } else if (isSingularAttribute(attribute)) {
-        singularValuedAttribute(attribute, source, patchOperation);
+        singularValuedAttribute(attribute.attribute(), source, patchOperation);
       }
 
-      multiValuedPrimaryUniqueness(source, patchOperation, this.registry);
+      primaryTracker.enforce(source, patchOperation, null);
     }
   }
 
@@ -568,7 +1062,7 @@ public class PatchOperations {
    */
   private PatchOperationPath patchOperationPath(final String path) throws ScimException {
     try {
-      return new PatchOperationPath(path);
+      return context().pathParser().parse(path);
     } catch (FilterParseException e) {
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_FILTER);
     }
@@ -578,31 +1072,39 @@ public class PatchOperations {
    * @param attribute the attribute
    * @return Returns {@code true} if and only if the attribute represents a multi-valued complex attribute
    */
-  private boolean isMultiValuedComplexAttribute(final Schema.Attribute attribute) {
-    return attribute!=null && attribute.isMultiValued() && attribute.getType().equals(Attribute.Type.COMPLEX);
+  private boolean isMultiValuedComplexAttribute(final CompiledAttribute attribute) {
+    return attribute!=null && attribute.isMultiValuedComplex();
   }
 
   /**
    * @param attribute the attribute
    * @return Returns {@code true} if and only if the attribute represents a singular value complex attribute
    */
-  private boolean isComplexValuedAttribute(final Schema.Attribute attribute) {
-    return attribute!=null && !attribute.isMultiValued() && attribute.getType().equals(Attribute.Type.COMPLEX);
+  private boolean isComplexValuedAttribute(final CompiledAttribute attribute) {
+    return attribute!=null && !attribute.isMultiValued() && attribute.isComplex();
   }
 
   /**
    * @param attribute the attribute
    * @return Returns {@code true} if and only if the attribute represents a singular value attribute
    */
-  private boolean isSingularAttribute(final Schema.Attribute attribute) {
-    return attribute!=null && !attribute.isMultiValued() && !attribute.getType().equals(Attribute.Type.COMPLEX);
+  private boolean isSingularAttribute(final CompiledAttribute attribute) {
+    return attribute!=null && !attribute.isMultiValued() && !attribute.isComplex();
+  }
+
+  /**
+   * @param attribute the compiled attribute, may be {@code null}
+   * @return Returns the {@link Schema.Attribute} the {@code attribute} was compiled from, or {@code null}
+   */
+  private static Schema.Attribute schemaAttribute(final CompiledAttribute attribute) {
+    return attribute == null ? null : attribute.attribute();
   }
 
   @SuppressWarnings("unchecked")
   private void multiValuedComplexAttribute(final Schema.Attribute attribute, final Schema.Attribute subAttribute,
                                            Map<String, Object> source, final PatchOperation patchOperation) throws ScimException {
 
-    log.info("Multi-Valued Complex attribute - Operation: {} {} {}",
+    log.debug("Multi-Valued Complex attribute - Operation: {} {} {}",
       patchOperation.getOperation(), attributeLoggable(attribute), subAttributeLoggable(subAttribute));
 
     switch (patchOperation.getOperation()) {
@@ -688,7 +1190,7 @@ public class PatchOperations {
   @SuppressWarnings("unchecked")
   private void complexValuedAttribute(final Schema.Attribute attribute, final Schema.Attribute subAttribute,
                                       Map<String, Object> source, final PatchOperation patchOperation) throws ScimException {
-    log.info("Complex Valued attribute - Operation: {} {} {}",
+    log.debug("Complex Valued attribute - Operation: {} {} {}",
       patchOperation.getOperation(), attributeLoggable(attribute), subAttributeLoggable(subAttribute));
 
     switch (patchOperation.getOperation()) {
@@ -748,7 +1250,7 @@ public class PatchOperations {
    */
   private void singularValuedAttribute(final Schema.Attribute attribute, Map<String, Object> singularAttributeSource,
                                        final PatchOperation patchOperation) throws ScimException {
-    log.info("Singular Valued attribute - Operation: {} {}", patchOperation.getOperation(), attributeLoggable(attribute));
+    log.debug("Singular Valued attribute - Operation: {} {}", patchOperation.getOperation(), attributeLoggable(attribute));
 
     final Object oldValue = singularAttributeSource.get(attribute.getName());
 
@@ -767,7 +1269,7 @@ public class PatchOperations {
           if (!checkValueEquals(oldValue, patchOperation.getValue())) {
             singularAttributeSource.replace(attribute.getName(), patchOperation.getValue());
           } else {
-            log.info(NO_CHANGE, patchOperation.getOperation(), attribute.getName());
+            log.debug(NO_CHANGE, patchOperation.getOperation(), attribute.getName());
           }
         }
         break;
@@ -779,4 +1281,12 @@ public class PatchOperations {
         break;
     }
   }
+
+  /**
+   * A patch step converting a resource to a {@link Map} and back.
+   */
+  @FunctionalInterface
+  private interface Conversion<T> {
+    T apply() throws ScimException;
+  }
 }
@@ -0,0 +1,124 @@
+package org.apache.directory.scim.server.patch;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
+import org.apache.directory.scim.spec.protocol.filter.FilterParseException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Makes an {@link com.fasterxml.jackson.databind.ObjectMapper} parse the {@code path} of a {@link PatchOperation}
+ * with the patch engine's {@link PatchPathParser}, so request paths get the hand-written parsers, the
+ * {@link DescentFilterParser} with {@code -Dscim.patch.filterParser=descent}, and the path cache, instead of a
+ * grammar run per operation.
+ * <p>
+ * The patch engine's own mapper registers it. Request bodies are read by the JAX-RS provider's mapper, which this
+ * module doesn't build; register the module there, e.g. in its {@code ContextResolver<ObjectMapper>}, for the parsers
+ * to see request paths:
+ * <pre>
+ * objectMapper.registerModule(new PatchPathModule(registry));
+ * </pre>
+ * The parsed paths are cached and shared between requests, code reading the operations must not modify them.
+ *
+ * @since 2.23
+ */
+public final class PatchPathModule extends SimpleModule {
+  private static final long serialVersionUID = 1L;
+  private static final PropertyName PATH = new PropertyName("path");
+
+  /**
+   * @param registry the {@link Registry} whose current patch engine context parses the paths
+   */
+  public PatchPathModule(final Registry registry) {
+    this(new ContextParser(Objects.requireNonNull(registry, "registry must not be null.")));
+  }
+
+  PatchPathModule(final Supplier<PatchPathParser> parser) {
+    super(PatchPathModule.class.getSimpleName());
+
+    final PatchPathDeserializer deserializer = new PatchPathDeserializer(parser);
+    setDeserializerModifier(new BeanDeserializerModifier() {
+      @Override
+      public BeanDeserializerBuilder updateBuilder(final DeserializationConfig config, final BeanDescription beanDesc,
+                                                   final BeanDeserializerBuilder builder) {
+        if (PatchOperation.class.isAssignableFrom(beanDesc.getBeanClass())) {
+          final SettableBeanProperty path = builder.findProperty(PATH);
+          if (path != null) {
+            // a property with its own deserializer isn't wrapped by the type adapter of the field
+            builder.addOrReplaceProperty(path.withValueDeserializer(deserializer), true);
+          }
+        }
+
+        return builder;
+      }
+    });
+  }
+
+  /**
+   * The path parser of the current context of a registry, looked up again once the schemas changed.
+   */
+  private static final class ContextParser implements Supplier<PatchPathParser> {
+    private final Registry registry;
+    private volatile PatchEngineContext context;
+
+    private ContextParser(final Registry registry) {
+      this.registry = registry;
+    }
+
+    @Override
+    public PatchPathParser get() {
+      PatchEngineContext current = this.context;
+      if (current == null || current.isStale()) {
+        current = PatchEngineContext.of(this.registry);
+        this.context = current;
+      }
+
+      return current.pathParser();
+    }
+  }
+
+  private static final class PatchPathDeserializer extends StdScalarDeserializer<PatchOperationPath> {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Supplier<PatchPathParser> parser;
+
+    private PatchPathDeserializer(final Supplier<PatchPathParser> parser) {
+      super(PatchOperationPath.class);
+      this.parser = parser;
+    }
+
+    @Override
+    public PatchOperationPath deserialize(final JsonParser p, final DeserializationContext ctxt) throws IOException {
+      if (!p.hasToken(JsonToken.VALUE_STRING)) {
+        return (PatchOperationPath) ctxt.handleUnexpectedToken(PatchOperationPath.class, p);
+      }
+
+      final String path = p.getText();
+      try {
+        return parser.get().parse(path);
+      } catch (FilterParseException e) {
+        throw ctxt.weirdStringException(path, PatchOperationPath.class, e.getMessage());
+      }
+    }
+
+    @Override
+    public boolean isCachable() {
+      return true;
+    }
+  }
+}
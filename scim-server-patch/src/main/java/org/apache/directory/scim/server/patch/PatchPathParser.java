@@ -0,0 +1,161 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
+import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
+import org.apache.directory.scim.spec.protocol.filter.FilterParseException;
+import org.apache.directory.scim.spec.protocol.filter.ValuePathExpression;
+
+/**
+ * Parses patch operation paths, the common shapes without a value filter by hand, all others with the filter grammar.
+ * <p>
+ * {@code attr} and {@code attr.sub} are split directly, as is {@code urn:attr[.sub]} when the URN is one of the
+ * registry's schemas, a schema URN may contain dots and colons itself. Everything else, value filters and unknown
+ * URNs, goes through {@link PatchOperationPath#PatchOperationPath(String)}, or first through the
+ * {@link DescentFilterParser} with {@code -Dscim.patch.filterParser=descent}. Parsed paths are cached by their text,
+ * so a grammar runs once per distinct path; the engine never modifies a path, cached instances are shared.
+ * <p>
+ * The parser sees the path-less keys of a request, the paths the {@link HotPathProfile} preloads and, once the
+ * {@link PatchPathModule} is registered with the mapper reading the request, the paths of the request's operations.
+ * <p>
+ * The cache holds up to {@code -Dscim.patch.pathCache.maxSize} paths (default 1024) and is dropped as a whole once
+ * full; a parser belongs to a {@link PatchEngineContext} and goes with it when the schemas change.
+ *
+ * @since 2.23
+ */
+final class PatchPathParser {
+  static final String MAX_SIZE_PROPERTY = "scim.patch.pathCache.maxSize";
+  static final int MAX_SIZE = Integer.getInteger(MAX_SIZE_PROPERTY, 1024);
+  static final String FILTER_PARSER_PROPERTY = "scim.patch.filterParser";
+  static final boolean DESCENT = "descent".equalsIgnoreCase(System.getProperty(FILTER_PARSER_PROPERTY, "antlr"));
+
+  private final List<String> urns;
+  private final int maximumSize;
+  private final boolean descent;
+  private final ConcurrentMap<String, PatchOperationPath> paths = new ConcurrentHashMap<>();
+
+  PatchPathParser(final Collection<String> urns, final int maximumSize) {
+    this(urns, maximumSize, DESCENT);
+  }
+
+  PatchPathParser(final Collection<String> urns, final int maximumSize, final boolean descent) {
+    this.urns = new ArrayList<>();
+    if (urns != null) {
+      for (String urn : urns) {
+        if (urn != null) {
+          this.urns.add(urn);
+        }
+      }
+    }
+    // the longest URN first, one schema's URN may prefix another's
+    this.urns.sort(Comparator.comparingInt(String::length).reversed());
+    this.maximumSize = maximumSize;
+    this.descent = descent;
+  }
+
+  /**
+   * @param path the patch operation path
+   * @return Returns the parsed {@code path}, shared with other callers, it must not be modified
+   * @throws FilterParseException if the {@code path} isn't valid
+   */
+  PatchOperationPath parse(final String path) throws FilterParseException {
+    PatchOperationPath parsed = maximumSize > 0 ? paths.get(path) : null;
+    if (parsed == null) {
+      parsed = simple(path);
+      if (parsed == null && descent) {
+        parsed = DescentFilterParser.parsePath(path);
+      }
+      if (parsed == null) {
+        parsed = grammar(path);
+      }
+
+      if (maximumSize > 0) {
+        if (paths.size() >= maximumSize) {
+          paths.clear();
+        }
+        paths.put(path, parsed);
+      }
+    }
+
+    return parsed;
+  }
+
+  /**
+   * The single entry point to the filter grammar, the generated parser shares its DFA cache across instances, which
+   * {@link FilterGrammarWarmup} primes through this method.
+   *
+   * @param path the patch operation path
+   * @return Returns the {@code path} parsed by the filter grammar
+   * @throws FilterParseException if the {@code path} isn't valid
+   */
+  static PatchOperationPath grammar(final String path) throws FilterParseException {
+    return new PatchOperationPath(path);
+  }
+
+  int size() {
+    return paths.size();
+  }
+
+  /**
+   * @return Returns the path of a simple {@code attr[.sub]} or known {@code urn:attr[.sub]}, or {@code null}
+   */
+  PatchOperationPath simple(final String path) {
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+
+    String urn = null;
+    int start = 0;
+    if (path.indexOf(':') >= 0) {
+      for (String it : urns) {
+        if (path.length() > it.length() + 1 && path.charAt(it.length()) == ':' && path.regionMatches(true, 0, it, 0, it.length())) {
+          urn = path.substring(0, it.length());
+          start = it.length() + 1;
+          break;
+        }
+      }
+      if (urn == null) {
+        return null;
+      }
+    }
+
+    final int dot = path.indexOf('.', start);
+    final String attributeName = dot < 0 ? path.substring(start) : path.substring(start, dot);
+    final String subAttributeName = dot < 0 ? null : path.substring(dot + 1);
+    if (!isName(attributeName) || (subAttributeName != null && !isName(subAttributeName) && !"$ref".equals(subAttributeName))) {
+      return null;
+    }
+
+    final PatchOperationPath parsed = new PatchOperationPath();
+    parsed.setValuePathExpression(new ValuePathExpression(new AttributeReference(urn, attributeName, subAttributeName)));
+    return parsed;
+  }
+
+  /**
+   * @return Returns {@code true} if {@code name} is a plain attribute name, letters, digits and underscores
+   */
+  private static boolean isName(final String name) {
+    if (name.isEmpty() || !isAlpha(name.charAt(0))) {
+      return false;
+    }
+
+    for (int i = 1; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      if (!isAlpha(c) && !(c >= '0' && c <= '9') && c != '_') {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean isAlpha(final char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+}
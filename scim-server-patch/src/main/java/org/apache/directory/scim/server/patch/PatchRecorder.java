@@ -0,0 +1,288 @@
+package org.apache.directory.scim.server.patch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimResource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Captures anonymised {@code (resource snapshot, List<PatchOperation>)} pairs, see {@link PatchAnonymizer}, so real
+ * IdP traffic can be replayed, e.g. by the test framework's {@code PatchReplayer}.
+ * <p>
+ * {@link PatchOperations#apply} records requests before applying them, when recording is turned on with
+ * {@code -Dscim.patch.record.file}, the recording file, and {@code -Dscim.patch.record.saltFile}, a file holding the
+ * key of the value hashes. Each pair is written as a single JSON line to a GZIP compressed file:
+ * <pre>
+ * {"shape":"...","resourceClass":"...","resource":{...},"operations":[{"op":"REPLACE","path":"...","value":...}]}
+ * </pre>
+ * The request thread only takes a snapshot of the sampled requests, {@code -Dscim.patch.record.sampleRate}, a
+ * fraction between {@code 0} and {@code 1}, and queues it without waiting; a request arriving while
+ * {@code -Dscim.patch.record.queueSize} snapshots are queued is dropped and counted. Anonymising, serializing and
+ * compressing happen when the queue is {@link #drain() drained}, by the engine's recording timer or on
+ * {@link #close()}, one drain at a time, so lines are written in the order the snapshots were queued.
+ *
+ * @since 2.23
+ */
+@Slf4j
+public class PatchRecorder implements Closeable {
+  static final String FILE_PROPERTY = "scim.patch.record.file";
+  static final String SALT_FILE_PROPERTY = "scim.patch.record.saltFile";
+  static final String SAMPLE_RATE_PROPERTY = "scim.patch.record.sampleRate";
+  static final String QUEUE_SIZE_PROPERTY = "scim.patch.record.queueSize";
+  static final double SAMPLE_RATE = Double.parseDouble(System.getProperty(SAMPLE_RATE_PROPERTY, "1.0"));
+  static final int QUEUE_SIZE = Integer.getInteger(QUEUE_SIZE_PROPERTY, 1024);
+  static final long DRAIN_INTERVAL_MILLIS = 1000L;
+
+  public static final String SHAPE = "shape";
+  public static final String RESOURCE_CLASS = "resourceClass";
+  public static final String RESOURCE = "resource";
+  public static final String OPERATIONS = "operations";
+  public static final String OP = "op";
+  public static final String PATH = "path";
+  public static final String VALUE = "value";
+
+  private final ObjectMapper objectMapper;
+  private final PatchAnonymizer anonymizer;
+  private final double sampleRate;
+  private final BlockingQueue<Snapshot> queue;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Writer writer;
+  private long recorded;
+
+  /**
+   * Records every request, up to {@link #QUEUE_SIZE} snapshots between two drains.
+   *
+   * @param registry the {@link Registry} used to convert resources
+   * @param file     the recording file, replaced if it exists
+   * @param salt     the key of the value hashes, keep it secret and don't reuse it across environments
+   * @throws IOException if the file can't be created
+   */
+  public PatchRecorder(final Registry registry, final Path file, final byte[] salt) throws IOException {
+    this(registry, file, salt, 1.0, QUEUE_SIZE);
+  }
+
+  /**
+   * @param registry   the {@link Registry} used to convert resources
+   * @param file       the recording file, replaced if it exists
+   * @param salt       the key of the value hashes, keep it secret and don't reuse it across environments
+   * @param sampleRate the fraction of the requests recorded
+   * @param queueSize  the number of snapshots kept between two drains
+   * @throws IOException if the file can't be created
+   */
+  public PatchRecorder(final Registry registry, final Path file, final byte[] salt, final double sampleRate,
+                       final int queueSize) throws IOException {
+    this.objectMapper = PatchEngineContext.of(registry).objectMapper();
+    this.anonymizer = new PatchAnonymizer(salt);
+    this.sampleRate = sampleRate;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.writer = new BufferedWriter(new OutputStreamWriter(
+      new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param registry the {@link Registry} used to convert resources
+   * @return Returns the recorder configured by the system properties, {@code null} if recording is off or the files
+   * can't be used
+   */
+  static PatchRecorder fromProperties(final Registry registry) {
+    final String file = System.getProperty(FILE_PROPERTY);
+    if (file == null || file.isEmpty()) {
+      return null;
+    }
+
+    final String saltFile = System.getProperty(SALT_FILE_PROPERTY);
+    if (saltFile == null || saltFile.isEmpty()) {
+      log.warn("Patch recording needs a salt file, -D{}, not recording", SALT_FILE_PROPERTY);
+      return null;
+    }
+
+    if (SAMPLE_RATE <= 0.0 || QUEUE_SIZE <= 0) {
+      log.warn("Patch recording samples no request, -D{}={} -D{}={}, not recording",
+        SAMPLE_RATE_PROPERTY, SAMPLE_RATE, QUEUE_SIZE_PROPERTY, QUEUE_SIZE);
+      return null;
+    }
+
+    try {
+      final byte[] salt = Files.readAllBytes(Paths.get(saltFile));
+      if (salt.length == 0) {
+        log.warn("The patch recording salt file {} is empty, not recording", saltFile);
+        return null;
+      }
+
+      log.warn("Recording anonymised patch requests to {}, sample rate {}", file, SAMPLE_RATE);
+      return new PatchRecorder(registry, Paths.get(file), salt, SAMPLE_RATE, QUEUE_SIZE);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to start recording patch requests to {}, {}", file, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Queue a snapshot of the request, if it's sampled and the queue isn't full. Doesn't block and doesn't write.
+   *
+   * @param resource   the resource snapshot the {@code operations} are applied to
+   * @param operations the patch operations of the request
+   */
+  public void record(final ScimResource resource, final List<PatchOperation> operations) {
+    if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+      return;
+    }
+
+    if (queue.remainingCapacity() == 0) {
+      dropped.incrementAndGet();
+      return;
+    }
+
+    // the resource is changed in place by the patch, so its tree is taken now and anonymised on drain
+    final List<Map<String, Object>> snapshotOperations = new ArrayList<>(operations.size());
+    for (PatchOperation operation : operations) {
+      if (operation == null) {
+        continue;
+      }
+
+      Map<String, Object> snapshotOperation = new LinkedHashMap<>();
+      snapshotOperation.put(OP, operation.getOperation() == null ? null : operation.getOperation().name());
+      snapshotOperation.put(PATH, operation.getPath() == null ? null : operation.getPath().toString());
+      snapshotOperation.put(VALUE, objectMapper.convertValue(operation.getValue(), Object.class));
+      snapshotOperations.add(snapshotOperation);
+    }
+
+    final Snapshot snapshot = new Snapshot(shape(resource, operations), resource.getClass().getName(),
+      objectMapper.convertValue(resource, PatchEngineContext.MAP_TYPE), snapshotOperations);
+    if (!queue.offer(snapshot)) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Anonymise and write the queued snapshots.
+   *
+   * @throws IOException if a snapshot can't be written
+   */
+  public synchronized void drain() throws IOException {
+    for (Snapshot snapshot = queue.poll(); snapshot != null; snapshot = queue.poll()) {
+      Map<String, Object> line = new LinkedHashMap<>();
+      line.put(SHAPE, snapshot.shape);
+      line.put(RESOURCE_CLASS, snapshot.resourceClass);
+      line.put(RESOURCE, anonymizer.value(null, snapshot.resource));
+
+      List<Map<String, Object>> recordedOperations = new ArrayList<>();
+      for (Map<String, Object> operation : snapshot.operations) {
+        Map<String, Object> recordedOperation = new LinkedHashMap<>();
+        recordedOperation.put(OP, operation.get(OP));
+        recordedOperation.put(PATH, anonymizer.path((String) operation.get(PATH)));
+        recordedOperation.put(VALUE, anonymizer.value(null, operation.get(VALUE)));
+        recordedOperations.add(recordedOperation);
+      }
+      line.put(OPERATIONS, recordedOperations);
+
+      writer.write(objectMapper.writeValueAsString(line));
+      writer.write('\n');
+      recorded++;
+    }
+    writer.flush();
+  }
+
+  /**
+   * @return Returns the number of recorded pairs
+   */
+  public synchronized long recorded() {
+    return recorded;
+  }
+
+  /**
+   * @return Returns the number of sampled requests dropped because the queue was full
+   */
+  public long dropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Drain the queued snapshots and close the file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      drain();
+    } finally {
+      writer.close();
+    }
+    log.info("Recorded {} patch request(s), dropped {}", recorded, dropped.get());
+  }
+
+  /**
+   * Describes a request by the resource type, the operations, their paths without compare values and the size of
+   * their values, e.g. {@code ScimGroup REMOVE members[value EQ ?]}.
+   *
+   * @param resource   the resource snapshot
+   * @param operations the patch operations of the request
+   * @return Returns the shape of the request
+   */
+  static String shape(final ScimResource resource, final List<PatchOperation> operations) {
+    StringBuilder builder = new StringBuilder(resource.getClass().getSimpleName());
+    for (PatchOperation operation : operations) {
+      if (operation == null) {
+        continue;
+      }
+
+      builder.append(' ').append(operation.getOperation());
+
+      if (operation.getPath() != null) {
+        builder.append(' ').append(operation.getPath().toString().replaceAll("\"(?:[^\"\\\\]|\\\\.)*\"", "?"));
+      }
+
+      final Object value = operation.getValue();
+      if (value instanceof List) {
+        builder.append(" [").append(bucket(((List<?>) value).size())).append(']');
+      } else if (value instanceof Map) {
+        builder.append(" {").append(bucket(((Map<?, ?>) value).size())).append('}');
+      }
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * @return Returns {@code size} rounded up to a power of two, so requests of similar size share a shape
+   */
+  private static int bucket(final int size) {
+    return size <= 1 ? size : Integer.highestOneBit(size - 1) << 1;
+  }
+
+  private static final class Snapshot {
+    private final String shape;
+    private final String resourceClass;
+    private final Map<String, Object> resource;
+    private final List<Map<String, Object>> operations;
+
+    private Snapshot(final String shape, final String resourceClass, final Map<String, Object> resource,
+                     final List<Map<String, Object>> operations) {
+      this.shape = shape;
+      this.resourceClass = resourceClass;
+      this.resource = resource;
+      this.operations = operations;
+    }
+  }
+}
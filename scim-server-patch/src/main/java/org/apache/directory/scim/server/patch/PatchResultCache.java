@@ -0,0 +1,253 @@
+package org.apache.directory.scim.server.patch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimResource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers the results of recent patch requests, so a retried request, the same operations applied to the same
+ * version of the same resource, returns the previous result instead of being applied again.
+ * <p>
+ * Results are keyed by resource type and id, {@code meta.version} and a SHA-256 hash of the operation list,
+ * normalised by serializing each operation's {@code op}, {@code path} and {@code value} with sorted map keys. Only
+ * the latest version of a resource is kept, a request for another version, or after the schemas changed, drops the
+ * resource's results. The oldest resources are evicted beyond the maximum size. Resources without an id or a version
+ * are never cached.
+ * <p>
+ * A result is stored in its serialized form, which can't change once it's stored, and each hit deserializes its own
+ * copy; a result already stored isn't serialized again. The results of a resource are an immutable value replaced as
+ * a whole, so requests for different resources don't contend on a lock. A resource is queued for eviction when it's
+ * inserted, with the sequence of the insertion, so a queue entry left by an earlier insertion of a resource evicted
+ * and inserted again doesn't evict it early.
+ * <p>
+ * The cache is off unless {@code -Dscim.patch.idempotency.maxSize} is set to the number of resources to keep.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class PatchResultCache {
+  static final String MAX_SIZE_PROPERTY = "scim.patch.idempotency.maxSize";
+  static final int MAX_SIZE = Integer.getInteger(MAX_SIZE_PROPERTY, 0);
+
+  private static final int MAX_RESULTS_PER_VERSION = 8;
+
+  private final int maximumSize;
+  private final ConcurrentMap<String, Results> results = new ConcurrentHashMap<>();
+  private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicLong sequences = new AtomicLong();
+
+  PatchResultCache(final int maximumSize) {
+    this.maximumSize = maximumSize;
+  }
+
+  boolean isEnabled() {
+    return maximumSize > 0;
+  }
+
+  /**
+   * @param source          the SCIM resource to apply patches
+   * @param patchOperations the patch operations
+   * @param generation      the current schema generation
+   * @param objectMapper    the {@link ObjectMapper} serializing the operations
+   * @return Returns the key of the request, or {@code null} if it can't be cached
+   */
+  Key key(final ScimResource source, final List<PatchOperation> patchOperations, final long generation,
+          final ObjectMapper objectMapper) {
+    if (!isEnabled() || source.getId() == null || source.getMeta() == null || source.getMeta().getVersion() == null) {
+      return null;
+    }
+
+    final List<Map<String, Object>> normalised = new ArrayList<>(patchOperations.size());
+    for (PatchOperation operation : patchOperations) {
+      if (operation == null) {
+        return null;
+      }
+
+      final Map<String, Object> it = new HashMap<>();
+      it.put("op", operation.getOperation());
+      it.put("path", operation.getPath() == null ? null : operation.getPath().toString());
+      it.put("value", operation.getValue());
+      normalised.add(it);
+    }
+
+    try {
+      final byte[] bytes = objectMapper.writer()
+        .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+        .writeValueAsBytes(normalised);
+
+      return new Key(source.getClass().getName() + ":" + source.getId(), source.getMeta().getVersion(), generation,
+        Hashing.sha256().hashBytes(bytes));
+    } catch (JsonProcessingException e) {
+      log.debug("Patch operations can't be normalised, the result isn't cached", e);
+      return null;
+    }
+  }
+
+  /**
+   * @param key the request's key
+   * @return Returns a copy of the previous result of the request, or {@code null}
+   */
+  <T extends ScimResource> T get(final Key key) {
+    final Results it = results.get(key.resource);
+    if (it == null || !it.matches(key)) {
+      return null;
+    }
+
+    final Result result = it.byOperations.get(key.operations);
+    return result == null ? null : result.copy();
+  }
+
+  /**
+   * @param key    the request's key
+   * @param result the result of the request, not stored again if the request's result already is
+   */
+  <T extends ScimResource> void put(final Key key, final T result) {
+    final Results stored = results.get(key.resource);
+    if (stored != null && stored.matches(key) && stored.byOperations.containsKey(key.operations)) {
+      return;
+    }
+
+    final Result serialized = new Result(result.getClass(), SerializationUtils.serialize(result));
+
+    final long sequence = sequences.incrementAndGet();
+    final Results it = results.compute(key.resource, (resource, previous) -> {
+      if (previous == null) {
+        return new Results(sequence, key.version, key.generation, null, key.operations, serialized);
+      }
+
+      // a new version of the resource, results of the older ones can't be asked for again
+      return new Results(previous.sequence, key.version, key.generation,
+        previous.matches(key) ? previous.byOperations : null, key.operations, serialized);
+    });
+
+    if (it.sequence == sequence) {
+      // inserted, not replaced: the resource joins the eviction queue once
+      insertionOrder.add(new Entry(key.resource, sequence));
+      while (results.size() > maximumSize) {
+        final Entry eldest = insertionOrder.poll();
+        if (eldest == null) {
+          break;
+        }
+        // an entry evicted and inserted again since it was queued has a later sequence, and a later queue entry
+        results.computeIfPresent(eldest.resource,
+          (resource, current) -> current.sequence == eldest.sequence ? null : current);
+      }
+    }
+  }
+
+  int size() {
+    return results.size();
+  }
+
+  static final class Key {
+    private final String resource;
+    private final String version;
+    private final long generation;
+    private final HashCode operations;
+
+    private Key(final String resource, final String version, final long generation, final HashCode operations) {
+      this.resource = resource;
+      this.version = version;
+      this.generation = generation;
+      this.operations = operations;
+    }
+  }
+
+  /**
+   * A resource in the eviction queue, with the sequence of the insertion that queued it.
+   */
+  private static final class Entry {
+    private final String resource;
+    private final long sequence;
+
+    private Entry(final String resource, final long sequence) {
+      this.resource = resource;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * The results of one version of a resource, never changed once built.
+   */
+  private static final class Results {
+    private final long sequence;
+    private final String version;
+    private final long generation;
+    private final Map<HashCode, Result> byOperations;
+
+    private Results(final long sequence, final String version, final long generation,
+                    final Map<HashCode, Result> previous, final HashCode operations, final Result result) {
+      this.sequence = sequence;
+      this.version = version;
+      this.generation = generation;
+      this.byOperations = new LinkedHashMap<>();
+      if (previous != null) {
+        this.byOperations.putAll(previous);
+      }
+      if (byOperations.size() >= MAX_RESULTS_PER_VERSION && !byOperations.containsKey(operations)) {
+        byOperations.remove(byOperations.keySet().iterator().next());
+      }
+      this.byOperations.put(operations, result);
+    }
+
+    private boolean matches(final Key key) {
+      return generation == key.generation && Objects.equals(version, key.version);
+    }
+  }
+
+  /**
+   * A serialized result, deserialized with the class loader of its class like {@link SerializationUtils#clone}.
+   */
+  private static final class Result {
+    private final Class<?> type;
+    private final byte[] bytes;
+
+    private Result(final Class<?> type, final byte[] bytes) {
+      this.type = type;
+      this.bytes = bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ScimResource> T copy() {
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+          try {
+            return Class.forName(desc.getName(), false, type.getClassLoader());
+          } catch (ClassNotFoundException e) {
+            return super.resolveClass(desc);
+          }
+        }
+      }) {
+        return (T) in.readObject();
+      } catch (IOException | ClassNotFoundException e) {
+        throw new SerializationException("The cached patch result can't be read", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,554 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * The members of a group, by their position in the members list, kept compact while the operations of a request are
+ * applied to them; the members are only built again, once, when {@link #forEach} writes the result back.
+ * <p>
+ * Member ids in their canonical UUID form are kept as two {@code long}s in open-addressing arrays, so adding,
+ * removing and looking up a member allocates nothing per member. Any other id is kept as is in an open-addressing
+ * table of strings, nothing is boxed. Members sharing an id are chained by position. Removing a member only marks its
+ * position, see {@link #removed()}.
+ * <p>
+ * The {@code type} and the {@code $ref} of a member are packed into one {@code int} per position. A {@code $ref} is
+ * kept as the template it shares with the other members, the text around the member's id; only a {@code $ref} that
+ * doesn't contain the id, or one past the first {@link #MAX_TEMPLATES} templates, is kept as is. The
+ * {@code display} names, and the ids that can't be rebuilt from their key, are kept as they are in arrays allocated
+ * the first time one is needed.
+ * <p>
+ * Ids compare like the {@code EQ} filter operator does: exactly if the {@code value} sub-attribute is case exact,
+ * ignoring case otherwise. Instances aren't thread safe, they're meant for the operations of one request.
+ * <p>
+ * Sets expecting at least {@link #OFF_HEAP_THRESHOLD} members keep their arrays in direct memory, outside of the heap,
+ * the characters of the {@code display} names and of the other kept strings too, so a giant group's members take no
+ * heap beyond the {@code $ref} templates and the ids that aren't UUIDs, and the set must be {@link #close() closed}
+ * to release it. The threshold can be changed with
+ * {@code -Dscim.patch.members.offheap.threshold}, {@code 0} keeps every set on the heap.
+ *
+ * @since 2.23
+ */
+public final class CompactMemberSet implements AutoCloseable {
+  static final String OFF_HEAP_THRESHOLD_PROPERTY = "scim.patch.members.offheap.threshold";
+  static final int OFF_HEAP_THRESHOLD = Integer.getInteger(OFF_HEAP_THRESHOLD_PROPERTY, 1_000_000);
+  static final int MAX_TEMPLATES = 256;
+
+  /**
+   * The {@code type} {@link #forEach} passes for a {@code null} member.
+   */
+  public static final int NULL_MEMBER_TYPE = -2;
+
+  private static final int NONE = -1;
+  private static final int UUID_LENGTH = 36;
+
+  // the attributes of a position: the type's ordinal + 1, or 0, whether the member is null and the code of its $ref
+  private static final int TYPE_MASK = 0xFF;
+  private static final int NULL_MEMBER = 0x100;
+  private static final int REF_SHIFT = 9;
+  private static final int NO_REF = 0;
+  private static final int REF_VERBATIM = -1 >>> REF_SHIFT;
+
+  private final boolean caseExact;
+  private final boolean offHeap;
+  private final BitSet removed = new BitSet();
+
+  private PrimitiveStorage.Longs mostSignificant;
+  private PrimitiveStorage.Longs leastSignificant;
+  private PrimitiveStorage.Ints heads;
+  private int slots;
+
+  private PrimitiveStorage.Ints next;
+  private PrimitiveStorage.Ints attributes;
+  private int positions;
+  private int live;
+
+  private String[] otherKeys;
+  private int[] otherHeads;
+  private int otherSlots;
+
+  private final List<String> prefixes = new ArrayList<>();
+  private final List<String> suffixes = new ArrayList<>();
+
+  // by position, allocated on first use
+  private PrimitiveStorage.Strings values;
+  private PrimitiveStorage.Strings refs;
+  private PrimitiveStorage.Strings displays;
+
+  // the result of the last successful parse, avoids allocating a UUID per lookup
+  private long parsedMost;
+  private long parsedLeast;
+  private boolean parsedUpperCase;
+
+  /**
+   * The attributes of a member, as {@link #forEach} rebuilds them.
+   */
+  @FunctionalInterface
+  public interface MemberVisitor {
+    /**
+     * @param value   the member's {@code value}
+     * @param ref     the member's {@code $ref}
+     * @param display the member's {@code display}
+     * @param type    the ordinal of the member's {@code type}, {@code -1} for none, {@link #NULL_MEMBER_TYPE} if the
+     *                member is {@code null}
+     */
+    void visit(String value, String ref, String display, int type);
+  }
+
+  /**
+   * @param caseExact whether the {@code value} sub-attribute is case exact
+   * @param expected  the expected number of members
+   */
+  public CompactMemberSet(final boolean caseExact, final int expected) {
+    this(caseExact, expected, OFF_HEAP_THRESHOLD > 0 && expected >= OFF_HEAP_THRESHOLD);
+  }
+
+  CompactMemberSet(final boolean caseExact, final int expected, final boolean offHeap) {
+    this.caseExact = caseExact;
+    this.offHeap = offHeap;
+
+    int capacity = 16;
+    while (capacity < expected * 2) {
+      capacity <<= 1;
+    }
+    allocateSlots(capacity);
+    this.next = PrimitiveStorage.ints(Math.max(16, expected), offHeap);
+    this.attributes = PrimitiveStorage.ints(next.length(), offHeap);
+  }
+
+  /**
+   * Append a member with only a {@code value}.
+   *
+   * @param value the member's {@code value}, may be {@code null}
+   * @return Returns the member's position
+   */
+  public int add(final String value) {
+    return add(value, null, null, NONE);
+  }
+
+  /**
+   * Append a member.
+   *
+   * @param value   the member's {@code value}, may be {@code null}
+   * @param ref     the member's {@code $ref}, may be {@code null}
+   * @param display the member's {@code display}, may be {@code null}
+   * @param type    the ordinal of the member's {@code type}, {@code -1} for none
+   * @return Returns the member's position
+   */
+  public int add(final String value, final String ref, final String display, final int type) {
+    final int position = append();
+    attributes.set(position, (type + 1) & TYPE_MASK | ref(position, value, ref) << REF_SHIFT);
+    if (display != null) {
+      displays = allocated(displays);
+      displays.set(position, display);
+    }
+
+    if (value == null) {
+      // never matched, like an element without a value
+      return position;
+    }
+
+    if (parse(value)) {
+      if (parsedUpperCase) {
+        values = allocated(values);
+        values.set(position, value);
+      }
+
+      if ((slots + 1) * 2 > heads.length()) {
+        grow();
+      }
+
+      final int slot = slot(parsedMost, parsedLeast);
+      if (heads.get(slot) == NONE) {
+        mostSignificant.set(slot, parsedMost);
+        leastSignificant.set(slot, parsedLeast);
+        slots++;
+      }
+      next.set(position, heads.get(slot));
+      heads.set(slot, position);
+    } else {
+      if (otherKeys == null) {
+        otherKeys = new String[16];
+        otherHeads = new int[16];
+      } else if ((otherSlots + 1) * 2 > otherKeys.length) {
+        growOthers();
+      }
+
+      final String key = key(value);
+      if (!key.equals(value)) {
+        values = allocated(values);
+        values.set(position, value);
+      }
+
+      final int slot = otherSlot(otherKeys, key);
+      if (otherKeys[slot] == null) {
+        otherKeys[slot] = key;
+        otherHeads[slot] = NONE;
+        otherSlots++;
+      }
+      next.set(position, otherHeads[slot]);
+      otherHeads[slot] = position;
+    }
+
+    return position;
+  }
+
+  /**
+   * Append a {@code null} member, kept as it is by {@link #forEach}.
+   *
+   * @return Returns the member's position
+   */
+  public int addNull() {
+    final int position = append();
+    attributes.set(position, NULL_MEMBER);
+    return position;
+  }
+
+  /**
+   * @param value the member's {@code value}
+   * @return Returns {@code true} if a member with the {@code value} is present
+   */
+  public boolean contains(final String value) {
+    for (int position = head(value); position != NONE; position = next.get(position)) {
+      if (!removed.get(position)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Mark all members with the {@code value} as removed.
+   *
+   * @param value the member's {@code value}
+   * @return Returns the number of members removed
+   */
+  public int remove(final String value) {
+    int count = 0;
+    for (int position = head(value); position != NONE; position = next.get(position)) {
+      if (!removed.get(position)) {
+        removed.set(position);
+        count++;
+      }
+    }
+
+    live -= count;
+    return count;
+  }
+
+  /**
+   * @return Returns the positions of the removed members
+   */
+  public BitSet removed() {
+    return removed;
+  }
+
+  /**
+   * @return Returns the number of members that aren't removed
+   */
+  public int size() {
+    return live;
+  }
+
+  /**
+   * Rebuild the members that aren't removed, in the order they were added.
+   *
+   * @param visitor receives the attributes of each member
+   */
+  public void forEach(final MemberVisitor visitor) {
+    final String[] ids = ids();
+    for (int position = removed.nextClearBit(0); position < positions; position = removed.nextClearBit(position + 1)) {
+      final int attribute = attributes.get(position);
+      if ((attribute & NULL_MEMBER) != 0) {
+        visitor.visit(null, null, null, NULL_MEMBER_TYPE);
+        continue;
+      }
+
+      final String original = values == null ? null : values.get(position);
+      final String value = original != null ? original : ids[position];
+      visitor.visit(value, ref(position, value, attribute >>> REF_SHIFT),
+        displays == null ? null : displays.get(position), (attribute & TYPE_MASK) - 1);
+    }
+  }
+
+  /**
+   * @return Returns {@code true} if the arrays are kept in direct memory
+   */
+  boolean offHeap() {
+    return offHeap;
+  }
+
+  /**
+   * Release the direct memory, if any. The set must not be used afterwards.
+   */
+  @Override
+  public void close() {
+    if (heads != null) {
+      mostSignificant.close();
+      leastSignificant.close();
+      heads.close();
+      next.close();
+      attributes.close();
+      close(values);
+      close(refs);
+      close(displays);
+      heads = null;
+    }
+  }
+
+  private int append() {
+    if (positions == next.length()) {
+      next = next.grow(positions * 2);
+      attributes = attributes.grow(positions * 2);
+      values = values == null ? null : values.grow(positions * 2);
+      refs = refs == null ? null : refs.grow(positions * 2);
+      displays = displays == null ? null : displays.grow(positions * 2);
+    }
+
+    final int position = positions++;
+    live++;
+    next.set(position, NONE);
+    return position;
+  }
+
+  private PrimitiveStorage.Strings allocated(final PrimitiveStorage.Strings strings) {
+    return strings == null ? PrimitiveStorage.strings(next.length(), offHeap) : strings;
+  }
+
+  private static void close(final PrimitiveStorage.Strings strings) {
+    if (strings != null) {
+      strings.close();
+    }
+  }
+
+  /**
+   * @return Returns the code of the {@code ref}: none, the index of its template + 1, or verbatim
+   */
+  private int ref(final int position, final String value, final String ref) {
+    if (ref == null) {
+      return NO_REF;
+    }
+
+    final int at = value == null || value.isEmpty() ? -1 : ref.lastIndexOf(value);
+    if (at >= 0) {
+      for (int i = 0; i < prefixes.size(); i++) {
+        final String prefix = prefixes.get(i);
+        final String suffix = suffixes.get(i);
+        if (prefix.length() == at && ref.length() == at + value.length() + suffix.length()
+          && ref.startsWith(prefix) && ref.endsWith(suffix)) {
+          return i + 1;
+        }
+      }
+
+      if (prefixes.size() < MAX_TEMPLATES) {
+        prefixes.add(ref.substring(0, at));
+        suffixes.add(ref.substring(at + value.length()));
+        return prefixes.size();
+      }
+    }
+
+    refs = allocated(refs);
+    refs.set(position, ref);
+    return REF_VERBATIM;
+  }
+
+  private String ref(final int position, final String value, final int code) {
+    if (code == NO_REF) {
+      return null;
+    }
+
+    if (code == REF_VERBATIM) {
+      return refs.get(position);
+    }
+
+    return prefixes.get(code - 1) + value + suffixes.get(code - 1);
+  }
+
+  /**
+   * @return Returns the id of each live position that has a key, by position
+   */
+  private String[] ids() {
+    final String[] ids = new String[positions];
+    for (int slot = 0; slot < heads.length(); slot++) {
+      String id = null;
+      for (int position = heads.get(slot); position != NONE; position = next.get(position)) {
+        if (!removed.get(position)) {
+          if (id == null) {
+            id = new UUID(mostSignificant.get(slot), leastSignificant.get(slot)).toString();
+          }
+          ids[position] = id;
+        }
+      }
+    }
+
+    if (otherKeys != null) {
+      for (int slot = 0; slot < otherKeys.length; slot++) {
+        if (otherKeys[slot] != null) {
+          for (int position = otherHeads[slot]; position != NONE; position = next.get(position)) {
+            ids[position] = otherKeys[slot];
+          }
+        }
+      }
+    }
+
+    return ids;
+  }
+
+  private int head(final String value) {
+    if (value == null) {
+      return NONE;
+    }
+
+    if (parse(value)) {
+      return heads.get(slot(parsedMost, parsedLeast));
+    }
+
+    if (otherKeys == null) {
+      return NONE;
+    }
+
+    final int slot = otherSlot(otherKeys, key(value));
+    return otherKeys[slot] == null ? NONE : otherHeads[slot];
+  }
+
+  /**
+   * @return Returns the slot of {@code keys} holding the {@code key}, or the empty slot it belongs in
+   */
+  private static int otherSlot(final String[] keys, final String key) {
+    final int mask = keys.length - 1;
+
+    int slot = (key.hashCode() * 0x9E3779B9) >>> 16 & mask;
+    while (keys[slot] != null && !keys[slot].equals(key)) {
+      slot = (slot + 1) & mask;
+    }
+
+    return slot;
+  }
+
+  private void growOthers() {
+    final String[] oldKeys = otherKeys;
+    final int[] oldHeads = otherHeads;
+
+    otherKeys = new String[oldKeys.length * 2];
+    otherHeads = new int[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        final int slot = otherSlot(otherKeys, oldKeys[i]);
+        otherKeys[slot] = oldKeys[i];
+        otherHeads[slot] = oldHeads[i];
+      }
+    }
+  }
+
+  /**
+   * @return Returns the slot holding the id, or the empty slot it belongs in
+   */
+  private int slot(final long most, final long least) {
+    final int mask = heads.length() - 1;
+
+    int slot = hash(most, least) & mask;
+    while (heads.get(slot) != NONE && (mostSignificant.get(slot) != most || leastSignificant.get(slot) != least)) {
+      slot = (slot + 1) & mask;
+    }
+
+    return slot;
+  }
+
+  private void allocateSlots(final int capacity) {
+    mostSignificant = PrimitiveStorage.longs(capacity, offHeap);
+    leastSignificant = PrimitiveStorage.longs(capacity, offHeap);
+    heads = PrimitiveStorage.ints(capacity, offHeap);
+    heads.fill(NONE);
+  }
+
+  private void grow() {
+    final PrimitiveStorage.Longs oldMost = mostSignificant;
+    final PrimitiveStorage.Longs oldLeast = leastSignificant;
+    final PrimitiveStorage.Ints oldHeads = heads;
+
+    allocateSlots(oldHeads.length() * 2);
+    for (int i = 0; i < oldHeads.length(); i++) {
+      final int head = oldHeads.get(i);
+      if (head != NONE) {
+        final long most = oldMost.get(i);
+        final long least = oldLeast.get(i);
+        final int slot = slot(most, least);
+        mostSignificant.set(slot, most);
+        leastSignificant.set(slot, least);
+        heads.set(slot, head);
+      }
+    }
+
+    oldMost.close();
+    oldLeast.close();
+    oldHeads.close();
+  }
+
+  private String key(final String value) {
+    return caseExact ? value : value.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Parse the canonical, 36 character, form of a UUID. Upper case hex digits are only accepted if the ids ignore case,
+   * a case exact upper case id is kept as a string.
+   *
+   * @return Returns {@code true} if the {@code value} was parsed into {@link #parsedMost} and {@link #parsedLeast}
+   */
+  private boolean parse(final String value) {
+    if (value.length() != UUID_LENGTH) {
+      return false;
+    }
+
+    long most = 0;
+    long least = 0;
+    boolean upperCase = false;
+    for (int i = 0; i < UUID_LENGTH; i++) {
+      final char c = value.charAt(i);
+      if (i == 8 || i == 13 || i == 18 || i == 23) {
+        if (c != '-') {
+          return false;
+        }
+        continue;
+      }
+
+      final int digit = digit(c);
+      if (digit < 0) {
+        return false;
+      }
+      upperCase |= c >= 'A' && c <= 'F';
+
+      if (i < 19) {
+        most = (most << 4) | digit;
+      } else {
+        least = (least << 4) | digit;
+      }
+    }
+
+    parsedMost = most;
+    parsedLeast = least;
+    parsedUpperCase = upperCase;
+    return true;
+  }
+
+  private int digit(final char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    if (!caseExact && c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+
+  private static int hash(final long most, final long least) {
+    long h = (most ^ Long.rotateLeft(least, 32)) * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
@@ -0,0 +1,234 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The immutable, precomputed metadata of a {@link Attribute} the patch checks run against: flags, type, sub-attributes
+ * and, for multi-valued attributes, the resolved element class, so neither the attribute nor its field is asked again
+ * per request. The element class comes from the generated {@link PatchMetadata} of the schema if there is one, from
+ * the attribute's field otherwise.
+ *
+ * @since 2.23
+ */
+@Slf4j
+public final class CompiledAttribute {
+  static final int MULTI_VALUED = 1;
+  static final int REQUIRED = 1 << 1;
+  static final int CASE_EXACT = 1 << 2;
+  static final int READ_ONLY = 1 << 3;
+  static final int IMMUTABLE = 1 << 4;
+  static final int WRITE_ONLY = 1 << 5;
+  static final int COMPLEX = 1 << 6;
+
+  private static final CompiledAttribute[] NONE = new CompiledAttribute[0];
+
+  private final Attribute attribute;
+  private final String name;
+  private final int slot;
+  private final int flags;
+  private final Attribute.Type type;
+  private final CompiledAttribute[] subAttributes;
+  private final Map<String, CompiledAttribute> byName;
+  private final Map<Attribute, CompiledAttribute> byAttribute;
+  private final Class<?> elementClass;
+
+  private CompiledAttribute(final String urn, final String parent, final Attribute attribute, final int slot) {
+    this.attribute = attribute;
+    this.name = attribute.getName();
+    this.slot = slot;
+    this.type = attribute.getType();
+    this.flags = flags(attribute);
+    this.elementClass = isMultiValued()
+      ? elementClass(urn, parent == null ? name : parent + "." + name, attribute)
+      : null;
+
+    final Collection<Attribute> attributes = attribute.getAttributes();
+    if (attributes == null || attributes.isEmpty()) {
+      this.subAttributes = NONE;
+      this.byName = Collections.emptyMap();
+      this.byAttribute = Collections.emptyMap();
+    } else {
+      this.subAttributes = new CompiledAttribute[attributes.size()];
+      this.byName = new HashMap<>();
+      this.byAttribute = new IdentityHashMap<>();
+      int i = 0;
+      for (Attribute subAttribute : attributes) {
+        final CompiledAttribute compiled = new CompiledAttribute(urn, name, subAttribute, i);
+        this.subAttributes[i++] = compiled;
+        this.byName.put(compiled.name, compiled);
+        this.byAttribute.put(subAttribute, compiled);
+      }
+    }
+  }
+
+  static CompiledAttribute compile(final Attribute attribute, final int slot) {
+    return compile(null, attribute, slot);
+  }
+
+  /**
+   * @param urn       the URN of the declaring schema, its generated {@link PatchMetadata} is used when present
+   * @param attribute the {@link Attribute}
+   * @param slot      the index of the attribute within its schema
+   * @return Returns the compiled {@code attribute}
+   */
+  static CompiledAttribute compile(final String urn, final Attribute attribute, final int slot) {
+    return new CompiledAttribute(urn, null, attribute, slot);
+  }
+
+  /**
+   * @return Returns the {@link Attribute} this was compiled from
+   */
+  public Attribute attribute() {
+    return attribute;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * @return Returns the position of the attribute among the attributes of its schema or parent attribute
+   */
+  public int slot() {
+    return slot;
+  }
+
+  public Attribute.Type type() {
+    return type;
+  }
+
+  public boolean isMultiValued() {
+    return (flags & MULTI_VALUED) != 0;
+  }
+
+  public boolean isRequired() {
+    return (flags & REQUIRED) != 0;
+  }
+
+  public boolean isCaseExact() {
+    return (flags & CASE_EXACT) != 0;
+  }
+
+  public boolean isReadOnly() {
+    return (flags & READ_ONLY) != 0;
+  }
+
+  /**
+   * @return Returns {@code true} if the attribute is {@link Attribute.Mutability#READ_ONLY} or
+   * {@link Attribute.Mutability#IMMUTABLE}
+   */
+  public boolean isUnmodifiable() {
+    return (flags & (READ_ONLY | IMMUTABLE)) != 0;
+  }
+
+  public boolean isComplex() {
+    return (flags & COMPLEX) != 0;
+  }
+
+  /**
+   * @return Returns {@code true} if the attribute is multi-valued and complex
+   */
+  public boolean isMultiValuedComplex() {
+    return (flags & (MULTI_VALUED | COMPLEX)) == (MULTI_VALUED | COMPLEX);
+  }
+
+  /**
+   * @return Returns the element class of a multi-valued attribute's field, or {@code null} if it can't be resolved
+   */
+  public Class<?> elementClass() {
+    return elementClass;
+  }
+
+  /**
+   * @return Returns the sub-attributes, in the order of the schema; the array must not be modified
+   */
+  CompiledAttribute[] subAttributes() {
+    return subAttributes;
+  }
+
+  /**
+   * @param subAttributeName the sub-attribute name
+   * @return Returns the sub-attribute, resolved like {@link Attribute#getAttribute(String)}, or {@code null}
+   */
+  public CompiledAttribute subAttribute(final String subAttributeName) {
+    if (subAttributeName == null) {
+      return null;
+    }
+
+    final CompiledAttribute compiled = byName.get(subAttributeName);
+    if (compiled != null || byName.isEmpty()) {
+      return compiled;
+    }
+
+    // the attribute decides how names are matched otherwise
+    final Attribute subAttribute = attribute.getAttribute(subAttributeName);
+    return subAttribute == null ? null : byAttribute.get(subAttribute);
+  }
+
+  private static int flags(final Attribute attribute) {
+    int flags = 0;
+    if (attribute.isMultiValued()) {
+      flags |= MULTI_VALUED;
+    }
+    if (attribute.isRequired()) {
+      flags |= REQUIRED;
+    }
+    if (attribute.isCaseExact()) {
+      flags |= CASE_EXACT;
+    }
+    if (Attribute.Type.COMPLEX.equals(attribute.getType())) {
+      flags |= COMPLEX;
+    }
+    if (attribute.getMutability() != null) {
+      switch (attribute.getMutability()) {
+        case READ_ONLY:
+          flags |= READ_ONLY;
+          break;
+        case IMMUTABLE:
+          flags |= IMMUTABLE;
+          break;
+        case WRITE_ONLY:
+          flags |= WRITE_ONLY;
+          break;
+        default:
+          break;
+      }
+    }
+
+    return flags;
+  }
+
+  private static Class<?> elementClass(final String urn, final String path, final Attribute attribute) {
+    final Class<?> generated = PatchMetadataIndex.elementClass(urn, path);
+    if (generated != null) {
+      return generated;
+    }
+
+    try {
+      final Field field = attribute.getField();
+      if (field == null || !(field.getGenericType() instanceof ParameterizedType)) {
+        return null;
+      }
+
+      final Type actualTypeArgument = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+      return actualTypeArgument instanceof Class
+        ? (Class<?>) actualTypeArgument
+        : Class.forName(actualTypeArgument.getTypeName());
+    } catch (ClassNotFoundException | RuntimeException e) {
+      log.warn("Element class of '{}' can't be resolved, {}", attribute.getName(), e.getMessage());
+      log.debug("STACKTRACE::", e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.directory.scim.spec.schema.Schema;
+
+/**
+ * The immutable, precomputed metadata of a {@link Schema}, its attributes compiled to {@link CompiledAttribute}s.
+ *
+ * @since 2.23
+ */
+public final class CompiledSchema {
+  private final Schema schema;
+  private final CompiledAttribute[] attributes;
+  private final Map<String, CompiledAttribute> byName = new HashMap<>();
+  private final Map<Attribute, CompiledAttribute> byAttribute = new IdentityHashMap<>();
+
+  private CompiledSchema(final Schema schema) {
+    this.schema = schema;
+
+    final Collection<Attribute> schemaAttributes = schema.getAttributes() == null
+      ? Collections.<Attribute>emptyList()
+      : schema.getAttributes();
+    this.attributes = new CompiledAttribute[schemaAttributes.size()];
+    int i = 0;
+    for (Attribute attribute : schemaAttributes) {
+      final CompiledAttribute compiled = CompiledAttribute.compile(schema.getId(), attribute, i);
+      this.attributes[i++] = compiled;
+      this.byName.put(compiled.name(), compiled);
+      this.byAttribute.put(attribute, compiled);
+    }
+  }
+
+  /**
+   * @param schema the {@link Schema}
+   * @return Returns the compiled {@code schema}
+   */
+  public static CompiledSchema of(final Schema schema) {
+    return new CompiledSchema(schema);
+  }
+
+  /**
+   * @return Returns the {@link Schema} this was compiled from
+   */
+  public Schema schema() {
+    return schema;
+  }
+
+  public String id() {
+    return schema.getId();
+  }
+
+  /**
+   * @param name the attribute name
+   * @return Returns the attribute, resolved like {@link Schema#getAttribute(String)}, or {@code null}
+   */
+  public CompiledAttribute attribute(final String name) {
+    if (name == null) {
+      return null;
+    }
+
+    final CompiledAttribute compiled = byName.get(name);
+    if (compiled != null) {
+      return compiled;
+    }
+
+    // the schema decides how names are matched otherwise
+    final Attribute attribute = schema.getAttribute(name);
+    return attribute == null ? null : byAttribute.get(attribute);
+  }
+
+  /**
+   * @return Returns the number of top-level attributes, the slots are {@code 0} up to it
+   */
+  public int slots() {
+    return attributes.length;
+  }
+
+  /**
+   * @param slot the slot of an attribute
+   * @return Returns the attribute in the {@code slot}
+   */
+  public CompiledAttribute attribute(final int slot) {
+    return attributes[slot];
+  }
+}
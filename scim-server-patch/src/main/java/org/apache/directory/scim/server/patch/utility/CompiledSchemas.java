@@ -0,0 +1,129 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.schema.Schema;
+
+/**
+ * The compiled schemas of a {@link Registry}, built once per {@link SchemaGeneration}; the patch checks run against
+ * them instead of asking the registry and its schemas per operation.
+ * <p>
+ * {@link #lookup} and {@link #declaring(String, String)} fall back to the registry for a schema the snapshot doesn't
+ * have, e.g. one registered since it was built and not yet noticed by the generation, or one only the registry's
+ * lookup resolves; such a schema is compiled per call. The registry is only weakly referenced, like
+ * {@link SchemaGeneration} does, the compiled schemas don't keep it from being collected.
+ *
+ * @since 2.23
+ */
+public final class CompiledSchemas {
+  private final List<CompiledSchema> schemas = new ArrayList<>();
+  private final Map<String, CompiledSchema> byId = new HashMap<>();
+  private final Map<Schema, CompiledSchema> bySchema = new IdentityHashMap<>();
+  private final WeakReference<Registry> registry;
+
+  private CompiledSchemas(final Registry registry) {
+    this.registry = new WeakReference<>(registry);
+    final Collection<Schema> all = registry.getAllSchemas();
+    if (all != null) {
+      for (Schema schema : all) {
+        if (schema != null) {
+          final CompiledSchema compiled = CompiledSchema.of(schema);
+          schemas.add(compiled);
+          bySchema.put(schema, compiled);
+          if (schema.getId() != null) {
+            byId.putIfAbsent(schema.getId(), compiled);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @param registry the {@link Registry}
+   * @return Returns the compiled schemas of the {@code registry}
+   */
+  public static CompiledSchemas of(final Registry registry) {
+    return new CompiledSchemas(Objects.requireNonNull(registry, "registry must not be null."));
+  }
+
+  /**
+   * @param urn the schema URN
+   * @return Returns the compiled schema, or {@code null} if there is none
+   */
+  public CompiledSchema schema(final String urn) {
+    return urn == null ? null : byId.get(urn);
+  }
+
+  /**
+   * @param urn the schema URN
+   * @return Returns the compiled schema, from the snapshot or else the registry, or {@code null} if neither knows it
+   */
+  public CompiledSchema lookup(final String urn) {
+    final CompiledSchema compiled = schema(urn);
+    final Registry current = compiled != null || urn == null ? null : this.registry.get();
+    if (current == null) {
+      return compiled;
+    }
+
+    final Schema schema = current.getSchema(urn);
+    return schema == null ? null : schema(schema);
+  }
+
+  /**
+   * @param schema a {@link Schema} of the registry
+   * @return Returns the compiled {@code schema}, compiled on the spot if the registry didn't list it
+   */
+  public CompiledSchema schema(final Schema schema) {
+    final CompiledSchema compiled = bySchema.get(schema);
+    return compiled != null ? compiled : CompiledSchema.of(schema);
+  }
+
+  /**
+   * @param attributeName the attribute name
+   * @return Returns the first schema, in the registry's order, declaring the attribute, or {@code null}
+   */
+  public CompiledSchema declaring(final String attributeName) {
+    for (CompiledSchema schema : schemas) {
+      if (schema.attribute(attributeName) != null) {
+        return schema;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * @param urn           the schema URN of the path, {@code null} if the path isn't qualified
+   * @param attributeName the attribute name
+   * @return Returns the schema the {@code urn} names if it declares the attribute, without a {@code urn} the first
+   * schema declaring it, from the snapshot or else the registry, or {@code null}
+   */
+  public CompiledSchema declaring(final String urn, final String attributeName) {
+    if (urn != null) {
+      final CompiledSchema schema = lookup(urn);
+      return schema != null && schema.attribute(attributeName) != null ? schema : null;
+    }
+
+    final CompiledSchema compiled = declaring(attributeName);
+    final Registry current = compiled != null ? null : this.registry.get();
+    if (current == null || current.getAllSchemas() == null) {
+      return compiled;
+    }
+
+    for (Schema schema : current.getAllSchemas()) {
+      if (schema != null && schema.getAttribute(attributeName) != null) {
+        return schema(schema);
+      }
+    }
+
+    return null;
+  }
+}
@@ -3,6 +3,7 @@ package org.apache.directory.scim.server.patch.utility;
 import static java.util.Objects.requireNonNull;
 import static org.apache.directory.scim.server.patch.utility.PatchUtil.throwScimException;
 
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.net.URI;
@@ -37,6 +38,18 @@ class FilterMatchUtil {
                                               final Map<String, Object> element,
                                               final PatchOperation operation)
     throws ScimException {
+    return matcher(parent, operation).matches(element);
+  }
+
+  /**
+   * @param parent    the {@link Schema.Attribute} representing the top level attribute
+   * @param operation the patch operation
+   * @return Returns the matcher of the elements of the {@code parent} for the filter of the {@code operation}, to
+   * use for all the elements it's evaluated on
+   * @throws ScimException if the operation has no filter
+   */
+  public static ElementMatcher matcher(final Schema.Attribute parent, final PatchOperation operation)
+    throws ScimException {
     Objects.requireNonNull(parent, "parent attribute must not be null.");
 
     final ValuePathExpression valuePathExpression =
@@ -53,76 +66,140 @@ class FilterMatchUtil {
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_FILTER);
     }
 
-    return expressions(parent, element, valuePathExpression.getAttributeExpression());
+    return new ElementMatcher(parent, valuePathExpression.getAttributeExpression());
+  }
+
+  /**
+   * @param parent           the {@link Schema.Attribute} representing the top level attribute
+   * @param filterExpression the filter
+   * @return Returns the matcher of the elements of the {@code parent} for the {@code filterExpression}
+   */
+  static ElementMatcher matcher(final Schema.Attribute parent, final FilterExpression filterExpression) {
+    return new ElementMatcher(parent, filterExpression);
   }
 
   static boolean expressions(final Schema.Attribute parent, final Map<String, Object> element, final FilterExpression filterExpression)
     throws ScimException {
-    if (filterExpression instanceof AttributeComparisonExpression) {
-      return comparisonExpression(
-        (AttributeComparisonExpression) filterExpression,
-        parent,
-        element);
-    } else if (filterExpression instanceof AttributePresentExpression) {
-      final AttributePresentExpression attributePresentExpression =
-        (AttributePresentExpression) filterExpression;
-
-      return presentExpression(attributePresentExpression.getAttributePath().getSubAttributeName(),
-        element);
-    } else if (filterExpression instanceof LogicalExpression) {
-      LogicalExpression logicalExpression = (LogicalExpression) filterExpression;
-
-      switch (logicalExpression.getOperator()) {
-        case AND:
-          return (expressions(parent, element, logicalExpression.getLeft())) &&
-            expressions(parent, element, logicalExpression.getRight());
-        case OR:
-          return (expressions(parent, element, logicalExpression.getLeft())) ||
-            expressions(parent, element, logicalExpression.getRight());
-        default:
-          throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_FILTER);
-      }
-    } else if (filterExpression instanceof GroupExpression) {
-      final GroupExpression groupExpression = (GroupExpression) filterExpression;
-      return expressions(parent, element, groupExpression.getFilterExpression());
+    return matcher(parent, filterExpression).matches(element);
+  }
+
+  /**
+   * Matches the elements of a multi-valued complex attribute against one filter. A compare value of the filter is
+   * converted to the type of its attribute by the first element compared with it, the following elements reuse it;
+   * only the element values are converted per element.
+   *
+   * @since 2.23
+   */
+  public static final class ElementMatcher {
+    private final Schema.Attribute parent;
+    private final FilterExpression filterExpression;
+    private final Map<AttributeComparisonExpression, Object> compareValues = new IdentityHashMap<>();
+
+    private ElementMatcher(final Schema.Attribute parent, final FilterExpression filterExpression) {
+      this.parent = parent;
+      this.filterExpression = filterExpression;
     }
 
-    throw new UnsupportedOperationException("valuePathExpression.getAttributeExpression() instance " +
-      filterExpression.getClass());
-  }
+    /**
+     * @param element the element of the complex attribute representing the child attributes.
+     * @return Returns {@code true} if and only if the {@code element} matches the filter
+     * @throws ScimException any expression issue or malformed filters
+     */
+    public boolean matches(final Map<String, Object> element) throws ScimException {
+      return expressions(element, filterExpression);
+    }
+
+    private boolean expressions(final Map<String, Object> element, final FilterExpression filterExpression)
+      throws ScimException {
+      if (filterExpression instanceof AttributeComparisonExpression) {
+        return comparisonExpression((AttributeComparisonExpression) filterExpression, element);
+      } else if (filterExpression instanceof AttributePresentExpression) {
+        final AttributePresentExpression attributePresentExpression =
+          (AttributePresentExpression) filterExpression;
+
+        return presentExpression(attributePresentExpression.getAttributePath().getSubAttributeName(),
+          element);
+      } else if (filterExpression instanceof LogicalExpression) {
+        LogicalExpression logicalExpression = (LogicalExpression) filterExpression;
+
+        switch (logicalExpression.getOperator()) {
+          case AND:
+            return (expressions(element, logicalExpression.getLeft())) &&
+              expressions(element, logicalExpression.getRight());
+          case OR:
+            return (expressions(element, logicalExpression.getLeft())) ||
+              expressions(element, logicalExpression.getRight());
+          default:
+            throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_FILTER);
+        }
+      } else if (filterExpression instanceof GroupExpression) {
+        final GroupExpression groupExpression = (GroupExpression) filterExpression;
+        return expressions(element, groupExpression.getFilterExpression());
+      }
+
+      throw new UnsupportedOperationException("valuePathExpression.getAttributeExpression() instance " +
+        filterExpression.getClass());
+    }
 
-  static boolean comparisonExpression(final AttributeComparisonExpression attributeComparisonExpression,
-                                      final Schema.Attribute parent,
-                                      final Map<String, Object> element) throws ScimException {
-    final String subAttr = attributeComparisonExpression.getAttributePath().getSubAttributeName();
-    final CompareOperator compareOperator = attributeComparisonExpression.getOperation();
-    final Object compareValue = attributeComparisonExpression.getCompareValue();
-
-    if (!parent.getAttributes().isEmpty() && subAttr!=null) {
-      final Schema.Attribute subAttribute = parent.getAttribute(subAttr);
-      if (subAttribute!=null) {
-        return comparisonExpression(subAttribute, element.get(subAttr),
-          compareOperator, compareValue);
+    private boolean comparisonExpression(final AttributeComparisonExpression attributeComparisonExpression,
+                                         final Map<String, Object> element) throws ScimException {
+      final String subAttr = attributeComparisonExpression.getAttributePath().getSubAttributeName();
+      final CompareOperator compareOperator = attributeComparisonExpression.getOperation();
+
+      if (!parent.getAttributes().isEmpty() && subAttr!=null) {
+        final Schema.Attribute subAttribute = parent.getAttribute(subAttr);
+        if (subAttribute!=null) {
+          return coercedComparison(subAttribute, ValueCoercion.coerce(subAttribute.getType(), element.get(subAttr)),
+            compareOperator, compareValue(attributeComparisonExpression, subAttribute));
+        }
+        // TODO else ScimException ( check spec )?
+      } else {
+        return coercedComparison(parent, ValueCoercion.coerce(parent.getType(), element.get(subAttr)),
+          compareOperator, compareValue(attributeComparisonExpression, parent));
       }
       // TODO else ScimException ( check spec )?
-    } else {
-      return comparisonExpression(parent, element.get(subAttr),
-        compareOperator, compareValue);
+
+      return false;
     }
-    // TODO else ScimException ( check spec )?
 
-    return false;
+    /**
+     * @return Returns the compare value of the {@code attributeComparisonExpression} converted to the type of the
+     * {@code attribute}, once
+     */
+    private Object compareValue(final AttributeComparisonExpression attributeComparisonExpression,
+                                final Schema.Attribute attribute) {
+      if (compareValues.containsKey(attributeComparisonExpression)) {
+        return compareValues.get(attributeComparisonExpression);
+      }
+
+      final Object compareValue =
+        ValueCoercion.coerce(attribute.getType(), attributeComparisonExpression.getCompareValue());
+      compareValues.put(attributeComparisonExpression, compareValue);
+      return compareValue;
+    }
   }
 
   static boolean presentExpression(final String subAttributeName, final Map<String, Object> element) {
     return element.get(subAttributeName)!=null;
   }
 
-  @SuppressWarnings("unchecked")
   static boolean comparisonExpression(final Schema.Attribute attribute,
-                                      final Object value,
+                                      final Object elementValue,
                                       final CompareOperator compareOperator,
-                                      final Object compareValue) throws ScimException {
+                                      final Object filterValue) throws ScimException {
+    return coercedComparison(attribute, ValueCoercion.coerce(attribute.getType(), elementValue), compareOperator,
+      ValueCoercion.coerce(attribute.getType(), filterValue));
+  }
+
+  /**
+   * @param value        the element value, in the attribute's Java type, see {@link ValueCoercion}
+   * @param compareValue the compare value, in the attribute's Java type
+   */
+  @SuppressWarnings("unchecked")
+  static boolean coercedComparison(final Schema.Attribute attribute,
+                                   final Object value,
+                                   final CompareOperator compareOperator,
+                                   final Object compareValue) throws ScimException {
     if ((value==null) && (compareValue==null)) {
       return true;
     }
@@ -0,0 +1,31 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import java.util.Map;
+
+/**
+ * The build-time metadata of a SCIM resource or extension class, generated by the
+ * {@code scim-server-patch-metadata} module for the {@code @ScimResourceType} and {@code @ScimExtensionType} classes
+ * this module serves and registered as a {@link java.util.ServiceLoader} service.
+ * <p>
+ * With it the patch engine resolves the element classes of multi-valued attributes without reading the attributes'
+ * fields and their generic types at runtime, see {@link CompiledAttribute#elementClass()}.
+ *
+ * @since 2.23
+ */
+public interface PatchMetadata {
+
+  /**
+   * @return Returns the URN of the schema the class implements
+   */
+  String urn();
+
+  /**
+   * @return Returns the class the metadata was generated for
+   */
+  Class<?> type();
+
+  /**
+   * @return Returns the element classes of the multi-valued attributes, keyed by {@code attr} or {@code attr.sub}
+   */
+  Map<String, Class<?>> elementClasses();
+}
@@ -0,0 +1,58 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The generated {@link PatchMetadata} on the class path, indexed by schema URN. Loaded once; a URN without generated
+ * metadata falls back to the reflective resolution of {@link CompiledAttribute}.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class PatchMetadataIndex {
+  private static final Map<String, Map<String, Class<?>>> ELEMENT_CLASSES = load();
+
+  private PatchMetadataIndex() {
+  }
+
+  /**
+   * @param urn  the schema URN
+   * @param path the attribute, {@code attr} or {@code attr.sub}
+   * @return Returns the generated element class of the multi-valued attribute, or {@code null} if there is none
+   */
+  static Class<?> elementClass(final String urn, final String path) {
+    if (urn == null) {
+      return null;
+    }
+
+    final Map<String, Class<?>> elementClasses = ELEMENT_CLASSES.get(urn);
+    return elementClasses == null ? null : elementClasses.get(path);
+  }
+
+  private static Map<String, Map<String, Class<?>>> load() {
+    final Map<String, Map<String, Class<?>>> elementClasses = new HashMap<>();
+    try {
+      for (PatchMetadata metadata : ServiceLoader.load(PatchMetadata.class, PatchMetadata.class.getClassLoader())) {
+        final Map<String, Class<?>> previous = elementClasses.put(metadata.urn(), metadata.elementClasses());
+        if (previous != null) {
+          log.warn("Patch metadata for '{}' generated more than once, using {}", metadata.urn(), metadata.type().getName());
+        }
+      }
+    } catch (ServiceConfigurationError e) {
+      log.warn("Generated patch metadata can't be loaded, resolving element classes at runtime, {}", e.getMessage());
+      log.debug("STACKTRACE::", e);
+      return Collections.emptyMap();
+    }
+
+    if (!elementClasses.isEmpty()) {
+      log.info("Loaded generated patch metadata for {} schema(s)", elementClasses.size());
+    }
+    return elementClasses;
+  }
+}
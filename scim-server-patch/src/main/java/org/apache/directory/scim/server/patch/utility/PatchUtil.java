@@ -3,9 +3,9 @@ package org.apache.directory.scim.server.patch.utility;
 import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REMOVE;
 import static org.apache.directory.scim.spec.schema.Schema.Attribute;
 
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Deque;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -24,7 +24,6 @@ import org.apache.directory.scim.spec.protocol.ErrorMessageType;
 import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
 import org.apache.directory.scim.spec.protocol.data.ErrorResponse;
 import org.apache.directory.scim.spec.protocol.data.PatchOperation;
-import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
 import org.apache.directory.scim.spec.protocol.exception.ScimException;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.schema.Schema;
@@ -43,9 +42,6 @@ public class PatchUtil {
   private static final Map<PatchOperation.Type, Set<String>> UNSUPPORTED =
     ImmutableMap.of(REMOVE, ImmutableSet.of("active"));
 
-  private static final String PRIMARY_ATTR_NAME = "primary";
-  private static final String SUB_ATTR_NAME = "type";
-
   /**
    * @param status      the HTTP {@link Response.Status}
    * @param messageType the {@link ErrorMessageType} type
@@ -77,38 +73,62 @@ public class PatchUtil {
   }
 
   /**
-   * Check the mutability of an attribute.
+   * Check the mutability of an attribute, the same check as {@link #checkMutability(CompiledAttribute)}.
    *
    * @param attribute Attribute.
    * @throws ScimException if the {@code Attribute} is {@link Attribute.Mutability#READ_ONLY} or {@link Attribute.Mutability#IMMUTABLE}
    */
   public static void checkMutability(Attribute attribute) throws ScimException {
-    if (attribute.getMutability().equals(Attribute.Mutability.READ_ONLY) ||
-      attribute.getMutability().equals(Attribute.Mutability.IMMUTABLE)) {
-      log.error("Can not update a immutable attribute or a read-only attribute '{}'", attribute.getName());
+    checkMutability(CompiledAttribute.compile(attribute, 0));
+  }
+
+  /**
+   * Check the mutability of a compiled attribute.
+   *
+   * @param attribute the {@link CompiledAttribute}.
+   * @throws ScimException if the {@code attribute} is {@link Attribute.Mutability#READ_ONLY} or {@link Attribute.Mutability#IMMUTABLE}
+   */
+  public static void checkMutability(final CompiledAttribute attribute) throws ScimException {
+    if (attribute.isUnmodifiable()) {
+      log.error("Can not update a immutable attribute or a read-only attribute '{}'", attribute.name());
 
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.MUTABILITY);
     }
   }
 
   /**
-   * Check if attribute is required.
+   * Check if attribute is required, the same check as {@link #checkRequired(PatchOperation, CompiledSchema)}; the
+   * {@code schema} is compiled per call.
    *
    * @param operation the {@link PatchOperation}.
    * @param schema    the {@link Schema}.
    * @throws ScimException if the {@code Attribute} is {@link Attribute.Mutability#READ_ONLY} or {@link Attribute.Mutability#IMMUTABLE}
    */
   public static void checkRequired(final PatchOperation operation, final Schema schema, final Registry registry) throws ScimException {
-    final PathAttributePair pair = attributePair(operation, schema, registry);
-    if (pair.getAttribute().getMutability().equals(Attribute.Mutability.READ_ONLY) || pair.getAttribute().isRequired()) {
-      log.error("Can not {} a required or a read-only attribute, '{}.'", operation.getOperation(), pair.getPath());
+    checkRequired(operation, CompiledSchema.of(schema));
+  }
+
+  /**
+   * Check if a compiled attribute is required.
+   *
+   * @param operation the {@link PatchOperation}.
+   * @param schema    the {@link CompiledSchema}.
+   * @throws ScimException if the {@code Attribute} is {@link Attribute.Mutability#READ_ONLY} or required
+   */
+  public static void checkRequired(final PatchOperation operation, final CompiledSchema schema) throws ScimException {
+    final AttributeReference reference = attributeReference(operation);
+    final CompiledAttribute attribute = compiledAttribute(reference, schema);
+    if (attribute.isReadOnly() || attribute.isRequired()) {
+      log.error("Can not {} a required or a read-only attribute, '{}.'", operation.getOperation(),
+        reference.getFullyQualifiedAttributeName());
 
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.MUTABILITY);
     }
   }
 
   /**
-   * Check the path.
+   * Check the path, the same check as {@link #checkSchema(PatchOperation, CompiledSchemas)}; the schemas of the
+   * {@code registry} are compiled per call.
    *
    * @param operation the {@link PatchOperation}.
    * @param registry the {@link Registry}.
@@ -116,13 +136,25 @@ public class PatchUtil {
    * @throws ScimException if operation type isn't supported for the given attribute
    */
   public static Schema checkSchema(PatchOperation operation, Registry registry) throws ScimException {
-    AttributeReference reference = attributeReference(operation);
-    if (reference!=null) {
-      for (final Schema schema : registry.getAllSchemas()) {
-        if (schema.getAttribute(reference.getAttributeName())!=null) {
-          return schema;
-        }
-      }
+    return checkSchema(operation, CompiledSchemas.of(registry)).schema();
+  }
+
+  /**
+   * Check the path against the compiled schemas, a path qualified with a schema URN against that schema only; a schema
+   * the compiled schemas miss is looked up in their registry.
+   *
+   * @param operation the {@link PatchOperation}.
+   * @param schemas   the {@link CompiledSchemas} of the registry.
+   * @return Returns the {@link CompiledSchema} the {@code operation} is found in
+   * @throws ScimException if the path doesn't name an attribute of the schema it's qualified with, or of any schema
+   */
+  public static CompiledSchema checkSchema(final PatchOperation operation, final CompiledSchemas schemas) throws ScimException {
+    final AttributeReference reference = attributeReference(operation);
+    final CompiledSchema schema = reference == null
+      ? null
+      : schemas.declaring(reference.getUrn(), reference.getAttributeName());
+    if (schema != null) {
+      return schema;
     }
 
     log.error("Invalid path specified for {} operation.", operation.getOperation());
@@ -144,13 +176,25 @@ public class PatchUtil {
   }
 
   /**
-   * Check the value.
+   * Check the value, the same check as {@link #checkValue(PatchOperation, CompiledSchema)}; the {@code schema} is
+   * compiled per call.
    *
    * @param patchOperation the {@link PatchOperation}.
    * @param schema    the {@link Schema}.
    * @throws ScimException if {@link PatchOperation#getValue()} is null and the {@link PatchOperation#getOperation()} is not ADD or REPLACE
    */
   public static void checkValue(final PatchOperation patchOperation, final Schema schema) throws ScimException {
+    checkValue(patchOperation, CompiledSchema.of(schema));
+  }
+
+  /**
+   * Check the value against the compiled schema.
+   *
+   * @param patchOperation the {@link PatchOperation}.
+   * @param schema         the {@link CompiledSchema}.
+   * @throws ScimException if {@link PatchOperation#getValue()} is null and the {@link PatchOperation#getOperation()} is not ADD or REPLACE
+   */
+  public static void checkValue(final PatchOperation patchOperation, final CompiledSchema schema) throws ScimException {
     if (!patchOperation.getOperation().equals(PatchOperation.Type.REMOVE) && patchOperation.getValue()==null) {
       log.error("The value is required to perform patch '{}' operation on '{}'.",
         patchOperation.getOperation(), patchOperation.getPath().toString());
@@ -159,40 +203,83 @@ public class PatchUtil {
     }
 
     final AttributeReference attributeReference = attributeReference(patchOperation);
-    if(attributeReference.getAttributeName() != null) {
-      final Attribute attribute = schema.getAttribute(attributeReference.getAttributeName());
-      if(attributeReference.getSubAttributeName() != null) {
-        final Attribute subAttribute = attribute.getAttribute(attributeReference.getSubAttributeName());
-        if(subAttribute != null) {
-          if(validateValue(subAttribute.getType(), patchOperation.getValue())) {
-            log.error("The value is not compatible with target type'{}', provided type '{}'.",
-              subAttribute.getType(), patchOperation.getValue().getClass().getName());
+    if (attributeReference.getAttributeName() != null) {
+      CompiledAttribute target = schema.attribute(attributeReference.getAttributeName());
+      if (attributeReference.getSubAttributeName() != null) {
+        target = target.subAttribute(attributeReference.getSubAttributeName());
+      }
+
+      if (target != null && target.isMultiValued() && !target.isComplex()
+        && patchOperation.getValue() instanceof Collection) {
+        // the values of a multi-valued simple attribute, each checked against the type
+        for (Object value : (Collection<?>) patchOperation.getValue()) {
+          if (value == null || validateValue(target.type(), value)) {
+            log.error("The values are not compatible with target type '{}', provided type '{}'.",
+              target.type(), value == null ? null : value.getClass().getName());
 
             throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
           }
         }
-      } else {
-        if(validateValue(attribute.getType(), patchOperation.getValue())) {
-          log.error("The value is not compatible with target type '{}', provided type '{}'.",
-            attribute.getType(), patchOperation.getValue().getClass().getName());
+      } else if (target != null && validateValue(target.type(), patchOperation.getValue())) {
+        log.error("The value is not compatible with target type '{}', provided type '{}'.",
+          target.type(), patchOperation.getValue().getClass().getName());
+
+        throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
+      }
+    }
+  }
+
+  /**
+   * Check the sub-attribute values of the elements added to a multi-valued complex attribute.
+   *
+   * @param attribute the multi-valued complex {@link CompiledAttribute}.
+   * @param elements  the elements, as maps of sub-attribute names to values.
+   * @throws ScimException if a value isn't compatible with the type of its sub-attribute
+   */
+  public static void checkElements(final CompiledAttribute attribute, final Collection<Map<String, Object>> elements) throws ScimException {
+    for (Map<String, Object> element : elements) {
+      for (Map.Entry<String, Object> entry : element.entrySet()) {
+        final CompiledAttribute subAttribute = attribute.subAttribute(entry.getKey());
+        if (subAttribute == null || entry.getValue() == null) {
+          continue;
+        }
+
+        final Collection<?> values = subAttribute.isMultiValued() && entry.getValue() instanceof Collection
+          ? (Collection<?>) entry.getValue()
+          : Collections.singletonList(entry.getValue());
+        for (Object value : values) {
+          if (value == null || validateValue(subAttribute.type(), value)) {
+            log.error("The value of '{}.{}' is not compatible with target type '{}', provided type '{}'.",
+              attribute.name(), subAttribute.name(), subAttribute.type(), value == null ? null : value.getClass().getName());
 
-          throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
+            throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE);
+          }
         }
       }
     }
   }
 
   /**
-   * Check the attribute is supported for given patch operation.
+   * Check the attribute is supported for given patch operation, the same check as {@link #checkSupported(PatchOperation)}.
    *
    * @param operation the {@link PatchOperation}.
    * @param schema    the {@link Schema}.
    * @throws ScimException if operation type isn't supported for the given attribute
    */
   public static void checkSupported(final PatchOperation operation, final Schema schema, final Registry registry) throws ScimException {
-    final PathAttributePair pair = attributePair(operation, schema, registry);
-    if (UNSUPPORTED.getOrDefault(operation.getOperation(), ImmutableSet.of()).contains(pair.getPath())) {
-      log.error("The operation type '{}' for attribute '{}' isn't supported", operation.getOperation(), pair.getPath());
+    checkSupported(operation);
+  }
+
+  /**
+   * Check the attribute is supported for given patch operation.
+   *
+   * @param operation the {@link PatchOperation}.
+   * @throws ScimException if operation type isn't supported for the given attribute
+   */
+  public static void checkSupported(final PatchOperation operation) throws ScimException {
+    final String path = attributeReference(operation).getFullyQualifiedAttributeName();
+    if (UNSUPPORTED.getOrDefault(operation.getOperation(), ImmutableSet.of()).contains(path)) {
+      log.error("The operation type '{}' for attribute '{}' isn't supported", operation.getOperation(), path);
 
       throw throwScimException(Response.Status.BAD_REQUEST, ErrorMessageType.INVALID_PATH);
     }
@@ -207,7 +294,8 @@ public class PatchUtil {
     return Objects.equals(oldValue, newValue);
   }
 
-  private static boolean validateValue(final Attribute.Type type, final Object value) {
+  private static boolean validateValue(final Attribute.Type type, final Object operationValue) {
+    final Object value = ValueCoercion.coerce(type, operationValue);
     log.debug("Validate Value expected type: {} actual type: {}", type, value.getClass().getSimpleName());
     switch (type) {
       case BOOLEAN:
@@ -307,6 +395,20 @@ public class PatchUtil {
     return new PathAttributePair(reference.getFullyQualifiedAttributeName(), attribute);
   }
 
+  /**
+   * @param reference the {@link AttributeReference} of a patch operation
+   * @param schema    the {@link CompiledSchema} the attribute is found in
+   * @return Returns the compiled attribute the {@code reference} names, resolved like {@link #attributePair}
+   */
+  private static CompiledAttribute compiledAttribute(final AttributeReference reference, final CompiledSchema schema) {
+    final CompiledAttribute attribute = schema.attribute(reference.getAttributeName());
+    if (reference.getUrn() != null && attribute != null && reference.getSubAttributeName() != null) {
+      return attribute.subAttribute(reference.getSubAttributeName());
+    }
+
+    return attribute;
+  }
+
   /**
    * For multi-valued attributes, a PATCH operation that sets a value's "primary" sub-attribute to "true" SHALL cause
    * the server to automatically set "primary" to "false" for any other values in the array.
@@ -314,70 +416,36 @@ public class PatchUtil {
    * @param scimResourceAsMap the {@link Map} representation of the {@link ScimResource}
    * @param patchOperation the {@link PatchOperation}
    * @param registry the {@link Registry}.
+   * @see PrimaryTracker
    */
-  @SuppressWarnings("unchecked")
   public static void multiValuedPrimaryUniqueness(Map<String,Object> scimResourceAsMap, final PatchOperation patchOperation,
                                                   final Registry registry) {
-    AttributeReference reference = attributeReference(patchOperation);
-    if (reference == null) {
-      return;
-    }
-
-    if(reference.getAttributeName() == null || reference.getSubAttributeName() == null) {
-      return;
-    }
-
-    final Schema schema = registry.getAllSchemas()
-      .stream()
-      .filter( s -> s.getAttribute(reference.getAttributeName()) != null)
-      .findFirst().orElse(null);
-
-    if(schema == null) {
-      return;
-    }
-
-    Attribute attribute = schema.getAttribute(reference.getAttributeName());
-
-    if(attribute == null || (!scimResourceAsMap.containsKey(reference.getAttributeName()) &&
-      (!attribute.isMultiValued() && !attribute.getType().equals(Attribute.Type.COMPLEX)))) {
-      return;
-    }
+    new PrimaryTracker(registry).enforce(scimResourceAsMap, patchOperation, null);
+  }
 
-    if(attribute.getAttribute(reference.getSubAttributeName()) == null) {
-      return;
+  /**
+   * Remove the marked elements of the {@code list} in a single pass, the unmarked elements keep their order.
+   *
+   * @param list   the {@link List} to compact, should support random access
+   * @param marked the indexes of the elements to remove
+   * @param <E>    the element type
+   * @return Returns the number of removed elements
+   */
+  public static <E> int removeMarked(final List<E> list, final BitSet marked) {
+    int write = marked.nextSetBit(0);
+    if (write < 0 || write >= list.size()) {
+      return 0;
     }
 
-    try {
-      Object multiValuedObject = scimResourceAsMap.get(reference.getAttributeName());
-      if(multiValuedObject instanceof List) {
-        PatchOperation searchPatchOps = new PatchOperation();
-        searchPatchOps.setPath(new PatchOperationPath(String.format("%s[primary EQ true]", reference.getAttributeName())));
-
-        Deque<Integer> matches = new LinkedList<>();
-        List<Map<String, Object>> asListOfMaps = (List<Map<String, Object>>) multiValuedObject;
-        int index = 0;
-        for (final Map<String, Object> element : asListOfMaps) {
-          if(!FilterMatchUtil.complexAttributeMatch(attribute, element, patchOperation) &&
-            FilterMatchUtil.complexAttributeMatch(attribute, element, searchPatchOps)) {
-            matches.push(index);
-          }
-
-          index++;
-        }
-
-        if(matches.size() >= 1) {
-          log.info("Found {} multi-valued attribute {} with primary attribute set to 'true'", matches.size(), attribute.getName());
-          matches.forEach(i -> {
-            log.info("Setting 'primary = false' for element index {} whose associated attribute '{}' and sub-attribute '{}' is '{}'",
-              i, reference.getAttributeName(), SUB_ATTR_NAME, asListOfMaps.get(i).get(SUB_ATTR_NAME));
-            asListOfMaps.get(i).replace(PRIMARY_ATTR_NAME, false);
-          });
-        }
+    final int size = list.size();
+    for (int read = write + 1; read < size; read++) {
+      if (!marked.get(read)) {
+        list.set(write++, list.get(read));
       }
-    } catch (Exception e) {
-      log.error("There was a problem determining if attribute '{}}' has a single unique element with 'primary' set to 'true'.",
-        reference.getAttributeName(), e);
     }
+    list.subList(write, size).clear();
+
+    return size - write;
   }
 
   public static String attributeLoggable(final Schema.Attribute attribute) throws ScimException {
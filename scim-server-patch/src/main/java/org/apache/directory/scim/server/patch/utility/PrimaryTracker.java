@@ -0,0 +1,214 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Enforces that at most the elements selected by a patch operation's value filter keep {@code primary = true} in a
+ * multi-valued complex attribute, see section 2.4 of RFC7643.
+ * <p>
+ * Conflicting elements are found and demoted in one scan, the operation's own filter is evaluated only for elements
+ * whose {@code primary} is {@code true}, and no filter is built or parsed. A tracker lives for the operations of one
+ * request. For attributes with at least {@link #THRESHOLD} elements it remembers the indexes of the remaining primary
+ * elements, so a later operation that reports the indexes it modified only has to look at those and the remembered
+ * ones. Any operation on the attribute that can't report its modified indexes drops what was remembered.
+ * <p>
+ * The threshold can be changed with {@code -Dscim.patch.primary.threshold}.
+ *
+ * @since 2.23
+ */
+@Slf4j
+public final class PrimaryTracker {
+  static final String THRESHOLD_PROPERTY = "scim.patch.primary.threshold";
+  static final int THRESHOLD = Integer.getInteger(THRESHOLD_PROPERTY, 64);
+
+  private static final String PRIMARY_ATTR_NAME = "primary";
+  private static final String SUB_ATTR_NAME = "type";
+  private static final int[] NONE = new int[0];
+
+  private final Registry registry;
+  private final int threshold;
+  private final Map<String, Attribute> attributes = new HashMap<>();
+  private final Map<String, Primaries> primaries = new HashMap<>();
+
+  public PrimaryTracker(final Registry registry) {
+    this(registry, THRESHOLD);
+  }
+
+  PrimaryTracker(final Registry registry, final int threshold) {
+    this.registry = registry;
+    this.threshold = threshold;
+  }
+
+  /**
+   * Demote the {@code primary} elements the {@code operation} didn't select.
+   *
+   * @param resourceAsMap   the {@link Map} representing the SCIM resource, after the {@code operation} was applied
+   * @param operation       the applied {@link PatchOperation}
+   * @param modifiedIndexes the indexes of the elements the {@code operation} modified or added, or {@code null} if
+   *                        they aren't known, e.g. elements were removed
+   */
+  @SuppressWarnings("unchecked")
+  public void enforce(final Map<String, Object> resourceAsMap, final PatchOperation operation, final int[] modifiedIndexes) {
+    final ValuePathExpression valuePathExpression = operation.getPath() == null
+      ? null
+      : operation.getPath().getValuePathExpression();
+    final AttributeReference reference = valuePathExpression == null ? null : valuePathExpression.getAttributePath();
+    if (reference == null || reference.getAttributeName() == null) {
+      return;
+    }
+
+    final String attributeName = reference.getAttributeName();
+
+    // only a completed scan remembers the primaries again, anything else leaves them stale
+    final Primaries remembered = primaries.remove(attributeName);
+    if (reference.getSubAttributeName() == null || valuePathExpression.getAttributeExpression() == null) {
+      return;
+    }
+
+    final Attribute attribute = attribute(attributeName);
+    if (attribute == null || (!resourceAsMap.containsKey(attributeName) &&
+      (!attribute.isMultiValued() && !attribute.getType().equals(Attribute.Type.COMPLEX)))) {
+      return;
+    }
+
+    if (attribute.getAttribute(reference.getSubAttributeName()) == null) {
+      return;
+    }
+
+    final Object multiValuedObject = resourceAsMap.get(attributeName);
+    if (!(multiValuedObject instanceof List)) {
+      return;
+    }
+
+    final List<Map<String, Object>> elements = (List<Map<String, Object>>) multiValuedObject;
+
+    try {
+      final int[] candidates = remembered != null && modifiedIndexes != null && remembered.size == elements.size()
+        ? union(remembered.indexes, modifiedIndexes)
+        : null;
+
+      int[] demote = NONE;
+      int[] keep = NONE;
+      int demoted = 0;
+      int kept = 0;
+
+      final int length = candidates == null ? elements.size() : candidates.length;
+      final FilterMatchUtil.ElementMatcher matcher =
+        FilterMatchUtil.matcher(attribute, valuePathExpression.getAttributeExpression());
+      for (int i = 0; i < length; i++) {
+        final int index = candidates == null ? i : candidates[i];
+        final Map<String, Object> element = elements.get(index);
+        if (element == null || !Boolean.TRUE.equals(element.get(PRIMARY_ATTR_NAME))) {
+          continue;
+        }
+
+        if (matcher.matches(element)) {
+          keep = append(keep, kept++, index);
+        } else {
+          demote = append(demote, demoted++, index);
+        }
+      }
+
+      if (demoted > 0) {
+        log.info("Found {} multi-valued attribute {} with primary attribute set to 'true'", demoted, attribute.getName());
+        for (int i = 0; i < demoted; i++) {
+          final Map<String, Object> element = elements.get(demote[i]);
+          log.info("Setting 'primary = false' for element index {} whose associated attribute '{}' and sub-attribute '{}' is '{}'",
+            demote[i], attributeName, SUB_ATTR_NAME, element.get(SUB_ATTR_NAME));
+          element.replace(PRIMARY_ATTR_NAME, false);
+        }
+      }
+
+      if (elements.size() >= threshold) {
+        primaries.put(attributeName, new Primaries(elements.size(), Arrays.copyOf(keep, kept)));
+      }
+    } catch (Exception e) {
+      log.error("There was a problem determining if attribute '{}}' has a single unique element with 'primary' set to 'true'.",
+        attributeName, e);
+    }
+  }
+
+  /**
+   * Drop what is remembered about the {@code attributeName}, for operations that changed its elements without
+   * going through {@link #enforce}.
+   *
+   * @param attributeName the attribute name
+   */
+  public void forget(final String attributeName) {
+    primaries.remove(attributeName);
+  }
+
+  /**
+   * @return Returns the remembered primary indexes of the {@code attributeName}, or {@code null}
+   */
+  int[] remembered(final String attributeName) {
+    final Primaries remembered = primaries.get(attributeName);
+    return remembered == null ? null : remembered.indexes;
+  }
+
+  private Attribute attribute(final String attributeName) {
+    if (attributes.containsKey(attributeName)) {
+      return attributes.get(attributeName);
+    }
+
+    Attribute attribute = null;
+    for (Schema schema : registry.getAllSchemas()) {
+      attribute = schema.getAttribute(attributeName);
+      if (attribute != null) {
+        break;
+      }
+    }
+
+    attributes.put(attributeName, attribute);
+    return attribute;
+  }
+
+  private static int[] append(int[] array, final int size, final int value) {
+    if (size == array.length) {
+      array = Arrays.copyOf(array, Math.max(4, size * 2));
+    }
+    array[size] = value;
+    return array;
+  }
+
+  /**
+   * @return Returns the sorted, distinct union of {@code a} and {@code b}
+   */
+  private static int[] union(final int[] a, final int[] b) {
+    final int[] union = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, union, a.length, b.length);
+    Arrays.sort(union);
+
+    int size = 0;
+    for (int i = 0; i < union.length; i++) {
+      if (size == 0 || union[size - 1] != union[i]) {
+        union[size++] = union[i];
+      }
+    }
+
+    return Arrays.copyOf(union, size);
+  }
+
+  private static final class Primaries {
+    private final int size;
+    private final int[] indexes;
+
+    private Primaries(final int size, final int[] indexes) {
+      this.size = size;
+      this.indexes = indexes;
+    }
+  }
+}
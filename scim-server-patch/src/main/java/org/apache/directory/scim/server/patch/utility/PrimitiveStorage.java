@@ -0,0 +1,418 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fixed length {@code long}, {@code int} and {@link String} arrays, either on the heap or in direct memory outside of
+ * it.
+ * <p>
+ * Direct memory is released by {@link Longs#close()} / {@link Ints#close()} / {@link Strings#close()} rather than when
+ * the garbage collector gets around to the buffer; if the JVM doesn't let the buffer be freed explicitly it's left to
+ * the collector. In direct memory the characters of the strings are appended to one buffer, and {@link Strings#get}
+ * creates a new string on every call.
+ *
+ * @since 2.23
+ */
+@Slf4j
+final class PrimitiveStorage {
+  private static final Freer FREER = freer();
+
+  private PrimitiveStorage() {
+  }
+
+  static Longs longs(final int length, final boolean offHeap) {
+    return offHeap ? new DirectLongs(length) : new HeapLongs(length);
+  }
+
+  static Ints ints(final int length, final boolean offHeap) {
+    return offHeap ? new DirectInts(length) : new HeapInts(length);
+  }
+
+  static Strings strings(final int length, final boolean offHeap) {
+    return offHeap ? new DirectStrings(length) : new HeapStrings(length);
+  }
+
+  abstract static class Longs implements AutoCloseable {
+    abstract long get(int index);
+
+    abstract void set(int index, long value);
+
+    abstract int length();
+
+    @Override
+    public void close() {
+    }
+  }
+
+  abstract static class Ints implements AutoCloseable {
+    abstract int get(int index);
+
+    abstract void set(int index, int value);
+
+    abstract int length();
+
+    abstract void fill(int value);
+
+    /**
+     * @return Returns a copy of the first {@code length} elements, padded with {@code 0}, this array is closed
+     */
+    abstract Ints grow(int length);
+
+    @Override
+    public void close() {
+    }
+  }
+
+  abstract static class Strings implements AutoCloseable {
+    abstract String get(int index);
+
+    /**
+     * Set the string at {@code index}, in direct memory each index is meant to be set once, the characters of a
+     * replaced string stay in the buffer until it's closed.
+     */
+    abstract void set(int index, String value);
+
+    abstract int length();
+
+    /**
+     * @return Returns a copy of the first {@code length} elements, padded with {@code null}, this array is closed
+     */
+    abstract Strings grow(int length);
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static final class HeapLongs extends Longs {
+    private final long[] values;
+
+    private HeapLongs(final int length) {
+      this.values = new long[length];
+    }
+
+    @Override
+    long get(final int index) {
+      return values[index];
+    }
+
+    @Override
+    void set(final int index, final long value) {
+      values[index] = value;
+    }
+
+    @Override
+    int length() {
+      return values.length;
+    }
+  }
+
+  private static final class HeapInts extends Ints {
+    private final int[] values;
+
+    private HeapInts(final int[] values) {
+      this.values = values;
+    }
+
+    private HeapInts(final int length) {
+      this(new int[length]);
+    }
+
+    @Override
+    int get(final int index) {
+      return values[index];
+    }
+
+    @Override
+    void set(final int index, final int value) {
+      values[index] = value;
+    }
+
+    @Override
+    int length() {
+      return values.length;
+    }
+
+    @Override
+    void fill(final int value) {
+      Arrays.fill(values, value);
+    }
+
+    @Override
+    Ints grow(final int length) {
+      return new HeapInts(Arrays.copyOf(values, length));
+    }
+  }
+
+  private static final class HeapStrings extends Strings {
+    private final String[] values;
+
+    private HeapStrings(final String[] values) {
+      this.values = values;
+    }
+
+    private HeapStrings(final int length) {
+      this(new String[length]);
+    }
+
+    @Override
+    String get(final int index) {
+      return values[index];
+    }
+
+    @Override
+    void set(final int index, final String value) {
+      values[index] = value;
+    }
+
+    @Override
+    int length() {
+      return values.length;
+    }
+
+    @Override
+    Strings grow(final int length) {
+      return new HeapStrings(Arrays.copyOf(values, length));
+    }
+  }
+
+  private static final class DirectLongs extends Longs {
+    private final int length;
+    private ByteBuffer buffer;
+
+    private DirectLongs(final int length) {
+      this.length = length;
+      this.buffer = allocate(length, Long.BYTES);
+    }
+
+    @Override
+    long get(final int index) {
+      return buffer.getLong(index << 3);
+    }
+
+    @Override
+    void set(final int index, final long value) {
+      buffer.putLong(index << 3, value);
+    }
+
+    @Override
+    int length() {
+      return length;
+    }
+
+    @Override
+    public void close() {
+      free(buffer);
+      buffer = null;
+    }
+  }
+
+  private static final class DirectInts extends Ints {
+    private final int length;
+    private ByteBuffer buffer;
+
+    private DirectInts(final int length) {
+      this.length = length;
+      this.buffer = allocate(length, Integer.BYTES);
+    }
+
+    @Override
+    int get(final int index) {
+      return buffer.getInt(index << 2);
+    }
+
+    @Override
+    void set(final int index, final int value) {
+      buffer.putInt(index << 2, value);
+    }
+
+    @Override
+    int length() {
+      return length;
+    }
+
+    @Override
+    void fill(final int value) {
+      for (int i = 0; i < length; i++) {
+        buffer.putInt(i << 2, value);
+      }
+    }
+
+    @Override
+    Ints grow(final int length) {
+      final DirectInts grown = new DirectInts(length);
+      final ByteBuffer source = buffer.duplicate();
+      // through Buffer, the covariant overrides of Java 9 don't exist on Java 8
+      ((Buffer) source).limit(Math.min(this.length, length) << 2);
+      grown.buffer.put(source);
+      ((Buffer) grown.buffer).rewind();
+      close();
+      return grown;
+    }
+
+    @Override
+    public void close() {
+      free(buffer);
+      buffer = null;
+    }
+  }
+
+  private static final class DirectStrings extends Strings {
+    private static final int INITIAL_CHARS = 1024;
+
+    // by index, where the characters start and their count + 1, 0 for null
+    private Ints starts;
+    private Ints lengths;
+    private ByteBuffer chars;
+    private int capacity;
+    private int used;
+
+    private DirectStrings(final int length) {
+      this.starts = new DirectInts(length);
+      this.lengths = new DirectInts(length);
+      this.lengths.fill(0);
+      this.capacity = INITIAL_CHARS;
+      this.chars = allocate(capacity, Character.BYTES);
+    }
+
+    private DirectStrings(final DirectStrings source, final int length) {
+      this.starts = source.starts.grow(length);
+      this.lengths = source.lengths.grow(length);
+      this.chars = source.chars;
+      this.capacity = source.capacity;
+      this.used = source.used;
+    }
+
+    @Override
+    String get(final int index) {
+      final int length = lengths.get(index) - 1;
+      if (length < 0) {
+        return null;
+      }
+
+      final int start = starts.get(index);
+      final char[] value = new char[length];
+      for (int i = 0; i < length; i++) {
+        value[i] = chars.getChar((start + i) << 1);
+      }
+
+      return new String(value);
+    }
+
+    @Override
+    void set(final int index, final String value) {
+      if (value == null) {
+        lengths.set(index, 0);
+        return;
+      }
+
+      if (used + value.length() > capacity) {
+        grow();
+        set(index, value);
+        return;
+      }
+
+      for (int i = 0; i < value.length(); i++) {
+        chars.putChar((used + i) << 1, value.charAt(i));
+      }
+      starts.set(index, used);
+      lengths.set(index, value.length() + 1);
+      used += value.length();
+    }
+
+    @Override
+    int length() {
+      return starts.length();
+    }
+
+    @Override
+    Strings grow(final int length) {
+      final DirectStrings grown = new DirectStrings(this, length);
+      // the characters move to the grown array, the indexes have been closed by Ints#grow
+      this.chars = null;
+      return grown;
+    }
+
+    @Override
+    public void close() {
+      starts.close();
+      lengths.close();
+      free(chars);
+      chars = null;
+    }
+
+    private void grow() {
+      final ByteBuffer grown = allocate(capacity * 2, Character.BYTES);
+      final ByteBuffer source = chars.duplicate();
+      ((Buffer) source).limit(used << 1);
+      grown.put(source);
+      ((Buffer) grown).rewind();
+      free(chars);
+      chars = grown;
+      capacity *= 2;
+    }
+  }
+
+  private static ByteBuffer allocate(final int length, final int bytes) {
+    final long size = (long) length * bytes;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Can't allocate " + size + " bytes of direct memory in a single buffer.");
+    }
+
+    return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+  }
+
+  private static void free(final ByteBuffer buffer) {
+    if (buffer == null) {
+      return;
+    }
+
+    try {
+      FREER.free(buffer);
+    } catch (Exception e) {
+      log.debug("Direct buffer left to the garbage collector", e);
+    }
+  }
+
+  private interface Freer {
+    void free(ByteBuffer buffer) throws Exception;
+  }
+
+  private static Freer freer() {
+    // Java 9 and later
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      final Object unsafe = theUnsafe.get(null);
+      return buffer -> invokeCleaner.invoke(unsafe, buffer);
+    } catch (Exception | LinkageError e) {
+      log.trace("sun.misc.Unsafe.invokeCleaner isn't available", e);
+    }
+
+    // Java 8
+    try {
+      final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return buffer -> {
+        final Object it = cleaner.invoke(buffer);
+        if (it != null) {
+          clean.invoke(it);
+        }
+      };
+    } catch (Exception | LinkageError e) {
+      log.trace("sun.misc.Cleaner isn't available", e);
+    }
+
+    return buffer -> {
+    };
+  }
+}
@@ -0,0 +1,110 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.scim.server.schema.Registry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A counter of the schema changes of a {@link Registry}, observed by the patch subsystem.
+ * <p>
+ * The registry doesn't publish its changes, so the generation is advanced when reading it finds the registry's
+ * schemas or resource types changed: their number, or any of their instances, differs from the last read. That covers
+ * a schema or an extension registered, replaced or removed at runtime without the registering code knowing about the
+ * patch engine; {@link #bump()} advances the generation explicitly, e.g. for a change made to a schema in place.
+ * Everything the patch engine derives from the schemas, the compiled schemas and the path cache, belongs to a context
+ * built for one generation, and is dropped with the context once the generation moves on, so no TTL or restart is
+ * needed to keep it correct.
+ * <p>
+ * Reading the generation walks the registry's schemas and resource types, a handful of instances, comparing their
+ * identities; callers keep the instance of their registry instead of looking it up per read.
+ *
+ * @since 2.23
+ */
+@Slf4j
+public final class SchemaGeneration {
+  private static final Map<Registry, SchemaGeneration> GENERATIONS = new WeakHashMap<>();
+
+  // the registry is the weak key of this instance, a strong reference would keep both alive
+  private final WeakReference<Registry> registry;
+  private final AtomicLong generation = new AtomicLong();
+  private volatile long observed;
+
+  private SchemaGeneration(final Registry registry) {
+    this.registry = new WeakReference<>(registry);
+    this.observed = fingerprint(registry);
+  }
+
+  /**
+   * @param registry the {@link Registry}
+   * @return Returns the {@link SchemaGeneration} of the {@code registry}
+   */
+  public static SchemaGeneration of(final Registry registry) {
+    Objects.requireNonNull(registry, "registry must not be null.");
+
+    synchronized (GENERATIONS) {
+      return GENERATIONS.computeIfAbsent(registry, SchemaGeneration::new);
+    }
+  }
+
+  /**
+   * @return Returns the current generation, advanced first if the registry's schemas or resource types changed since
+   * the last read
+   */
+  public long current() {
+    final Registry current = registry.get();
+    if (current != null) {
+      final long fingerprint = fingerprint(current);
+      if (fingerprint != observed) {
+        synchronized (this) {
+          if (fingerprint != observed) {
+            observed = fingerprint;
+            log.info("Schemas or resource types of the registry changed");
+            return bump();
+          }
+        }
+      }
+    }
+
+    return generation.get();
+  }
+
+  /**
+   * Advance the generation, after a schema or an extension was registered, replaced or removed.
+   *
+   * @return Returns the new generation
+   */
+  public long bump() {
+    final long next = generation.incrementAndGet();
+    log.info("Schema generation advanced to {}", next);
+
+    return next;
+  }
+
+  /**
+   * @return Returns a value that changes when a schema or resource type is added, removed or replaced
+   */
+  static long fingerprint(final Registry registry) {
+    return fingerprint(registry.getAllSchemas()) * 31 + fingerprint(registry.getAllResourceTypes());
+  }
+
+  private static long fingerprint(final Collection<?> items) {
+    if (items == null) {
+      return 0L;
+    }
+
+    // independent of the iteration order, the registry's collections aren't ordered
+    long fingerprint = items.size();
+    for (Object it : items) {
+      fingerprint += System.identityHashCode(it) * 0x9E3779B97F4A7C15L;
+    }
+
+    return fingerprint;
+  }
+}
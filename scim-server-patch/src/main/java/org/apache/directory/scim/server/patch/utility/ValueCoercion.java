@@ -0,0 +1,229 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Converts operation values and filter compare values to the Java type the engine uses for the attribute's type:
+ * {@link Boolean}, {@link Integer}, {@link Double}, {@link LocalDateTime}, {@link URI} or {@link String}.
+ * <p>
+ * JSON hands out strings and {@link Long}s where the checks and comparisons expect those types. Values that already
+ * have the canonical type are returned as they are, values that can't be converted too, so the existing checks reject
+ * them as before. Date times are parsed with a shared formatter. Nothing is cached here, a filter's compare value is
+ * converted once per filter by {@link FilterMatchUtil.ElementMatcher}, the element values each time they're compared.
+ * <p>
+ * A date time is coerced to UTC for the checks and comparisons only, see {@link #assignable}; the value assigned to
+ * the resource keeps the offset and precision the client sent.
+ *
+ * @since 2.23
+ */
+@Slf4j
+public final class ValueCoercion {
+  // xsd:dateTime, with or without an offset
+  private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ISO_DATE_TIME;
+
+  private ValueCoercion() {
+  }
+
+  /**
+   * @param attribute the attribute the value is assigned to or compared with
+   * @param value     the value
+   * @return Returns the {@code value} converted to the attribute's type, the elements of a collection each converted
+   * for a multi-valued attribute
+   */
+  public static Object coerce(final CompiledAttribute attribute, final Object value) {
+    if (attribute == null) {
+      return value;
+    }
+
+    return coerce(attribute.type(), attribute.isMultiValued(), value);
+  }
+
+  /**
+   * @param attribute the attribute the value is assigned to
+   * @param value     the value
+   * @return Returns the value to assign: the {@code value} converted like {@link #coerce(CompiledAttribute, Object)},
+   * except for a date time, which is returned as is, so its offset isn't lost
+   */
+  public static Object assignable(final CompiledAttribute attribute, final Object value) {
+    if (attribute != null && Attribute.Type.DATE_TIME.equals(attribute.type())) {
+      return value;
+    }
+
+    return coerce(attribute, value);
+  }
+
+  /**
+   * @param type         the attribute type
+   * @param multiValued  {@code true} if the attribute is multi-valued
+   * @param value        the value
+   * @return Returns the {@code value} converted to the {@code type}, the elements of a collection each converted for a
+   * multi-valued attribute
+   */
+  public static Object coerce(final Attribute.Type type, final boolean multiValued, final Object value) {
+    if (multiValued && value instanceof Collection) {
+      final Collection<?> values = (Collection<?>) value;
+      List<Object> coerced = null;
+      int i = 0;
+      for (Object it : values) {
+        final Object converted = coerce(type, it);
+        if (converted != it) {
+          if (coerced == null) {
+            // copy on the first change only
+            coerced = new ArrayList<>(values);
+          }
+          coerced.set(i, converted);
+        }
+        i++;
+      }
+
+      return coerced == null ? value : coerced;
+    }
+
+    return coerce(type, value);
+  }
+
+  /**
+   * @param type  the attribute type
+   * @param value a single value
+   * @return Returns the {@code value} converted to the {@code type}, or the {@code value} itself
+   */
+  public static Object coerce(final Attribute.Type type, final Object value) {
+    if (value == null || type == null) {
+      return value;
+    }
+
+    switch (type) {
+      case BOOLEAN:
+        return toBoolean(value);
+      case INTEGER:
+        return toInteger(value);
+      case DECIMAL:
+        return toDecimal(value);
+      case DATE_TIME:
+        return toDateTime(value);
+      case REFERENCE:
+        return value instanceof String ? orElse(parseReference((String) value), value) : value;
+      default:
+        return value;
+    }
+  }
+
+  private static Object toBoolean(final Object value) {
+    if (value instanceof String) {
+      final String it = ((String) value).trim();
+      if ("true".equalsIgnoreCase(it)) {
+        return Boolean.TRUE;
+      }
+      if ("false".equalsIgnoreCase(it)) {
+        return Boolean.FALSE;
+      }
+    }
+
+    return value;
+  }
+
+  private static Object toInteger(final Object value) {
+    if (value instanceof Integer) {
+      return value;
+    }
+
+    if (value instanceof Long || value instanceof Short || value instanceof Byte) {
+      final long it = ((Number) value).longValue();
+      return it >= Integer.MIN_VALUE && it <= Integer.MAX_VALUE ? Integer.valueOf((int) it) : value;
+    }
+
+    if (value instanceof BigInteger) {
+      final BigInteger it = (BigInteger) value;
+      return it.bitLength() < Integer.SIZE ? Integer.valueOf(it.intValue()) : value;
+    }
+
+    return value;
+  }
+
+  private static Object toDecimal(final Object value) {
+    if (value instanceof Double) {
+      return value;
+    }
+
+    if (value instanceof Float || value instanceof BigDecimal || value instanceof Integer || value instanceof Long
+      || value instanceof Short || value instanceof Byte || value instanceof BigInteger) {
+      return ((Number) value).doubleValue();
+    }
+
+    return value;
+  }
+
+  private static Object toDateTime(final Object value) {
+    if (value instanceof LocalDateTime) {
+      return value;
+    }
+
+    if (value instanceof String) {
+      return orElse(parseDateTime((String) value), value);
+    }
+
+    if (value instanceof OffsetDateTime) {
+      return ((OffsetDateTime) value).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+    }
+
+    if (value instanceof ZonedDateTime) {
+      return ((ZonedDateTime) value).withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+    }
+
+    if (value instanceof Instant) {
+      return LocalDateTime.ofInstant((Instant) value, ZoneOffset.UTC);
+    }
+
+    if (value instanceof Date) {
+      return LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneOffset.UTC);
+    }
+
+    return value;
+  }
+
+  /**
+   * @return Returns the date time in UTC if the {@code value} has an offset, the local date time otherwise
+   */
+  private static LocalDateTime parseDateTime(final String value) {
+    try {
+      final TemporalAccessor parsed = DATE_TIME.parseBest(value.trim(), OffsetDateTime::from, LocalDateTime::from);
+      return parsed instanceof OffsetDateTime
+        ? ((OffsetDateTime) parsed).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime()
+        : (LocalDateTime) parsed;
+    } catch (DateTimeParseException e) {
+      log.debug("'{}' isn't a date time, {}", value, e.getMessage());
+      return null;
+    }
+  }
+
+  private static URI parseReference(final String value) {
+    try {
+      return URI.create(value);
+    } catch (IllegalArgumentException e) {
+      log.debug("'{}' isn't a reference, {}", value, e.getMessage());
+      return null;
+    }
+  }
+
+  private static Object orElse(final Object coerced, final Object value) {
+    return coerced == null ? value : coerced;
+  }
+}
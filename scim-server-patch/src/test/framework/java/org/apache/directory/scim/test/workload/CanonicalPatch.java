@@ -0,0 +1,244 @@
+package org.apache.directory.scim.test.workload;
+
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.ADD;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REMOVE;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REPLACE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.filter.FilterParseException;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.ResourceReference;
+import org.apache.directory.scim.test.builder.AddressBuilder;
+import org.apache.directory.scim.test.builder.EmailBuilder;
+import org.apache.directory.scim.test.builder.MetaBuilder;
+import org.apache.directory.scim.test.builder.NameBuilder;
+import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.apache.directory.scim.test.builder.ResourceReferenceBuilder;
+import org.apache.directory.scim.test.builder.ScimGroupBuilder;
+import org.apache.directory.scim.test.builder.ScimUserBuilder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A fixed set of representative PATCH requests and the resources they are applied to.
+ * <p>
+ * Unlike the argument providers, the fixtures are fully deterministic (no {@link com.github.javafaker.Faker} values),
+ * so they can be used where the size of the resource matters, e.g. allocation budgets.
+ */
+public enum CanonicalPatch {
+  USER_SINGULAR_REPLACE {
+    @Override
+    public ScimResource resource() {
+      return user();
+    }
+
+    @Override
+    public List<PatchOperation> operations() throws FilterParseException {
+      return ImmutableList.of(operation(REPLACE, "displayName", "Barbara J Jensen"));
+    }
+  },
+  USER_COMPLEX_REPLACE {
+    @Override
+    public ScimResource resource() {
+      return user();
+    }
+
+    @Override
+    public List<PatchOperation> operations() throws FilterParseException {
+      return ImmutableList.of(operation(REPLACE, "name.givenName", "Barbara"));
+    }
+  },
+  USER_FILTERED_MULTI_VALUED {
+    @Override
+    public ScimResource resource() {
+      return user();
+    }
+
+    @Override
+    public List<PatchOperation> operations() throws FilterParseException {
+      return ImmutableList.of(operation(REPLACE, "addresses[type EQ \"work\"].locality", "Rochester"));
+    }
+  },
+  USER_PRIMARY {
+    @Override
+    public ScimResource resource() {
+      return user();
+    }
+
+    @Override
+    public List<PatchOperation> operations() throws FilterParseException {
+      return ImmutableList.of(operation(REPLACE, "emails[type EQ \"home\"].primary", true));
+    }
+  },
+  USER_EXTENSION {
+    @Override
+    public ScimResource resource() {
+      return user();
+    }
+
+    @Override
+    public List<PatchOperation> operations() throws FilterParseException {
+      return ImmutableList.of(operation(ADD, EnterpriseExtension.URN + ":costCenter", "4130"));
+    }
+  },
+  USER_PATH_OMITTED {
+    @Override
+    public ScimResource resource() {
+      return user();
+    }
+
+    @Override
+    public List<PatchOperation> operations() {
+      return ImmutableList.of(PatchOperationBuilder.builder()
+        .operation(REPLACE)
+        .value(ImmutableMap.of(
+          "displayName", "Babs Jensen",
+          "nickName", "Babs",
+          "title", "Tour Guide"))
+        .build());
+    }
+  },
+  GROUP_MEMBER_REMOVE {
+    @Override
+    public ScimResource resource() {
+      return group(GROUP_SIZE);
+    }
+
+    @Override
+    public List<PatchOperation> operations() throws FilterParseException {
+      return ImmutableList.of(operation(REMOVE, String.format("members[value EQ \"%s\"]", memberId(GROUP_SIZE / 2)), null));
+    }
+  },
+  GROUP_MEMBER_ADD {
+    @Override
+    public ScimResource resource() {
+      return group(0);
+    }
+
+    @Override
+    public List<PatchOperation> operations() throws FilterParseException {
+      List<ResourceReference> members = new ArrayList<>();
+      for (int i = 0; i < BURST_SIZE; i++) {
+        members.add(member(GROUP_SIZE + i));
+      }
+
+      return ImmutableList.of(operation(ADD, "members", members));
+    }
+  };
+
+  /**
+   * The number of members of the group fixtures.
+   */
+  public static final int GROUP_SIZE = 500;
+
+  /**
+   * The number of members added by a single membership burst.
+   */
+  public static final int BURST_SIZE = 10;
+
+  private static final String USER_ID = "2819c223-7f76-453a-919d-413861904646";
+  private static final String GROUP_ID = "e9e30dba-f08f-4109-8486-d5c6a331660a";
+  private static final LocalDateTime CREATED = LocalDateTime.of(2021, 1, 23, 4, 56, 22);
+
+  /**
+   * @return Returns a new instance of the resource the {@link #operations()} are applied to
+   */
+  public abstract ScimResource resource();
+
+  /**
+   * @return Returns the patch operations of this canonical request
+   * @throws FilterParseException if any of the paths can't be parsed
+   */
+  public abstract List<PatchOperation> operations() throws FilterParseException;
+
+  /**
+   * @param index the member index
+   * @return Returns a stable member id for the given {@code index}
+   */
+  public static String memberId(final int index) {
+    return UUID.nameUUIDFromBytes(("member-" + index).getBytes(StandardCharsets.UTF_8)).toString();
+  }
+
+  public static ScimUser user() {
+    return ScimUserBuilder.builder()
+      .id(USER_ID)
+      .externalId("bjensen")
+      .userName("bjensen@example.com")
+      .displayName("Babs Jensen")
+      .active(true)
+      .name(NameBuilder.builder()
+        .formatted("Ms. Barbara J Jensen, III")
+        .familyName("Jensen")
+        .givenName("Barbara")
+        .middleName("Jane")
+        .honorificPrefix("Ms.")
+        .honorificSuffix("III")
+        .build())
+      .emails(new ArrayList<>(ImmutableList.of(
+        EmailBuilder.builder().type("work").primary(true).value("bjensen@example.com").display("WORK - Email address").build(),
+        EmailBuilder.builder().type("home").primary(false).value("babs@jensen.org").display("HOME - Email address").build())))
+      .addresses(new ArrayList<>(ImmutableList.of(
+        AddressBuilder.builder().type("work").primary(true).streetAddress("100 Universal City Plaza")
+          .locality("Hollywood").region("CA").postalCode("91608").country("US").build(),
+        AddressBuilder.builder().type("home").primary(false).streetAddress("456 Hollywood Blvd")
+          .locality("Hollywood").region("CA").postalCode("91608").country("US").build())))
+      .meta(MetaBuilder.builder()
+        .created(CREATED)
+        .lastModified(CREATED)
+        .resourceType("User")
+        .location("http://example.com/Users/" + USER_ID)
+        .build())
+      .build();
+  }
+
+  public static ScimGroup group(final int size) {
+    List<ResourceReference> members = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      members.add(member(i));
+    }
+
+    // the group builder doesn't carry the id and meta over
+    ScimGroup group = ScimGroupBuilder.builder()
+      .displayName("Tour Guides")
+      .members(members.isEmpty() ? null : members)
+      .build();
+    group.setId(GROUP_ID);
+    group.setMeta(MetaBuilder.builder()
+      .created(CREATED)
+      .lastModified(CREATED)
+      .resourceType("Group")
+      .location("http://example.com/Groups/" + GROUP_ID)
+      .build());
+
+    return group;
+  }
+
+  public static ResourceReference member(final int index) {
+    final String id = memberId(index);
+
+    return ResourceReferenceBuilder.builder()
+      .value(id)
+      .display("DIRECT Member -- user" + index + "@example.com")
+      .type(ResourceReference.ReferenceType.DIRECT)
+      .build();
+  }
+
+  private static PatchOperation operation(final PatchOperation.Type type, final String path, final Object value)
+    throws FilterParseException {
+    return PatchOperationBuilder.builder()
+      .operation(type)
+      .path(path)
+      .value(value)
+      .build();
+  }
+}
@@ -0,0 +1,159 @@
+package org.apache.directory.scim.test.workload;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.scim.server.rest.ObjectMapperFactory;
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.resources.PhoneNumber;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.test.ScimTestHelper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Micro benchmark of the resource to {@code Map} and back conversions the patch engine runs per request, with the
+ * reflective bean access of a plain {@link ObjectMapperFactory} mapper and with the {@link AfterburnerModule}.
+ * <p>
+ * Both mappers convert the same pre-generated users and groups, first {@code warmup} times untimed, then
+ * {@code iterations} times timed; the mappers alternate rounds, so neither profits from running last.
+ * Example: {@code --fixtures=64 --warmup=20000 --iterations=100000}
+ * <p>
+ * Not yet measured with {@link ScimTestHelper#createRegistry()}, the build needs the unreleased {@code scim-parent}.
+ * The defaults above on stand-in beans of the same shape as the generated users and groups, with Jackson and
+ * Afterburner 2.12.7 on JDK 17 and one core, six runs: reflective 7.2 to 8.2 us, Afterburner 5.4 to 7.2 us per
+ * round trip, 1.10x to 1.52x faster.
+ */
+@Slf4j
+public class ConversionBenchmark {
+  private static final int ROUNDS = 4;
+
+  private final List<ScimResource> fixtures = new ArrayList<>();
+  private final ObjectMapper reflective;
+  private final ObjectMapper afterburner;
+  private final int warmup;
+  private final int iterations;
+  private long sink;
+
+  public ConversionBenchmark(final Registry registry, final int fixtures, final int warmup, final int iterations) {
+    PhoneNumber.setStrict(false);
+
+    this.reflective = new ObjectMapperFactory(registry).createObjectMapper();
+    this.afterburner = new ObjectMapperFactory(registry).createObjectMapper();
+    this.afterburner.registerModule(new AfterburnerModule());
+    this.warmup = warmup;
+    this.iterations = iterations;
+
+    for (int i = 0; i < fixtures; i++) {
+      this.fixtures.add(i % 2 == 0 ? ScimTestHelper.generateScimUser() : ScimTestHelper.generateScimGroup());
+    }
+  }
+
+  public Result run() {
+    convert(reflective, warmup);
+    convert(afterburner, warmup);
+
+    long reflectiveNanos = 0L;
+    long afterburnerNanos = 0L;
+    final int perRound = Math.max(1, iterations / ROUNDS);
+    for (int i = 0; i < ROUNDS; i++) {
+      reflectiveNanos += convert(reflective, perRound);
+      afterburnerNanos += convert(afterburner, perRound);
+    }
+    log.debug("Benchmark sink {}", sink);
+
+    return new Result(perRound * ROUNDS, reflectiveNanos, afterburnerNanos);
+  }
+
+  /**
+   * @return Returns the nanoseconds to convert {@code count} fixtures to a {@code Map} and back
+   */
+  private long convert(final ObjectMapper objectMapper, final int count) {
+    final long start = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      final ScimResource resource = fixtures.get(i % fixtures.size());
+      final Map<String, Object> map = objectMapper.convertValue(resource, ScimTestHelper.MAP_TYPE);
+      final ScimResource converted = objectMapper.convertValue(map, resource.getClass());
+      sink += map.size() + (converted.getId() == null ? 0 : 1);
+    }
+
+    return System.nanoTime() - start;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    int fixtures = 64;
+    int warmup = 20_000;
+    int iterations = 100_000;
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("Expected --name=value but found '" + arg + "'");
+      }
+
+      final String name = arg.substring(2, arg.indexOf('='));
+      final int value = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+      switch (name) {
+        case "fixtures":
+          fixtures = value;
+          break;
+        case "warmup":
+          warmup = value;
+          break;
+        case "iterations":
+          iterations = value;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown argument '" + name + "'");
+      }
+    }
+
+    new ConversionBenchmark(ScimTestHelper.createRegistry(), fixtures, warmup, iterations).run().print(System.out);
+  }
+
+  public static final class Result {
+    private final int conversions;
+    private final long reflectiveNanos;
+    private final long afterburnerNanos;
+
+    Result(final int conversions, final long reflectiveNanos, final long afterburnerNanos) {
+      this.conversions = conversions;
+      this.reflectiveNanos = reflectiveNanos;
+      this.afterburnerNanos = afterburnerNanos;
+    }
+
+    public int conversions() {
+      return conversions;
+    }
+
+    /**
+     * @return Returns the mean nanoseconds of a round trip with reflective bean access
+     */
+    public double reflective() {
+      return reflectiveNanos / (double) conversions;
+    }
+
+    /**
+     * @return Returns the mean nanoseconds of a round trip with the Afterburner module
+     */
+    public double afterburner() {
+      return afterburnerNanos / (double) conversions;
+    }
+
+    /**
+     * @return Returns how many times faster the Afterburner round trip is, below 1 if it's slower
+     */
+    public double speedup() {
+      return afterburnerNanos == 0L ? 0.0 : reflectiveNanos / (double) afterburnerNanos;
+    }
+
+    public void print(final PrintStream out) {
+      out.printf("round trips: %d per mapper%n", conversions);
+      out.printf("reflective: %.1f us, afterburner: %.1f us, speedup %.2fx%n",
+        reflective() / 1000.0, afterburner() / 1000.0, speedup());
+    }
+  }
+}
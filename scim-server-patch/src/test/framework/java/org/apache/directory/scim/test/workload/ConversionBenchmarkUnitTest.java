@@ -0,0 +1,46 @@
+package org.apache.directory.scim.test.workload;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.apache.directory.scim.server.rest.ObjectMapperFactory;
+import org.apache.directory.scim.spec.resources.PhoneNumber;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.test.ScimTestHelper;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+class ConversionBenchmarkUnitTest {
+
+  @Test
+  void run_fewIterations_bothMappersTimed() {
+    final ConversionBenchmark.Result result = new ConversionBenchmark(createRegistry(), 4, 10, 40).run();
+
+    assertThat(result.conversions()).isEqualTo(40);
+    assertThat(result.reflective()).isPositive();
+    assertThat(result.afterburner()).isPositive();
+  }
+
+  @Test
+  void convertValue_afterburner_sameResourcesAsReflective() {
+    PhoneNumber.setStrict(false);
+    final ObjectMapper reflective = new ObjectMapperFactory(createRegistry()).createObjectMapper();
+    final ObjectMapper afterburner = new ObjectMapperFactory(createRegistry()).createObjectMapper()
+      .registerModule(new AfterburnerModule());
+    final ScimUser user = ScimTestHelper.generateScimUser();
+    final ScimGroup group = ScimTestHelper.generateScimGroup();
+
+    final Map<String, Object> userMap = afterburner.convertValue(user, ScimTestHelper.MAP_TYPE);
+    final Map<String, Object> groupMap = afterburner.convertValue(group, ScimTestHelper.MAP_TYPE);
+
+    assertThat(userMap).isEqualTo(reflective.convertValue(user, ScimTestHelper.MAP_TYPE));
+    assertThat(groupMap).isEqualTo(reflective.convertValue(group, ScimTestHelper.MAP_TYPE));
+    assertThat(afterburner.convertValue(userMap, ScimUser.class)).isEqualTo(user);
+    assertThat(afterburner.convertValue(groupMap, ScimGroup.class)).isEqualTo(group);
+  }
+}
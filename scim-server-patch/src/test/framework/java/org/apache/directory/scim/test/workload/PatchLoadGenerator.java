@@ -0,0 +1,568 @@
+package org.apache.directory.scim.test.workload;
+
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.ADD;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REMOVE;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REPLACE;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.time.Duration;
+
+import org.apache.directory.scim.server.patch.PatchOperations;
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.PhoneNumber;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.ResourceReference;
+import org.apache.directory.scim.test.ScimTestHelper;
+import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Synthetic load generator driving {@link PatchOperations#apply} concurrently.
+ * <p>
+ * Requests are drawn from a weighted mix of {@link Scenario}s over a pool of pre-generated
+ * {@link ScimTestHelper}/Faker fixtures, and are executed by N platform threads or, when the JVM supports them, one
+ * virtual thread per request.
+ * <p>
+ * Two modes are supported:
+ * <ul>
+ *   <li>closed loop (default), each worker issues the next request as soon as the previous one completes; when a
+ *   target rate is set the histogram is corrected with the expected interval</li>
+ *   <li>open loop ({@code --openLoop=true}), requests are dispatched on a fixed schedule derived from the target
+ *   rate and latency is measured from the <em>intended</em> start time, so queueing delay caused by a slow engine
+ *   is part of the result (no coordinated omission)</li>
+ * </ul>
+ * Example: {@code --threads=8 --rate=2000 --openLoop=true --duration=PT30S --mix=singular:50,filtered:30,extension:10,membership:10}
+ */
+@Slf4j
+public class PatchLoadGenerator {
+
+  /**
+   * The kinds of PATCH requests the generator issues.
+   */
+  public enum Scenario {
+    /** replace of a singular attribute of a user */
+    SINGULAR("singular"),
+    /** replace of a sub-attribute of a filtered multi-valued attribute of a user */
+    FILTERED("filtered"),
+    /** replace of an enterprise extension attribute of a user */
+    EXTENSION("extension"),
+    /** a burst of member removals followed by a member add on a group */
+    MEMBERSHIP("membership");
+
+    private final String key;
+
+    Scenario(final String key) {
+      this.key = key;
+    }
+
+    public String key() {
+      return key;
+    }
+
+    public static Scenario fromKey(final String key) {
+      for (Scenario scenario : values()) {
+        if (scenario.key.equalsIgnoreCase(key) || scenario.name().equalsIgnoreCase(key)) {
+          return scenario;
+        }
+      }
+
+      throw new IllegalArgumentException("Unknown scenario '" + key + "'");
+    }
+  }
+
+  private final PatchOperations patchOperations;
+  private final Settings settings;
+  private final Map<Scenario, List<Fixture>> fixtures = new EnumMap<>(Scenario.class);
+  private final Scenario[] schedule;
+
+  public PatchLoadGenerator(final Registry registry, final Settings settings) {
+    this(new PatchOperations(registry), settings);
+  }
+
+  public PatchLoadGenerator(final PatchOperations patchOperations, final Settings settings) {
+    this.patchOperations = patchOperations;
+    this.settings = settings;
+    this.schedule = schedule(settings.mix());
+
+    PhoneNumber.setStrict(false);
+
+    // Faker isn't built for concurrent use, generate everything up front
+    for (Scenario scenario : settings.mix().keySet()) {
+      List<Fixture> pool = new ArrayList<>();
+      for (int i = 0; i < settings.fixtures; i++) {
+        pool.add(fixture(scenario));
+      }
+      fixtures.put(scenario, pool);
+    }
+  }
+
+  /**
+   * Run the warm-up followed by the measured phase.
+   *
+   * @return Returns the {@link Result} of the measured phase
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public Result run() throws InterruptedException {
+    if (!settings.warmup.isZero()) {
+      log.info("Warming up for {}", settings.warmup);
+      execute(settings.warmup);
+    }
+
+    log.info("Running {} for {}", settings, settings.duration);
+    return execute(settings.duration);
+  }
+
+  private Result execute(final Duration duration) throws InterruptedException {
+    final ConcurrentHistogram histogram = new ConcurrentHistogram(3);
+    final AtomicLong completed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+
+    final ExecutorService executor = executor();
+    final long start = System.nanoTime();
+    final long end = start + duration.toNanos();
+
+    try {
+      if (settings.openLoop) {
+        openLoop(executor, histogram, completed, failed, start, end);
+      } else {
+        closedLoop(executor, histogram, completed, failed, end);
+      }
+    } finally {
+      executor.shutdown();
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        executor.shutdownNow();
+      }
+    }
+
+    final long elapsed = System.nanoTime() - start;
+    return new Result(histogram, completed.get(), failed.get(), elapsed);
+  }
+
+  private void openLoop(final ExecutorService executor, final Histogram histogram, final AtomicLong completed,
+                        final AtomicLong failed, final long start, final long end) {
+    if (settings.rate <= 0) {
+      throw new IllegalArgumentException("An open loop run requires a target rate");
+    }
+
+    final long interval = TimeUnit.SECONDS.toNanos(1) / settings.rate;
+    long index = 0;
+    long intended = start;
+
+    // dispatch on a fixed schedule, never waiting for completions
+    while (intended < end) {
+      final long now = System.nanoTime();
+      if (now < intended) {
+        LockSupport.parkNanos(intended - now);
+        continue;
+      }
+
+      final long intendedStart = intended;
+      final Scenario scenario = schedule[(int) (index % schedule.length)];
+      executor.execute(() -> {
+        execute(scenario, completed, failed);
+        histogram.recordValue(System.nanoTime() - intendedStart);
+      });
+
+      index++;
+      intended = start + index * interval;
+    }
+  }
+
+  private void closedLoop(final ExecutorService executor, final Histogram histogram, final AtomicLong completed,
+                          final AtomicLong failed, final long end) {
+    final long interval = settings.rate > 0
+      ? TimeUnit.SECONDS.toNanos(1) * settings.threads / settings.rate
+      : 0L;
+
+    for (int t = 0; t < settings.threads; t++) {
+      final int offset = t;
+      executor.execute(() -> {
+        long index = offset;
+        long next = System.nanoTime();
+
+        while (System.nanoTime() < end) {
+          if (interval > 0) {
+            final long now = System.nanoTime();
+            if (now < next) {
+              LockSupport.parkNanos(next - now);
+            }
+            next += interval;
+          }
+
+          final Scenario scenario = schedule[(int) (index++ % schedule.length)];
+          final long begin = System.nanoTime();
+          execute(scenario, completed, failed);
+          final long latency = System.nanoTime() - begin;
+
+          if (interval > 0) {
+            histogram.recordValueWithExpectedInterval(latency, interval);
+          } else {
+            histogram.recordValue(latency);
+          }
+        }
+      });
+    }
+  }
+
+  private void execute(final Scenario scenario, final AtomicLong completed, final AtomicLong failed) {
+    final List<Fixture> pool = fixtures.get(scenario);
+    final Fixture fixture = pool.get(ThreadLocalRandom.current().nextInt(pool.size()));
+
+    try {
+      patchOperations.apply(fixture.resource, fixture.operations());
+      completed.incrementAndGet();
+    } catch (Exception e) {
+      failed.incrementAndGet();
+      log.debug("Patch {} failed", scenario, e);
+    }
+  }
+
+  private ExecutorService executor() {
+    if (settings.virtualThreads) {
+      try {
+        // resolved reflectively, the build targets a release without virtual threads
+        Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) method.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        log.warn("Virtual threads aren't available on this JVM, falling back to {} platform threads", settings.threads);
+      }
+    }
+
+    return Executors.newFixedThreadPool(settings.threads);
+  }
+
+  private Fixture fixture(final Scenario scenario) {
+    try {
+      switch (scenario) {
+        case SINGULAR: {
+          ScimUser user = ScimTestHelper.generateScimUser();
+          return new Fixture(user, templates(template(REPLACE, "displayName", ScimTestHelper.faker().name().fullName())));
+        }
+        case FILTERED: {
+          ScimUser user = ScimTestHelper.generateScimUser();
+          ScimTestHelper.address(user, ScimTestHelper.faker().address(), "home", true);
+          ScimTestHelper.address(user, ScimTestHelper.faker().address(), "work", false);
+          ScimTestHelper.email(user, "home", true);
+          ScimTestHelper.email(user, "work", false);
+          return new Fixture(user, templates(template(REPLACE, "addresses[type EQ \"work\"].locality",
+            ScimTestHelper.faker().address().city())));
+        }
+        case EXTENSION: {
+          ScimUser user = ScimTestHelper.generateScimUser();
+          ScimTestHelper.enterpriseExtension(user, true);
+          return new Fixture(user, templates(template(REPLACE, EnterpriseExtension.URN + ":department",
+            ScimTestHelper.faker().commerce().department())));
+        }
+        case MEMBERSHIP: {
+          ScimGroup group = ScimTestHelper.generateScimGroup();
+          List<ResourceReference> members = new ArrayList<>();
+          for (int i = 0; i < settings.groupSize; i++) {
+            members.add(ScimTestHelper.member(ResourceReference.ReferenceType.DIRECT, ScimTestHelper.generateScimUser()));
+          }
+          group.setMembers(members);
+
+          List<ResourceReference> shuffled = new ArrayList<>(members);
+          Collections.shuffle(shuffled);
+
+          List<Template> templates = new ArrayList<>();
+          List<ResourceReference> added = new ArrayList<>();
+          for (int i = 0; i < Math.min(settings.burstSize, shuffled.size()); i++) {
+            templates.add(template(REMOVE, String.format("members[value EQ \"%s\"]", shuffled.get(i).getValue()), null));
+            added.add(ScimTestHelper.member(ResourceReference.ReferenceType.DIRECT, ScimTestHelper.generateScimUser()));
+          }
+          templates.add(template(ADD, "members", added));
+
+          return new Fixture(group, templates);
+        }
+        default:
+          throw new IllegalStateException("Unexpected scenario: " + scenario);
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException("Failed to generate a fixture for " + scenario, e);
+    }
+  }
+
+  private static Template template(final PatchOperation.Type type, final String path, final Object value) throws Exception {
+    return new Template(type, new PatchOperationPath(path), value);
+  }
+
+  private static List<Template> templates(final Template template) {
+    return Collections.singletonList(template);
+  }
+
+  /**
+   * Expands the weighted mix into a repeating schedule, e.g. {@code singular:2,filtered:1} becomes
+   * {@code [SINGULAR, SINGULAR, FILTERED]}.
+   */
+  private static Scenario[] schedule(final Map<Scenario, Integer> mix) {
+    List<Scenario> schedule = new ArrayList<>();
+    mix.forEach((scenario, weight) -> {
+      for (int i = 0; i < weight; i++) {
+        schedule.add(scenario);
+      }
+    });
+
+    if (schedule.isEmpty()) {
+      throw new IllegalArgumentException("The scenario mix must not be empty");
+    }
+
+    Collections.shuffle(schedule);
+    return schedule.toArray(new Scenario[0]);
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final Settings settings = Settings.parse(args);
+    final PatchLoadGenerator generator = new PatchLoadGenerator(ScimTestHelper.createRegistry(), settings);
+
+    generator.run().print(System.out);
+  }
+
+  /**
+   * A pre-generated resource and the operations applied to it; the operations are rebuilt per request so no
+   * request can observe another request's values.
+   */
+  private static final class Fixture {
+    private final ScimResource resource;
+    private final List<Template> templates;
+
+    private Fixture(final ScimResource resource, final List<Template> templates) {
+      this.resource = resource;
+      this.templates = templates;
+    }
+
+    private List<PatchOperation> operations() {
+      List<PatchOperation> operations = new ArrayList<>(templates.size());
+      for (Template template : templates) {
+        operations.add(template.operation());
+      }
+
+      return operations;
+    }
+  }
+
+  private static final class Template {
+    private final PatchOperation.Type type;
+    private final PatchOperationPath path;
+    private final Object value;
+
+    private Template(final PatchOperation.Type type, final PatchOperationPath path, final Object value) {
+      this.type = type;
+      this.path = path;
+      this.value = value;
+    }
+
+    private PatchOperation operation() {
+      return PatchOperationBuilder.builder()
+        .operation(type)
+        .path(path)
+        .value(value instanceof List ? new ArrayList<>((List<?>) value) : value)
+        .build();
+    }
+  }
+
+  /**
+   * The outcome of a measured run.
+   */
+  public static final class Result {
+    private final Histogram histogram;
+    private final long completed;
+    private final long failed;
+    private final long elapsedNanos;
+
+    Result(final Histogram histogram, final long completed, final long failed, final long elapsedNanos) {
+      this.histogram = histogram;
+      this.completed = completed;
+      this.failed = failed;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public Histogram histogram() {
+      return histogram;
+    }
+
+    public long completed() {
+      return completed;
+    }
+
+    public long failed() {
+      return failed;
+    }
+
+    /**
+     * @return Returns the number of completed requests per second
+     */
+    public double throughput() {
+      return completed / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public void print(final PrintStream out) {
+      out.printf("requests: %d completed, %d failed, throughput %.1f req/s%n", completed, failed, throughput());
+      out.printf("latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f p99.99=%.1f max=%.1f%n",
+        micros(50.0), micros(90.0), micros(99.0), micros(99.9), micros(99.99),
+        histogram.getMaxValue() / 1000.0);
+      histogram.outputPercentileDistribution(out, 1000.0);
+    }
+
+    private double micros(final double percentile) {
+      return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+  }
+
+  /**
+   * Load generator settings, parsed from {@code --name=value} arguments.
+   */
+  public static final class Settings {
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean virtualThreads = false;
+    private long rate = 0L;
+    private boolean openLoop = false;
+    private Duration duration = Duration.ofSeconds(30);
+    private Duration warmup = Duration.ofSeconds(10);
+    private int fixtures = 64;
+    private int groupSize = 1000;
+    private int burstSize = 10;
+    private final Map<Scenario, Integer> mix = new EnumMap<>(Scenario.class);
+
+    public static Settings parse(final String[] args) {
+      Settings settings = new Settings();
+
+      for (String arg : args) {
+        if (!arg.startsWith("--") || !arg.contains("=")) {
+          throw new IllegalArgumentException("Expected --name=value but found '" + arg + "'");
+        }
+
+        final String name = arg.substring(2, arg.indexOf('='));
+        final String value = arg.substring(arg.indexOf('=') + 1);
+        switch (name) {
+          case "threads":
+            settings.threads(Integer.parseInt(value));
+            break;
+          case "virtualThreads":
+            settings.virtualThreads(Boolean.parseBoolean(value));
+            break;
+          case "rate":
+            settings.rate(Long.parseLong(value));
+            break;
+          case "openLoop":
+            settings.openLoop(Boolean.parseBoolean(value));
+            break;
+          case "duration":
+            settings.duration(Duration.parse(value));
+            break;
+          case "warmup":
+            settings.warmup(Duration.parse(value));
+            break;
+          case "fixtures":
+            settings.fixtures(Integer.parseInt(value));
+            break;
+          case "groupSize":
+            settings.groupSize(Integer.parseInt(value));
+            break;
+          case "burstSize":
+            settings.burstSize(Integer.parseInt(value));
+            break;
+          case "mix":
+            for (String entry : value.split(",")) {
+              String[] pair = entry.split(":");
+              settings.mix(Scenario.fromKey(pair[0].trim()), pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1);
+            }
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown setting '" + name + "'");
+        }
+      }
+
+      return settings;
+    }
+
+    public Settings threads(final int threads) {
+      this.threads = threads;
+      return this;
+    }
+
+    public Settings virtualThreads(final boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+
+    public Settings rate(final long rate) {
+      this.rate = rate;
+      return this;
+    }
+
+    public Settings openLoop(final boolean openLoop) {
+      this.openLoop = openLoop;
+      return this;
+    }
+
+    public Settings duration(final Duration duration) {
+      this.duration = duration;
+      return this;
+    }
+
+    public Settings warmup(final Duration warmup) {
+      this.warmup = warmup;
+      return this;
+    }
+
+    public Settings fixtures(final int fixtures) {
+      this.fixtures = fixtures;
+      return this;
+    }
+
+    public Settings groupSize(final int groupSize) {
+      this.groupSize = groupSize;
+      return this;
+    }
+
+    public Settings burstSize(final int burstSize) {
+      this.burstSize = burstSize;
+      return this;
+    }
+
+    public Settings mix(final Scenario scenario, final int weight) {
+      this.mix.put(scenario, weight);
+      return this;
+    }
+
+    Map<Scenario, Integer> mix() {
+      if (mix.isEmpty()) {
+        for (Scenario scenario : Scenario.values()) {
+          mix.put(scenario, 1);
+        }
+      }
+
+      return mix;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %s, %s, rate %s, mix %s",
+        virtualThreads ? "virtual threads" : threads + " threads",
+        openLoop ? "open loop" : "closed loop",
+        "fixtures " + fixtures,
+        rate > 0 ? rate + " req/s" : "unthrottled",
+        mix);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package org.apache.directory.scim.test.workload;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class PatchLoadGeneratorUnitTest {
+
+  @Test
+  void parse_mixAndSettings_applied() {
+    final PatchLoadGenerator.Settings settings = PatchLoadGenerator.Settings.parse(new String[] {
+      "--threads=2", "--rate=100", "--openLoop=true", "--duration=PT1S", "--mix=singular:3,membership:1"});
+
+    assertThat(settings.mix())
+      .containsEntry(PatchLoadGenerator.Scenario.SINGULAR, 3)
+      .containsEntry(PatchLoadGenerator.Scenario.MEMBERSHIP, 1)
+      .hasSize(2);
+  }
+
+  @Test
+  void run_closedLoop_completesWithoutFailures() throws Exception {
+    final PatchLoadGenerator.Settings settings = new PatchLoadGenerator.Settings()
+      .threads(2)
+      .duration(Duration.ofMillis(500))
+      .warmup(Duration.ZERO)
+      .fixtures(4)
+      .groupSize(50)
+      .burstSize(5);
+
+    final PatchLoadGenerator.Result result = new PatchLoadGenerator(createRegistry(), settings).run();
+
+    assertThat(result.completed()).isPositive();
+    assertThat(result.failed()).isZero();
+    assertThat(result.histogram().getTotalCount()).isEqualTo(result.completed());
+  }
+
+  @Test
+  void run_openLoop_recordsEveryDispatchedRequest() throws Exception {
+    final PatchLoadGenerator.Settings settings = new PatchLoadGenerator.Settings()
+      .threads(2)
+      .rate(200)
+      .openLoop(true)
+      .duration(Duration.ofMillis(500))
+      .warmup(Duration.ZERO)
+      .fixtures(4)
+      .mix(PatchLoadGenerator.Scenario.SINGULAR, 1)
+      .mix(PatchLoadGenerator.Scenario.FILTERED, 1);
+
+    final PatchLoadGenerator.Result result = new PatchLoadGenerator(createRegistry(), settings).run();
+
+    assertThat(result.failed()).isZero();
+    assertThat(result.histogram().getTotalCount()).isEqualTo(result.completed() + result.failed());
+  }
+}
@@ -0,0 +1,346 @@
+package org.apache.directory.scim.test.workload;
+
+import static org.apache.directory.scim.test.ScimTestHelper.MAP_TYPE;
+import static org.apache.directory.scim.server.patch.PatchRecorder.OP;
+import static org.apache.directory.scim.server.patch.PatchRecorder.OPERATIONS;
+import static org.apache.directory.scim.server.patch.PatchRecorder.PATH;
+import static org.apache.directory.scim.server.patch.PatchRecorder.RESOURCE;
+import static org.apache.directory.scim.server.patch.PatchRecorder.RESOURCE_CLASS;
+import static org.apache.directory.scim.server.patch.PatchRecorder.SHAPE;
+import static org.apache.directory.scim.server.patch.PatchRecorder.VALUE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.directory.scim.server.patch.PatchOperations;
+import org.apache.directory.scim.server.patch.PatchRecorder;
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
+import org.apache.directory.scim.spec.protocol.exception.ScimException;
+import org.apache.directory.scim.spec.resources.PhoneNumber;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.test.ScimTestHelper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Replays a {@link PatchRecorder} recording through {@link PatchOperations#apply}.
+ * <p>
+ * Requests are replayed in recording order on the calling thread, or concurrently on a fixed thread pool. The
+ * {@link Report} holds a latency histogram per request shape and a digest of every result (the patched resource, or
+ * the error of a failed request). Digests can be saved and compared with a later run, e.g. of a new engine version,
+ * to check that results are deterministic across versions.
+ * <p>
+ * Example: {@code --file=patches.jsonl.gz --threads=4 --baseline=patches.digest --writeBaseline=false}
+ */
+@Slf4j
+public class PatchReplayer {
+  private final PatchOperations patchOperations;
+  private final ObjectMapper objectMapper;
+  private final ObjectMapper digestMapper;
+  private final List<Entry> entries;
+
+  public PatchReplayer(final Registry registry, final Path file) throws IOException {
+    this(new PatchOperations(registry), registry, file);
+  }
+
+  public PatchReplayer(final PatchOperations patchOperations, final Registry registry, final Path file) throws IOException {
+    this.patchOperations = patchOperations;
+    this.objectMapper = ScimTestHelper.getObjectMapper(registry);
+    this.digestMapper = ScimTestHelper.getObjectMapper(registry).copy()
+      .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    this.entries = read(file);
+
+    // anonymised phone numbers aren't guaranteed to be valid
+    PhoneNumber.setStrict(false);
+  }
+
+  /**
+   * @return Returns the number of recorded requests
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Replay the recording in order on the calling thread.
+   *
+   * @return Returns the {@link Report} of the replay
+   */
+  public Report replay() {
+    final Report report = new Report(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      replay(i, report);
+    }
+
+    return report;
+  }
+
+  /**
+   * Replay the recording concurrently.
+   *
+   * @param threads the number of threads
+   * @return Returns the {@link Report} of the replay
+   * @throws Exception if a replay task fails unexpectedly
+   */
+  public Report replay(final int threads) throws Exception {
+    if (threads <= 1) {
+      return replay();
+    }
+
+    final Report report = new Report(entries.size());
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>(entries.size());
+      for (int i = 0; i < entries.size(); i++) {
+        final int index = i;
+        futures.add(executor.submit(() -> replay(index, report)));
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return report;
+  }
+
+  private void replay(final int index, final Report report) {
+    final Entry entry = entries.get(index);
+
+    String digest;
+    final long start = System.nanoTime();
+    try {
+      // the resource and operations are materialised per replay, the engine must not see shared instances
+      final ScimResource resource = entry.resource();
+      final List<PatchOperation> operations = entry.operations();
+
+      final long begin = System.nanoTime();
+      final ScimResource result = patchOperations.apply(resource, operations);
+      report.histogram(entry.shape).recordValue(System.nanoTime() - begin);
+
+      digest = digest(digestMapper.writeValueAsBytes(objectMapper.convertValue(result, MAP_TYPE)));
+    } catch (ScimException e) {
+      report.histogram(entry.shape).recordValue(System.nanoTime() - start);
+      digest = "error:" + e.getStatus() + ":" + (e.getError() == null ? null : e.getError().getScimType());
+    } catch (Exception e) {
+      log.warn("Failed to replay entry {} ({})", index, entry.shape, e);
+      digest = "failure:" + e.getClass().getName();
+    }
+
+    report.digests[index] = digest;
+    report.shapes[index] = entry.shape;
+  }
+
+  private List<Entry> read(final Path file) throws IOException {
+    List<Entry> read = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+      new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          read.add(new Entry(objectMapper.readValue(line, MAP_TYPE)));
+        }
+      }
+    }
+
+    log.info("Read {} recorded patch request(s) from {}", read.size(), file);
+    return read;
+  }
+
+  private static String digest(final byte[] bytes) {
+    try {
+      StringBuilder builder = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+        builder.append(String.format("%02x", b));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Path file = null;
+    Path baseline = null;
+    boolean writeBaseline = false;
+    int threads = 1;
+
+    for (String arg : args) {
+      final String name = arg.substring(2, arg.indexOf('='));
+      final String value = arg.substring(arg.indexOf('=') + 1);
+      switch (name) {
+        case "file":
+          file = Paths.get(value);
+          break;
+        case "baseline":
+          baseline = Paths.get(value);
+          break;
+        case "writeBaseline":
+          writeBaseline = Boolean.parseBoolean(value);
+          break;
+        case "threads":
+          threads = Integer.parseInt(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown setting '" + name + "'");
+      }
+    }
+
+    if (file == null) {
+      throw new IllegalArgumentException("--file=<recording> is required");
+    }
+
+    final Report report = new PatchReplayer(ScimTestHelper.createRegistry(), file).replay(threads);
+    report.print(System.out);
+
+    if (baseline != null) {
+      if (writeBaseline) {
+        report.writeDigests(baseline);
+      } else {
+        final List<String> mismatches = report.verify(baseline);
+        mismatches.forEach(System.out::println);
+        if (!mismatches.isEmpty()) {
+          System.exit(1);
+        }
+      }
+    }
+  }
+
+  private final class Entry {
+    private final String shape;
+    private final Class<? extends ScimResource> resourceClass;
+    private final Map<String, Object> resource;
+    private final List<Map<String, Object>> operations;
+
+    @SuppressWarnings("unchecked")
+    private Entry(final Map<String, Object> line) {
+      this.shape = (String) line.get(SHAPE);
+      try {
+        this.resourceClass = Class.forName((String) line.get(RESOURCE_CLASS)).asSubclass(ScimResource.class);
+      } catch (ClassNotFoundException e) {
+        throw new IllegalArgumentException("Unknown resource class " + line.get(RESOURCE_CLASS), e);
+      }
+      this.resource = (Map<String, Object>) line.get(RESOURCE);
+      this.operations = (List<Map<String, Object>>) line.get(OPERATIONS);
+    }
+
+    private ScimResource resource() {
+      return objectMapper.convertValue(resource, resourceClass);
+    }
+
+    private List<PatchOperation> operations() throws Exception {
+      List<PatchOperation> patchOperations = new ArrayList<>(operations.size());
+      for (Map<String, Object> operation : operations) {
+        PatchOperation patchOperation = new PatchOperation();
+        patchOperation.setOperation(PatchOperation.Type.valueOf((String) operation.get(OP)));
+        if (operation.get(PATH) != null) {
+          patchOperation.setPath(new PatchOperationPath((String) operation.get(PATH)));
+        }
+        // a deep copy, the engine may keep references to the value in the result
+        patchOperation.setValue(objectMapper.convertValue(operation.get(VALUE), Object.class));
+        patchOperations.add(patchOperation);
+      }
+
+      return patchOperations;
+    }
+  }
+
+  /**
+   * The outcome of a replay.
+   */
+  public static final class Report {
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final String[] digests;
+    private final String[] shapes;
+
+    private Report(final int size) {
+      this.digests = new String[size];
+      this.shapes = new String[size];
+    }
+
+    private Histogram histogram(final String shape) {
+      return histograms.computeIfAbsent(shape, it -> new ConcurrentHistogram(3));
+    }
+
+    /**
+     * @return Returns the latency histograms in nanoseconds, keyed by request shape
+     */
+    public Map<String, Histogram> histograms() {
+      return Collections.unmodifiableMap(new TreeMap<>(histograms));
+    }
+
+    /**
+     * @return Returns the result digest of every recorded request, in recording order
+     */
+    public List<String> digests() {
+      return Collections.unmodifiableList(Arrays.asList(digests));
+    }
+
+    public void writeDigests(final Path file) throws IOException {
+      Files.write(file, digests(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param baseline the digests of an earlier replay, see {@link #writeDigests}
+     * @return Returns a description of every request whose result differs from the {@code baseline}
+     * @throws IOException if the baseline can't be read
+     */
+    public List<String> verify(final Path baseline) throws IOException {
+      return verify(Files.readAllLines(baseline, StandardCharsets.UTF_8));
+    }
+
+    public List<String> verify(final List<String> baseline) {
+      List<String> mismatches = new ArrayList<>();
+      if (baseline.size() != digests.length) {
+        mismatches.add(String.format("expected %d results but found %d", baseline.size(), digests.length));
+      }
+
+      for (int i = 0; i < Math.min(baseline.size(), digests.length); i++) {
+        if (!baseline.get(i).equals(digests[i])) {
+          mismatches.add(String.format("entry %d (%s): expected %s but was %s", i, shapes[i], baseline.get(i), digests[i]));
+        }
+      }
+
+      return mismatches;
+    }
+
+    public void print(final PrintStream out) {
+      out.printf("%-80s %8s %10s %10s %10s %10s%n", "shape", "count", "p50 us", "p99 us", "p99.9 us", "max us");
+      histograms().forEach((shape, histogram) -> out.printf("%-80s %8d %10.1f %10.1f %10.1f %10.1f%n",
+        shape, histogram.getTotalCount(),
+        histogram.getValueAtPercentile(50.0) / 1000.0,
+        histogram.getValueAtPercentile(99.0) / 1000.0,
+        histogram.getValueAtPercentile(99.9) / 1000.0,
+        histogram.getMaxValue() / 1000.0));
+    }
+  }
+}
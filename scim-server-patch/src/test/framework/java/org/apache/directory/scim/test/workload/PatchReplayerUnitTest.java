@@ -0,0 +1,107 @@
+package org.apache.directory.scim.test.workload;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.directory.scim.server.patch.PatchRecorder;
+import org.apache.directory.scim.server.schema.Registry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class PatchReplayerUnitTest {
+  private static final byte[] SALT = "replay-unit-test".getBytes(StandardCharsets.UTF_8);
+
+  private static Registry registry;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    registry = createRegistry();
+  }
+
+  @Test
+  void record_canonicalPatches_valuesAnonymised(@TempDir Path directory) throws Exception {
+    final Path file = record(directory);
+
+    final String recording = gunzip(file);
+    assertThat(recording)
+      .doesNotContain("bjensen")
+      .doesNotContain("Barbara")
+      .doesNotContain(CanonicalPatch.memberId(CanonicalPatch.GROUP_SIZE / 2))
+      .contains("\"type\":\"work\"");
+  }
+
+  @Test
+  void replay_recording_deterministic(@TempDir Path directory) throws Exception {
+    final PatchReplayer replayer = new PatchReplayer(registry, record(directory));
+    assertThat(replayer.size()).isEqualTo(CanonicalPatch.values().length);
+
+    final PatchReplayer.Report sequential = replayer.replay();
+    final PatchReplayer.Report parallel = replayer.replay(4);
+
+    assertThat(sequential.digests()).doesNotContainNull().noneMatch(it -> it.startsWith("failure:"));
+    assertThat(parallel.verify(sequential.digests())).isEmpty();
+    assertThat(sequential.histograms().keySet()).anyMatch(it -> it.startsWith("ScimGroup REMOVE members["));
+  }
+
+  @Test
+  void replay_filteredRemove_matchesAnonymisedMember(@TempDir Path directory) throws Exception {
+    final Path file = directory.resolve("remove.jsonl.gz");
+    try (PatchRecorder recorder = new PatchRecorder(registry, file, SALT)) {
+      recorder.record(CanonicalPatch.GROUP_MEMBER_REMOVE.resource(), CanonicalPatch.GROUP_MEMBER_REMOVE.operations());
+    }
+
+    // the member id is hashed in the resource and the filter alike, so the remove still finds its target
+    assertThat(new PatchReplayer(registry, file).replay().digests())
+      .hasSize(1)
+      .allMatch(it -> !it.startsWith("error:") && !it.startsWith("failure:"));
+  }
+
+  @Test
+  void record_queueFull_requestDropped(@TempDir Path directory) throws Exception {
+    final Path file = directory.resolve("dropped.jsonl.gz");
+    try (PatchRecorder recorder = new PatchRecorder(registry, file, SALT, 1.0, 1)) {
+      recorder.record(CanonicalPatch.USER_SINGULAR_REPLACE.resource(), CanonicalPatch.USER_SINGULAR_REPLACE.operations());
+      recorder.record(CanonicalPatch.USER_SINGULAR_REPLACE.resource(), CanonicalPatch.USER_SINGULAR_REPLACE.operations());
+
+      assertThat(recorder.dropped()).isEqualTo(1);
+      recorder.drain();
+      assertThat(recorder.recorded()).isEqualTo(1);
+    }
+
+    assertThat(new PatchReplayer(registry, file).size()).isEqualTo(1);
+  }
+
+  private static Path record(final Path directory) throws Exception {
+    final Path file = directory.resolve("patches.jsonl.gz");
+    try (PatchRecorder recorder = new PatchRecorder(registry, file, SALT)) {
+      for (CanonicalPatch patch : CanonicalPatch.values()) {
+        recorder.record(patch.resource(), patch.operations());
+      }
+    }
+
+    return file;
+  }
+
+  private static String gunzip(final Path file) throws Exception {
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
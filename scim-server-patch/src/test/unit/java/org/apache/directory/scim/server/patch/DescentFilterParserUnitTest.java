@@ -0,0 +1,89 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
+import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
+import org.apache.directory.scim.spec.protocol.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.protocol.filter.AttributePresentExpression;
+import org.apache.directory.scim.spec.protocol.filter.FilterExpression;
+import org.apache.directory.scim.spec.protocol.filter.GroupExpression;
+import org.apache.directory.scim.spec.protocol.filter.LogicalExpression;
+import org.apache.directory.scim.spec.protocol.filter.ValuePathExpression;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DescentFilterParserUnitTest {
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "emails[type eq \"work\"]",
+    "emails[type eq \"work\"].value",
+    "emails[TYPE EQ \"work\"]",
+    "emails[value ew \"@example.com\" and primary eq true]",
+    "emails[type eq \"work\" or type eq \"home\" and primary eq false]",
+    "emails[type eq \"work\" and value co \"example\" and display sw \"B\"]",
+    "emails[not (type eq \"work\")]",
+    "emails[(type eq \"work\" or type eq \"home\") and value pr]",
+    "emails[display eq \"say \\\"hi\\\"\\n\"]",
+    "emails[display eq null]",
+    "members[value eq \"2819c223-7f76-453a-919d-413861904646\"].display",
+    "members[$ref eq \"https://example.com/v2/Users/1\"]",
+    "addresses[postalCode gt \"90000\"].locality",
+    "x509Certificates[value eq \"MIIDQzCCAqygAwIBAgICEAAwDQYJKoZIhvcNAQEFBQAwTjELMAkGA1UEBhMCVVMx\"]",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager[value eq \"26118915-6090-4610-87e4-49d8ca9f808d\"]"
+  })
+  void parsePath_valueFilter_sameTreeAsGrammar(final String path) throws Exception {
+    final PatchOperationPath expected = new PatchOperationPath(path);
+
+    final PatchOperationPath actual = DescentFilterParser.parsePath(path);
+
+    assertThat(actual).isNotNull();
+    assertThat(describe(actual.getValuePathExpression())).isEqualTo(describe(expected.getValuePathExpression()));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "emails[type eq \"work\"",
+    "emails[type eq]",
+    "emails[type xx \"work\"]",
+    "emails[type eq \"work\" and]",
+    "emails[type eq \"work]",
+    "emails[type eq \"work\"].",
+    "emails[(type eq \"work\"]",
+    "emails[types[value eq \"x\"]]"
+  })
+  void parsePath_invalid_notAccepted(final String path) {
+    assertThat(DescentFilterParser.parsePath(path)).isNull();
+  }
+
+  private static String describe(final FilterExpression expression) {
+    if (expression instanceof ValuePathExpression) {
+      final ValuePathExpression it = (ValuePathExpression) expression;
+      return "path(" + describe(it.getAttributePath()) + ", " + describe(it.getAttributeExpression()) + ")";
+    }
+    if (expression instanceof AttributeComparisonExpression) {
+      final AttributeComparisonExpression it = (AttributeComparisonExpression) expression;
+      final Object value = it.getCompareValue();
+      return "compare(" + describe(it.getAttributePath()) + " " + it.getOperation() + " "
+        + (value == null ? "null" : value.getClass().getSimpleName() + ":" + value) + ")";
+    }
+    if (expression instanceof AttributePresentExpression) {
+      return "present(" + describe(((AttributePresentExpression) expression).getAttributePath()) + ")";
+    }
+    if (expression instanceof LogicalExpression) {
+      final LogicalExpression it = (LogicalExpression) expression;
+      return "(" + describe(it.getLeft()) + " " + it.getOperator() + " " + describe(it.getRight()) + ")";
+    }
+    if (expression instanceof GroupExpression) {
+      final GroupExpression it = (GroupExpression) expression;
+      return (it.isNot() ? "not" : "") + "group(" + describe(it.getFilterExpression()) + ")";
+    }
+
+    return String.valueOf(expression);
+  }
+
+  private static String describe(final AttributeReference reference) {
+    return reference.getUrn() + "|" + reference.getAttributeName() + "|" + reference.getSubAttributeName();
+  }
+}
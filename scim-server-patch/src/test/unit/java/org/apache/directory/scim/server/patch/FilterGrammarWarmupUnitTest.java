@@ -0,0 +1,39 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.google.common.collect.ImmutableList;
+
+class FilterGrammarWarmupUnitTest {
+
+  @ParameterizedTest
+  @MethodSource("corpus")
+  void corpus_path_parsedByGrammar(final String path) throws Exception {
+    assertThat(PatchPathParser.grammar(path).getValuePathExpression()).isNotNull();
+  }
+
+  @Test
+  void prime_corpusAndPaths_allPathsParsedEveryPass() {
+    final FilterGrammarWarmup.Priming priming = FilterGrammarWarmup.prime(
+      ImmutableList.of("nickName", "emails[type eq \"work\"]", "invalid[["), 3);
+
+    // the duplicate of the corpus is parsed once, the invalid path is skipped
+    assertThat(priming.paths()).isEqualTo(FilterGrammarWarmup.CORPUS.size() + 2);
+    assertThat(priming.rounds()).isEqualTo(3);
+    assertThat(priming.coldNanos()).isPositive();
+    assertThat(priming.savedNanos()).isEqualTo(Math.max(0L, priming.coldNanos() - priming.primedNanos()));
+  }
+
+  @Test
+  void prime_noRounds_nothingParsed() {
+    assertThat(FilterGrammarWarmup.prime(ImmutableList.of("userName"), 0)).isSameAs(FilterGrammarWarmup.Priming.NONE);
+  }
+
+  static Iterable<String> corpus() {
+    return FilterGrammarWarmup.CORPUS;
+  }
+}
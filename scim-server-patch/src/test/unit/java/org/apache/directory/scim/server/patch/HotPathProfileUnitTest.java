@@ -0,0 +1,127 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.ADD;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REMOVE;
+import static org.apache.directory.scim.spec.protocol.data.PatchOperation.Type.REPLACE;
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.apache.directory.scim.test.workload.CanonicalPatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.ImmutableList;
+
+class HotPathProfileUnitTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void save_recordedShapes_mostFrequentPersisted() throws Exception {
+    final HotPathProfile profile = new HotPathProfile(directory.resolve("profile.tsv"), 2);
+    for (int i = 0; i < 3; i++) {
+      profile.record(REPLACE, "emails[type eq \"work\"].value");
+    }
+    profile.record(ADD, "members");
+    profile.record(ADD, "members");
+    profile.record(REMOVE, "nickName");
+
+    assertThat(profile.save()).isEqualTo(2);
+
+    final List<HotPathProfile.Shape> shapes = new HotPathProfile(profile.file(), 2).load();
+    assertThat(shapes).containsExactly(
+      new HotPathProfile.Shape(REPLACE, "emails[type eq \"?\"].value"),
+      new HotPathProfile.Shape(ADD, "members"));
+  }
+
+  @Test
+  void record_compareValues_normalised() throws Exception {
+    final HotPathProfile profile = new HotPathProfile(directory.resolve("profile.tsv"), 10);
+    profile.record(REMOVE, "members[value eq \"2819c223-7f76-453a-919d-413861904646\"]");
+    profile.record(REMOVE, "members[value eq \"08e1d05d-121c-4561-8b96-473d93df9210\"]");
+    profile.record(REPLACE, "addresses[postalCode gt 90000 and type eq \"say \\\"hi\\\"\"].locality");
+
+    profile.save();
+
+    assertThat(new String(Files.readAllBytes(profile.file()), StandardCharsets.UTF_8))
+      .contains("2\tREMOVE\tmembers[value eq \"?\"]")
+      .contains("1\tREPLACE\taddresses[postalCode gt 0 and type eq \"?\"].locality")
+      .doesNotContain("2819c223")
+      .doesNotContain("say");
+  }
+
+  @Test
+  void record_full_newShapesDroppedUntilSave() {
+    final HotPathProfile profile = new HotPathProfile(directory.resolve("profile.tsv"), 1);
+    for (int i = 0; i < HotPathProfile.TRACKED_FACTOR; i++) {
+      profile.record(ADD, "attribute" + i);
+    }
+    profile.record(ADD, "attribute0");
+    profile.record(ADD, "other");
+
+    assertThat(profile.top()).extracting(it -> it.getKey().path()).containsExactly("attribute0");
+    assertThat(profile.save()).isEqualTo(1);
+
+    for (int i = 0; i < 3; i++) {
+      profile.record(ADD, "other");
+    }
+    assertThat(profile.top()).extracting(it -> it.getKey().path()).containsExactly("other");
+    assertThat(new HotPathProfile(profile.file(), 10).load()).containsExactly(new HotPathProfile.Shape(ADD, "attribute0"));
+  }
+
+  @Test
+  void apply_synthetic_notRecorded() throws Exception {
+    final HotPathProfile profile = new HotPathProfile(directory.resolve("profile.tsv"), 10);
+    final PatchOperations patchOperations = new PatchOperations(createRegistry(), new PatchResultCache(0), profile);
+    final List<PatchOperation> operations = ImmutableList.of(PatchOperationBuilder.builder()
+      .operation(REPLACE)
+      .path("displayName")
+      .value("Barbara Jensen")
+      .build());
+
+    patchOperations.applySynthetic(CanonicalPatch.user(), operations);
+    assertThat(profile.top()).isEmpty();
+
+    patchOperations.apply(CanonicalPatch.user(), operations);
+    assertThat(profile.top()).extracting(it -> it.getKey().path()).containsExactly("displayName");
+  }
+
+  @Test
+  void load_malformedLines_skipped() throws Exception {
+    final Path file = directory.resolve("profile.tsv");
+    Files.write(file, ImmutableList.of("# comment", "x\tADD\tmembers", "3\tMERGE\tmembers", "2\tREMOVE", "1\tADD\tuserName"),
+      StandardCharsets.UTF_8);
+
+    assertThat(new HotPathProfile(file, 10).load()).containsExactly(new HotPathProfile.Shape(ADD, "userName"));
+  }
+
+  @Test
+  void preload_persistedPaths_parsedIntoPathCache() throws Exception {
+    final Path file = directory.resolve("profile.tsv");
+    Files.write(file, ImmutableList.of("5\tREPLACE\tname.givenName", "4\tREMOVE\temails[type eq \"work\"]",
+      "1\tADD\tnot a [ path"), StandardCharsets.UTF_8);
+    final PatchEngineContext context = PatchEngineContext.of(createRegistry());
+    final int before = context.pathParser().size();
+
+    assertThat(new HotPathProfile(file, 10).preload(context)).isEqualTo(2);
+    assertThat(context.pathParser().size()).isGreaterThanOrEqualTo(Math.min(before + 2, PatchPathParser.MAX_SIZE));
+  }
+
+  @Test
+  void record_disabled_nothingPersisted() {
+    final HotPathProfile profile = new HotPathProfile(null, 10);
+    profile.record(ADD, "members");
+
+    assertThat(profile.isEnabled()).isFalse();
+    assertThat(profile.top()).isEmpty();
+    assertThat(profile.save()).isZero();
+  }
+}
@@ -0,0 +1,245 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.test.ScimTestHelper.assertScimException;
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.core.Response;
+
+import org.apache.directory.scim.spec.protocol.ErrorMessageType;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.filter.FilterExpression;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.apache.directory.scim.test.workload.CanonicalPatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+class MultiValuedAttributePatcherUnitTest {
+  private PatchOperations patchOperations;
+  private ScimGroup group;
+  private MembersSource source;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    patchOperations = new PatchOperations(createRegistry());
+    group = CanonicalPatch.group(0);
+    source = new MembersSource(5);
+  }
+
+  @Test
+  void apply_removeByValue_elementRemovedThroughLookup() throws Exception {
+    final MultiValuedAttributeChanges changes = patchOperations.apply(group, ImmutableList.of(
+      operation(PatchOperation.Type.REMOVE, "members[value eq \"" + CanonicalPatch.memberId(2) + "\"]", null)), source);
+
+    assertThat(changes.isCleared()).isFalse();
+    assertThat(changes.getRemoved()).containsExactly(source.elements.get(2));
+    assertThat(changes.getUpdated()).isEmpty();
+    assertThat(changes.getAdded()).isEmpty();
+    assertThat(source.lookups).isEqualTo(1);
+    assertThat(source.iterations).isZero();
+  }
+
+  @Test
+  void apply_replaceSubAttribute_copyUpdated() throws Exception {
+    final Map<String, Object> element = source.elements.get(1);
+
+    final MultiValuedAttributeChanges changes = patchOperations.apply(group, ImmutableList.of(
+      operation(PatchOperation.Type.REPLACE, "members[value eq \"" + CanonicalPatch.memberId(1) + "\"].display", "Guide")),
+      source);
+
+    assertThat(changes.getUpdated()).containsOnlyKeys(element);
+    assertThat(changes.getUpdated().get(element)).containsEntry("display", "Guide");
+    assertThat(element).doesNotContainKey("display");
+  }
+
+  @Test
+  void apply_replaceFilteredElement_elementReplacedAsInMemory() throws Exception {
+    final Map<String, Object> element = source.elements.get(1);
+    element.put("display", "Guide");
+    final PatchOperation operation = operation(PatchOperation.Type.REPLACE,
+      "members[value eq \"" + CanonicalPatch.memberId(1) + "\"]",
+      ImmutableList.of(ImmutableMap.of("value", CanonicalPatch.memberId(1))));
+    final ScimGroup inMemory = CanonicalPatch.group(2);
+    inMemory.getMembers().get(1).setDisplay("Guide");
+
+    final MultiValuedAttributeChanges changes = patchOperations.apply(group, ImmutableList.of(operation), source);
+    final ScimGroup patched = patchOperations.apply(inMemory, ImmutableList.of(operation));
+
+    // the sub-attributes the value doesn't carry are dropped on both paths
+    assertThat(changes.getUpdated()).containsOnlyKeys(element);
+    assertThat(changes.getUpdated().get(element)).containsOnlyKeys("value");
+    assertThat(patched.getMembers().get(1).getDisplay()).isNull();
+    assertThat(element).containsEntry("display", "Guide");
+  }
+
+  @Test
+  void apply_replaceFilteredElementWithTwo_throwsScimException() throws Exception {
+    final List<PatchOperation> operations = ImmutableList.of(operation(PatchOperation.Type.REPLACE,
+      "members[value eq \"" + CanonicalPatch.memberId(1) + "\"]",
+      ImmutableList.of(ImmutableMap.of("value", CanonicalPatch.memberId(1)),
+        ImmutableMap.of("value", CanonicalPatch.memberId(2)))));
+
+    Throwable t = catchThrowable(() -> patchOperations.apply(group, operations, source));
+
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.UNIQUENESS,
+      ErrorMessageType.UNIQUENESS.getDetail());
+  }
+
+  @Test
+  void apply_otherFilter_elementsIterated() throws Exception {
+    source.elements.get(3).put("display", "Guide");
+
+    final MultiValuedAttributeChanges changes = patchOperations.apply(group, ImmutableList.of(
+      operation(PatchOperation.Type.REMOVE, "members[display eq \"Guide\"]", null)), source);
+
+    assertThat(changes.getRemoved()).containsExactly(source.elements.get(3));
+    assertThat(source.iterations).isEqualTo(1);
+  }
+
+  @Test
+  void apply_addThenRemove_nothingAdded() throws Exception {
+    final String id = CanonicalPatch.memberId(10);
+
+    final MultiValuedAttributeChanges changes = patchOperations.apply(group, ImmutableList.of(
+      operation(PatchOperation.Type.ADD, "members", ImmutableList.of(ImmutableMap.of("value", id))),
+      operation(PatchOperation.Type.REMOVE, "members[value eq \"" + id + "\"]", null)), source);
+
+    assertThat(changes.getAdded()).isEmpty();
+    assertThat(changes.getRemoved()).isEmpty();
+  }
+
+  @Test
+  void apply_replaceWithoutFilter_clearedAndAdded() throws Exception {
+    final MultiValuedAttributeChanges changes = patchOperations.apply(group, ImmutableList.of(
+      operation(PatchOperation.Type.REPLACE, "members",
+        ImmutableList.of(ImmutableMap.of("value", CanonicalPatch.memberId(10))))), source);
+
+    assertThat(changes.isCleared()).isTrue();
+    assertThat(changes.getAdded()).hasSize(1);
+    assertThat(changes.getAdded().get(0)).containsEntry("value", CanonicalPatch.memberId(10));
+    assertThat(source.lookups + source.iterations).isZero();
+  }
+
+  @Test
+  void apply_removeUnknownValue_throwsScimException() throws Exception {
+    final List<PatchOperation> operations = ImmutableList.of(
+      operation(PatchOperation.Type.REMOVE, "members[value eq \"" + CanonicalPatch.memberId(10) + "\"]", null));
+
+    Throwable t = catchThrowable(() -> patchOperations.apply(group, operations, source));
+
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.NO_TARGET,
+      ErrorMessageType.NO_TARGET.getDetail());
+  }
+
+  @Test
+  void apply_otherAttribute_throwsScimException() throws Exception {
+    final List<PatchOperation> operations = ImmutableList.of(
+      operation(PatchOperation.Type.REPLACE, "displayName", "Tour Guides"));
+
+    Throwable t = catchThrowable(() -> patchOperations.apply(group, operations, source));
+
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.INVALID_PATH,
+      ErrorMessageType.INVALID_PATH.getDetail());
+  }
+
+  @Test
+  void apply_filteredValueOfWrongType_throwsScimExceptionBeforeLookup() throws Exception {
+    final List<PatchOperation> operations = ImmutableList.of(
+      operation(PatchOperation.Type.REPLACE, "members[value eq \"" + CanonicalPatch.memberId(1) + "\"].display", 42));
+
+    Throwable t = catchThrowable(() -> patchOperations.apply(group, operations, source));
+
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.INVALID_VALUE,
+      ErrorMessageType.INVALID_VALUE.getDetail());
+    assertThat(source.lookups + source.iterations).isZero();
+  }
+
+  @Test
+  void apply_addElementOfWrongType_throwsScimException() throws Exception {
+    final List<PatchOperation> operations = ImmutableList.of(
+      operation(PatchOperation.Type.ADD, "members", ImmutableList.of(ImmutableMap.of("value", 42))));
+
+    Throwable t = catchThrowable(() -> patchOperations.apply(group, operations, source));
+
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.INVALID_VALUE,
+      ErrorMessageType.INVALID_VALUE.getDetail());
+  }
+
+  @Test
+  void apply_replaceWithSimpleValues_throwsScimException() throws Exception {
+    final List<PatchOperation> operations = ImmutableList.of(
+      operation(PatchOperation.Type.REPLACE, "members", ImmutableList.of(CanonicalPatch.memberId(10))));
+
+    Throwable t = catchThrowable(() -> patchOperations.apply(group, operations, source));
+
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.INVALID_VALUE,
+      ErrorMessageType.INVALID_VALUE.getDetail());
+  }
+
+  private static PatchOperation operation(final PatchOperation.Type type, final String path, final Object value)
+    throws Exception {
+    return PatchOperationBuilder.builder()
+      .operation(type)
+      .path(path)
+      .value(value)
+      .build();
+  }
+
+  private static final class MembersSource implements MultiValuedAttributeSource {
+    private final List<Map<String, Object>> elements = new ArrayList<>();
+    private int lookups;
+    private int iterations;
+
+    private MembersSource(final int size) {
+      for (int i = 0; i < size; i++) {
+        final Map<String, Object> element = new HashMap<>();
+        element.put("value", CanonicalPatch.memberId(i));
+        elements.add(element);
+      }
+    }
+
+    @Override
+    public String attributeName() {
+      return "members";
+    }
+
+    @Override
+    public Iterable<Map<String, Object>> lookup(final String value) {
+      lookups++;
+      final List<Map<String, Object>> found = new ArrayList<>();
+      for (Map<String, Object> it : elements) {
+        if (value.equals(it.get("value"))) {
+          found.add(it);
+        }
+      }
+      return found;
+    }
+
+    @Override
+    public Iterable<Map<String, Object>> iterate(final FilterExpression filter) {
+      iterations++;
+      return elements;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.scim.server.patch.utility.CompiledAttribute;
+import org.apache.directory.scim.server.patch.utility.CompiledSchemas;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.apache.directory.scim.test.extensions.ExampleObjectExtension;
+import org.apache.directory.scim.test.workload.CanonicalPatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+
+class MultiValuedSimpleAttributeUnitTest {
+  private static final String LIST = "list";
+
+  private CompiledAttribute attribute;
+  private Map<String, Object> source;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    attribute = CompiledSchemas.of(createRegistry()).schema(ExampleObjectExtension.URN).attribute(LIST);
+    source = new HashMap<>();
+    source.put(LIST, new ArrayList<>(ImmutableList.of("a", "b", "c")));
+  }
+
+  @Test
+  void accepts_multiValuedString_true() {
+    assertThat(MultiValuedSimpleAttribute.accepts(attribute)).isTrue();
+  }
+
+  @Test
+  void apply_add_newValuesAppendedOnce() throws Exception {
+    MultiValuedSimpleAttribute.apply(attribute, source, operation(PatchOperation.Type.ADD, ImmutableList.of("c", "d", "d")));
+
+    assertThat(source.get(LIST)).isEqualTo(ImmutableList.of("a", "b", "c", "d"));
+  }
+
+  @Test
+  void apply_addSingleValue_appended() throws Exception {
+    MultiValuedSimpleAttribute.apply(attribute, source, operation(PatchOperation.Type.ADD, "e"));
+
+    assertThat(source.get(LIST)).isEqualTo(ImmutableList.of("a", "b", "c", "e"));
+  }
+
+  @Test
+  void apply_replace_distinctValuesSet() throws Exception {
+    MultiValuedSimpleAttribute.apply(attribute, source, operation(PatchOperation.Type.REPLACE, ImmutableList.of("x", "y", "x")));
+
+    assertThat(source.get(LIST)).isEqualTo(ImmutableList.of("x", "y"));
+  }
+
+  @Test
+  void apply_removeValues_onlyThoseRemoved() throws Exception {
+    MultiValuedSimpleAttribute.apply(attribute, source, operation(PatchOperation.Type.REMOVE, ImmutableList.of("b", "z")));
+
+    assertThat(source.get(LIST)).isEqualTo(ImmutableList.of("a", "c"));
+  }
+
+  @Test
+  void apply_removeAllValues_attributeUnassigned() throws Exception {
+    MultiValuedSimpleAttribute.apply(attribute, source, operation(PatchOperation.Type.REMOVE, ImmutableList.of("a", "b", "c")));
+
+    assertThat(source).doesNotContainKey(LIST);
+  }
+
+  @Test
+  void apply_removeWithoutValue_attributeRemoved() throws Exception {
+    MultiValuedSimpleAttribute.apply(attribute, source, operation(PatchOperation.Type.REMOVE, null));
+
+    assertThat(source).doesNotContainKey(LIST);
+  }
+
+  @Test
+  void apply_extensionList_patchedThroughEngine() throws Exception {
+    final ScimUser user = CanonicalPatch.user();
+    final ExampleObjectExtension extension = new ExampleObjectExtension();
+    extension.setList(new ArrayList<>(ImmutableList.of("a", "b")));
+    user.addExtension(extension);
+
+    final ScimUser actual = new PatchOperations(createRegistry()).apply(user, ImmutableList.of(
+      PatchOperationBuilder.builder()
+        .operation(PatchOperation.Type.ADD)
+        .path(ExampleObjectExtension.URN + ":" + LIST)
+        .value(ImmutableList.of("b", "c"))
+        .build()));
+
+    assertThat(((ExampleObjectExtension) actual.getExtension(ExampleObjectExtension.URN)).getList())
+      .containsExactly("a", "b", "c");
+  }
+
+  private static PatchOperation operation(final PatchOperation.Type type, final Object value) throws Exception {
+    return PatchOperationBuilder.builder()
+      .operation(type)
+      .path(ExampleObjectExtension.URN + ":" + LIST)
+      .value(value)
+      .build();
+  }
+}
@@ -0,0 +1,56 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+class PatchAnonymizerUnitTest {
+  private final PatchAnonymizer anonymizer = new PatchAnonymizer("anonymizer-unit-test".getBytes(StandardCharsets.UTF_8));
+
+  @Test
+  void hash_uuid_stillUuid() {
+    final String id = UUID.randomUUID().toString();
+
+    final String hashed = anonymizer.hash(id);
+
+    assertThat(hashed).isNotEqualTo(id);
+    assertThat(UUID.fromString(hashed).toString()).isEqualTo(hashed);
+  }
+
+  @Test
+  void hash_name_sameCharacterClasses() {
+    final String hashed = anonymizer.hash("Barbara Jensen 42");
+
+    assertThat(hashed).matches("[A-Z][a-z]{6} [A-Z][a-z]{5} [0-9]{2}").isNotEqualTo("Barbara Jensen 42");
+  }
+
+  @Test
+  void path_memberFilter_sameHashAsValue() {
+    final String id = UUID.randomUUID().toString();
+
+    assertThat(anonymizer.path("members[value eq \"" + id + "\"]"))
+      .isEqualTo("members[value eq \"" + anonymizer.hash(id) + "\"]");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void value_metaLocation_idHashed() {
+    final String id = UUID.randomUUID().toString();
+    final Map<String, Object> resource = ImmutableMap.of(
+      "id", id,
+      "meta", ImmutableMap.of("resourceType", "User", "location", "https://example.com/scim/v2/Users/" + id));
+
+    final Map<String, Object> anonymised = (Map<String, Object>) anonymizer.value(null, resource);
+
+    assertThat(anonymised.get("id")).isEqualTo(anonymizer.hash(id));
+    assertThat((Map<String, Object>) anonymised.get("meta"))
+      .containsEntry("resourceType", "User")
+      .containsEntry("location", "https://example.com/scim/v2/Users/" + anonymizer.hash(id));
+  }
+}
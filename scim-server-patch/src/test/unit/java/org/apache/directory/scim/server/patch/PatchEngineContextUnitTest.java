@@ -0,0 +1,133 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.apache.directory.scim.test.workload.CanonicalPatch;
+import org.junit.jupiter.api.Test;
+
+class PatchEngineContextUnitTest {
+
+  @Test
+  void of_sameRegistry_sharedContext() throws Exception {
+    final Registry registry = createRegistry();
+
+    final PatchEngineContext context = PatchEngineContext.of(registry);
+
+    assertThat(PatchEngineContext.of(registry)).isSameAs(context);
+    assertThat(PatchEngineContext.of(createRegistry())).isNotSameAs(context);
+  }
+
+  @Test
+  void of_schemasChanged_contextRebuilt() throws Exception {
+    final Registry registry = createRegistry();
+    final PatchEngineContext context = PatchEngineContext.of(registry);
+
+    final List<Schema> schemas = Arrays.asList(registry.getSchema(ScimUser.SCHEMA_URI), registry.getSchema(ScimGroup.SCHEMA_URI));
+    when(registry.getAllSchemas()).thenReturn(schemas);
+
+    assertThat(context.isStale()).isTrue();
+    assertThat(PatchEngineContext.of(registry).schemas().schema(EnterpriseExtension.URN)).isNull();
+    assertThat(context.schemas().schema(EnterpriseExtension.URN)).isNotNull();
+  }
+
+  @Test
+  void invalidate_registry_contextRebuilt() throws Exception {
+    final Registry registry = createRegistry();
+    final PatchEngineContext context = PatchEngineContext.of(registry);
+
+    PatchEngineContext.invalidate(registry);
+
+    assertThat(PatchEngineContext.of(registry)).isNotSameAs(context);
+  }
+
+  @Test
+  void objectAsMap_roundTrip_matchesObjectMapper() throws Exception {
+    final PatchEngineContext context = PatchEngineContext.of(createRegistry());
+    final ScimUser user = CanonicalPatch.user();
+
+    final Map<String, Object> map = context.objectAsMap(user);
+
+    assertThat(map).isEqualTo(context.objectMapper().convertValue(user, PatchEngineContext.MAP_TYPE));
+    assertThat(context.mapAsObject(map, ScimUser.class)).isEqualTo(user);
+  }
+
+  @Test
+  void reader_registeredExtension_prebuilt() throws Exception {
+    final PatchEngineContext context = PatchEngineContext.of(createRegistry());
+
+    assertThat(context.reader(EnterpriseExtension.class)).isSameAs(context.reader(EnterpriseExtension.class));
+    assertThat(context.writer(ScimGroup.class)).isSameAs(context.writer(ScimGroup.class));
+  }
+
+  @Test
+  void objectAsMap_nestedKeysAndValues_notCopied() throws Exception {
+    final PatchEngineContext context = PatchEngineContext.of(createRegistry());
+    final ScimUser user = CanonicalPatch.user();
+    final String type = new String("work");
+    user.getEmails().get(0).setType(type);
+
+    final Map<String, Object> first = context.objectAsMap(user);
+    final Map<String, Object> second = context.objectAsMap(CanonicalPatch.user());
+
+    assertThat(key(first, "emails")).isSameAs(key(second, "emails"));
+    assertThat(key(email(first), "value")).isSameAs(key(email(second), "value"));
+    assertThat(key(email(first), "type")).isSameAs(key(email(second), "type"));
+    assertThat(email(first).get("type")).isSameAs(type);
+  }
+
+  @Test
+  void objectAsMap_scope_onlyScopedAttributesMaterialised() throws Exception {
+    final PatchEngineContext context = PatchEngineContext.of(createRegistry());
+    final AttributeScope scope = AttributeScope.of(PatchOperationBuilder.builder()
+      .operation(PatchOperation.Type.REPLACE)
+      .path("emails[type EQ \"work\"].value")
+      .value("babs@example.com")
+      .build());
+
+    final Map<String, Object> map = context.objectAsMap(CanonicalPatch.user(), scope);
+
+    assertThat(map).containsOnlyKeys(PatchOperations.SCHEMAS, "emails");
+  }
+
+  @Test
+  void mapIntoObject_scopedAttributes_othersUntouched() throws Exception {
+    final PatchEngineContext context = PatchEngineContext.of(createRegistry());
+    final ScimUser user = CanonicalPatch.user();
+    final AttributeScope scope = AttributeScope.of(PatchOperationBuilder.builder()
+      .operation(PatchOperation.Type.REMOVE)
+      .path("displayName")
+      .build());
+    final Map<String, Object> map = context.objectAsMap(user, scope);
+    map.remove("displayName");
+
+    scope.absentAsNull(map);
+    final ScimUser actual = context.mapIntoObject(map, user);
+
+    assertThat(actual).isSameAs(user);
+    assertThat(actual.getDisplayName()).isNull();
+    assertThat(actual.getUserName()).isEqualTo("bjensen@example.com");
+    assertThat(actual.getEmails()).hasSize(2);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> email(final Map<String, Object> map) {
+    return ((List<Map<String, Object>>) map.get("emails")).get(0);
+  }
+
+  private static String key(final Map<String, Object> map, final String name) {
+    return map.keySet().stream().filter(name::equals).findFirst().orElse(null);
+  }
+}
@@ -0,0 +1,56 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.test.workload.CanonicalPatch;
+import org.junit.jupiter.api.Test;
+
+class PatchEngineWarmupUnitTest extends PatchOperationTest {
+
+  @Test
+  void warmUp_registeredResourceTypes_patchesApplied() throws Exception {
+    final Registry registry = createRegistry();
+
+    assertThat(PatchEngineWarmup.warmUp(new PatchOperations(registry), registry, 2)).isPositive();
+  }
+
+  @Test
+  void warmUp_noIterations_nothingApplied() throws Exception {
+    final Registry registry = createRegistry();
+
+    assertThat(PatchEngineWarmup.warmUp(new PatchOperations(registry), registry, 0)).isZero();
+  }
+
+  @Test
+  void apply_sharedInstanceAcrossThreads_sameResultAsSequential() throws Exception {
+    final List<ScimResource> expected = new ArrayList<>();
+    for (CanonicalPatch patch : CanonicalPatch.values()) {
+      expected.add(patchOperations.apply(patch.resource(), patch.operations()));
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<ScimResource>> futures = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        for (CanonicalPatch patch : CanonicalPatch.values()) {
+          futures.add(executor.submit(() -> patchOperations.apply(patch.resource(), patch.operations())));
+        }
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        assertThat(futures.get(i).get()).isEqualTo(expected.get(i % expected.size()));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.test.workload.CanonicalPatch;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.sun.management.ThreadMXBean;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Allocation regression gate for the PATCH path.
+ * <p>
+ * Measures the bytes allocated by the current thread for a single {@link PatchOperations#apply} of each
+ * {@link CanonicalPatch} and fails when the measurement exceeds the recorded budget by more than the tolerance.
+ * <p>
+ * Budgets live in {@code patch-allocation-budget.properties} and are recorded, not estimated. Run the test with
+ * {@code -Dscim.patch.allocation.record=true}, which writes the measured values to
+ * {@code target/patch-allocation-budget.properties} instead of asserting them, and copy that file over the budgets.
+ * A patch without a recorded budget fails the gate; record mode is the only way to run it without budgets. The
+ * tolerance (a fraction of the budget) can be overridden with {@code -Dscim.patch.allocation.tolerance}.
+ */
+@Slf4j
+class PatchOperationsAllocationUnitTest extends PatchOperationTest {
+  private static final String BUDGET_RESOURCE = "/patch-allocation-budget.properties";
+  private static final String RECORD_PROPERTY = "scim.patch.allocation.record";
+  private static final String TOLERANCE_PROPERTY = "scim.patch.allocation.tolerance";
+  private static final double DEFAULT_TOLERANCE = 0.10;
+  private static final Path RECORDED_BUDGETS = Paths.get("target", "patch-allocation-budget.properties");
+
+  private static final int WARM_UP_ITERATIONS = 50;
+  private static final int MEASURED_ITERATIONS = 20;
+
+  private static final Properties budgets = new Properties();
+  private static final Map<String, Long> recorded = new TreeMap<>();
+
+  @BeforeAll
+  static void loadBudgets() throws Exception {
+    try (InputStream in = PatchOperationsAllocationUnitTest.class.getResourceAsStream(BUDGET_RESOURCE)) {
+      assertThat(in).as("allocation budget resource %s", BUDGET_RESOURCE).isNotNull();
+      budgets.load(in);
+    }
+  }
+
+  @AfterAll
+  static void writeRecordedBudgets() throws Exception {
+    if (!Boolean.getBoolean(RECORD_PROPERTY) || recorded.isEmpty()) {
+      return;
+    }
+
+    Files.createDirectories(RECORDED_BUDGETS.toAbsolutePath().getParent());
+    try (BufferedWriter writer = Files.newBufferedWriter(RECORDED_BUDGETS, StandardCharsets.UTF_8)) {
+      writer.write("# recorded on " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+      writer.newLine();
+      for (Map.Entry<String, Long> it : recorded.entrySet()) {
+        writer.write(it.getKey() + "=" + it.getValue());
+        writer.newLine();
+      }
+    }
+    log.warn("Recorded {} allocation budget(s) to {}", recorded.size(), RECORDED_BUDGETS.toAbsolutePath());
+  }
+
+  @ParameterizedTest
+  @EnumSource(CanonicalPatch.class)
+  void apply_canonicalPatch_allocationWithinBudget(final CanonicalPatch patch) throws Exception {
+    final ThreadMXBean threadMXBean = threadMXBean();
+    assumeTrue(threadMXBean != null, "Thread allocation accounting isn't supported by this JVM");
+
+    // let the JIT, Jackson and ANTLR caches settle, so only the steady state is measured
+    for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+      apply(patch);
+    }
+
+    long allocated = Long.MAX_VALUE;
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      // fixtures are built outside the measured window
+      final ScimResource resource = patch.resource();
+      final List<PatchOperation> operations = patch.operations();
+
+      final long threadId = Thread.currentThread().getId();
+      final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+      patchOperations.apply(resource, operations);
+      final long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+      // the minimum is the most stable estimate, anything above it is noise from the runtime
+      allocated = Math.min(allocated, after - before);
+    }
+
+    final String key = patch.name();
+    if (Boolean.getBoolean(RECORD_PROPERTY)) {
+      log.warn("Recorded allocation budget, {}={}", key, allocated);
+      recorded.put(key, allocated);
+      return;
+    }
+
+    final String budgetValue = budgets.getProperty(key);
+    assertThat(budgetValue)
+      .as("allocation budget for %s, record it with -D%s=true", key, RECORD_PROPERTY)
+      .isNotNull();
+
+    final long budget = Long.parseLong(budgetValue.trim());
+    final double tolerance = Double.parseDouble(System.getProperty(TOLERANCE_PROPERTY, String.valueOf(DEFAULT_TOLERANCE)));
+    final long limit = (long) (budget * (1.0 + tolerance));
+
+    log.info("{} allocated {} bytes per apply, budget {} bytes (limit {} bytes)", key, allocated, budget, limit);
+
+    assertThat(allocated)
+      .as("bytes allocated per apply for %s (budget %d, tolerance %.0f%%)", key, budget, tolerance * 100)
+      .isLessThanOrEqualTo(limit);
+  }
+
+  private static void apply(final CanonicalPatch patch) throws Exception {
+    patchOperations.apply(patch.resource(), patch.operations());
+  }
+
+  private static ThreadMXBean threadMXBean() {
+    final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof ThreadMXBean)) {
+      return null;
+    }
+
+    final ThreadMXBean threadMXBean = (ThreadMXBean) bean;
+    if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+      return null;
+    }
+
+    if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+      threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    return threadMXBean;
+  }
+}
@@ -7,13 +7,18 @@ import static org.apache.directory.scim.test.ScimTestHelper.multiValuedPrimaryUn
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.ws.rs.core.Response;
 
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
 import org.apache.directory.scim.spec.protocol.ErrorMessageType;
 import org.apache.directory.scim.spec.protocol.data.PatchOperation;
 import org.apache.directory.scim.spec.resources.ScimGroup;
 import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.ResourceReference;
 import org.apache.directory.scim.test.ScimTestHelper;
 import org.apache.directory.scim.test.arguments.provider.ExtensionArgumentProvider;
 import org.apache.directory.scim.test.arguments.provider.GroupMembershipArgumentsProvider;
@@ -26,6 +31,7 @@ import org.apache.directory.scim.test.arguments.provider.TargetLocationSpecifies
 import org.apache.directory.scim.test.arguments.provider.TargetLocationSpecifiesMultiValuedNoFilter;
 import org.apache.directory.scim.test.arguments.provider.args.PatchArgs;
 import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.apache.directory.scim.test.workload.CanonicalPatch;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ArgumentsSource;
@@ -374,4 +380,220 @@ public class PatchOperationsUnitTest extends PatchOperationTest {
       ErrorMessageType.NO_TARGET,
       ErrorMessageType.NO_TARGET.getDetail());
   }
+
+  @Test
+  void apply_filterMatchesManyMembers_allMatchesRemoved() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(CanonicalPatch.GROUP_SIZE);
+    final List<PatchOperation> operations = ImmutableList.of(PatchOperationBuilder.builder()
+      .operation(REMOVE)
+      .path("members[display sw \"DIRECT Member -- user1\"]")
+      .build());
+
+    final ScimGroup actual = patchOperations.apply(group, operations);
+
+    // user1, user10 - user19 and user100 - user199
+    assertThat(actual.getMembers()).hasSize(CanonicalPatch.GROUP_SIZE - 111);
+    assertThat(actual.getMembers()).noneMatch(it -> it.getDisplay().startsWith("DIRECT Member -- user1"));
+    assertThat(actual.getMembers().get(0).getValue()).isEqualTo(CanonicalPatch.memberId(0));
+    assertThat(actual.getMembers().get(1).getValue()).isEqualTo(CanonicalPatch.memberId(2));
+  }
+
+  @Test
+  void apply_consecutiveMemberRemovals_membersCompactedOnce() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(CanonicalPatch.GROUP_SIZE);
+    final List<PatchOperation> operations = ImmutableList.of(
+      removeMember(CanonicalPatch.memberId(1)),
+      removeMember(CanonicalPatch.memberId(3)),
+      PatchOperationBuilder.builder()
+        .operation(PatchOperation.Type.REPLACE)
+        .path("displayName")
+        .value("Tour Guides II")
+        .build(),
+      removeMember(CanonicalPatch.memberId(0)));
+
+    final ScimGroup actual = patchOperations.apply(group, operations);
+
+    assertThat(actual.getDisplayName()).isEqualTo("Tour Guides II");
+    assertThat(actual.getMembers()).hasSize(CanonicalPatch.GROUP_SIZE - 3);
+    assertThat(actual.getMembers().get(0).getValue()).isEqualTo(CanonicalPatch.memberId(2));
+    assertThat(actual.getMembers().get(1).getValue()).isEqualTo(CanonicalPatch.memberId(4));
+    assertThat(group.getMembers()).hasSize(CanonicalPatch.GROUP_SIZE);
+  }
+
+  @Test
+  void apply_removeLastMember_membersRemoved() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(1);
+
+    final ScimGroup actual = patchOperations.apply(group, ImmutableList.of(removeMember(CanonicalPatch.memberId(0))));
+
+    assertThat(actual.getMembers()).isNull();
+  }
+
+  @Test
+  void apply_removeMemberFromImmutableMembers_membersRemoved() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(3);
+    group.setMembers(ImmutableList.copyOf(group.getMembers()));
+
+    final ScimGroup actual = patchOperations.apply(group, ImmutableList.of(removeMember(CanonicalPatch.memberId(1))));
+
+    assertThat(actual.getMembers()).hasSize(2);
+    assertThat(actual.getMembers().get(0).getValue()).isEqualTo(CanonicalPatch.memberId(0));
+    assertThat(actual.getMembers().get(1).getValue()).isEqualTo(CanonicalPatch.memberId(2));
+  }
+
+  @Test
+  void apply_consecutiveMemberRemovals_memberAttributesKept() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(3);
+    group.getMembers().get(2).setRef("https://example.com/v2/Users/" + CanonicalPatch.memberId(2));
+
+    final ScimGroup actual = patchOperations.apply(group, ImmutableList.of(
+      removeMember(CanonicalPatch.memberId(0)),
+      removeMember(CanonicalPatch.memberId(1))));
+
+    assertThat(actual.getMembers()).hasSize(1);
+    final ResourceReference member = actual.getMembers().get(0);
+    assertThat(member.getValue()).isEqualTo(CanonicalPatch.memberId(2));
+    assertThat(member.getRef()).isEqualTo("https://example.com/v2/Users/" + CanonicalPatch.memberId(2));
+    assertThat(member.getDisplay()).isEqualTo("DIRECT Member -- user2@example.com");
+    assertThat(member.getType()).isEqualTo(ResourceReference.ReferenceType.DIRECT);
+  }
+
+  @Test
+  void apply_addMembersThenRemoveMember_membersReplaced() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(3);
+    final Map<String, Object> added = new LinkedHashMap<>();
+    added.put("value", CanonicalPatch.memberId(5));
+    added.put("display", "Babs");
+    final List<PatchOperation> operations = ImmutableList.of(
+      PatchOperationBuilder.builder()
+        .operation(PatchOperation.Type.ADD)
+        .path("members")
+        .value(ImmutableList.of(CanonicalPatch.member(4), added))
+        .build(),
+      removeMember(CanonicalPatch.memberId(4)));
+
+    final ScimGroup actual = patchOperations.apply(group, operations);
+
+    // add of a list of members replaces them, like the generic handling does
+    assertThat(actual.getMembers()).hasSize(1);
+    assertThat(actual.getMembers().get(0).getValue()).isEqualTo(CanonicalPatch.memberId(5));
+    assertThat(actual.getMembers().get(0).getDisplay()).isEqualTo("Babs");
+    assertThat(actual.getMembers().get(0).getType()).isNull();
+    assertThat(group.getMembers()).hasSize(3);
+  }
+
+  @Test
+  void apply_removeAllMembersThenRemoveMember_throwsScimException() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(3);
+    final List<PatchOperation> operations = ImmutableList.of(
+      PatchOperationBuilder.builder()
+        .operation(REMOVE)
+        .path("members")
+        .build(),
+      removeMember(CanonicalPatch.memberId(0)));
+
+    Throwable t = catchThrowable(() -> patchOperations.apply(group, operations));
+
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.NO_TARGET,
+      ErrorMessageType.NO_TARGET.getDetail());
+  }
+
+  @Test
+  void apply_removeAllMembers_membersRemoved() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(3);
+
+    final ScimGroup actual = patchOperations.apply(group, ImmutableList.of(PatchOperationBuilder.builder()
+      .operation(REMOVE)
+      .path("members")
+      .build()));
+
+    assertThat(actual.getMembers()).isNull();
+  }
+
+  @Test
+  void apply_removeMemberAlreadyRemoved_throwsScimException() throws Exception {
+    final ScimGroup group = CanonicalPatch.group(2);
+    final List<PatchOperation> operations = ImmutableList.of(
+      removeMember(CanonicalPatch.memberId(0)),
+      removeMember(CanonicalPatch.memberId(0)));
+
+    Throwable t = catchThrowable(() -> patchOperations.apply(group, operations));
+
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.NO_TARGET,
+      ErrorMessageType.NO_TARGET.getDetail());
+  }
+
+  @Test
+  void apply_untouchedExtension_passedThrough() throws Exception {
+    final ScimUser source = CanonicalPatch.user();
+    ScimTestHelper.enterpriseExtension(source, true);
+    final EnterpriseExtension extension = (EnterpriseExtension) source.getExtension(EnterpriseExtension.URN);
+    final List<PatchOperation> operations = ImmutableList.of(PatchOperationBuilder.builder()
+      .operation(PatchOperation.Type.REPLACE)
+      .path("displayName")
+      .value("Barbara Jensen")
+      .build());
+
+    final ScimUser actual = patchOperations.apply(source, operations);
+
+    assertThat(actual.getDisplayName()).isEqualTo("Barbara Jensen");
+    assertThat(actual.getExtension(EnterpriseExtension.URN)).isEqualTo(extension);
+    assertThat(actual.getSchemas()).contains(EnterpriseExtension.URN);
+    assertThat(source.getExtension(EnterpriseExtension.URN)).isSameAs(extension);
+  }
+
+  @Test
+  void apply_touchedExtension_decoded() throws Exception {
+    final ScimUser source = CanonicalPatch.user();
+    ScimTestHelper.enterpriseExtension(source, false);
+    final List<PatchOperation> operations = ImmutableList.of(PatchOperationBuilder.builder()
+      .operation(PatchOperation.Type.REPLACE)
+      .path(EnterpriseExtension.URN + ":department")
+      .value("Tour Operations")
+      .build());
+
+    final ScimUser actual = patchOperations.apply(source, operations);
+
+    assertThat(((EnterpriseExtension) actual.getExtension(EnterpriseExtension.URN)).getDepartment())
+      .isEqualTo("Tour Operations");
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = PatchOperation.Type.class, names = {"ADD", "REPLACE"})
+  void apply_pathLessValueMap_sameAsOneOperationPerKey(final PatchOperation.Type type) throws Exception {
+    final ScimUser source = CanonicalPatch.user();
+    ScimTestHelper.enterpriseExtension(source, false);
+    final Map<String, Object> values = new LinkedHashMap<>();
+    values.put("displayName", "Barbara Jensen");
+    values.put("nickName", "Babs");
+    values.put("name.givenName", "Barbara");
+    values.put("emails[type eq \"work\"].display", "Work");
+    values.put("title", "Tour Guide");
+    values.put(EnterpriseExtension.URN + ":department", "Tour Operations");
+
+    final List<PatchOperation> perKey = new ArrayList<>();
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      perKey.add(PatchOperationBuilder.builder().operation(type).path(entry.getKey()).value(entry.getValue()).build());
+    }
+    final PatchOperation pathLess = PatchOperationBuilder.builder()
+      .operation(type)
+      .value(values)
+      .build();
+
+    final ScimUser merged = patchOperations.apply(source, ImmutableList.of(pathLess));
+
+    assertThat(merged).isEqualTo(patchOperations.apply(source, perKey));
+    assertThat(merged.getNickName()).isEqualTo("Babs");
+  }
+
+  private static PatchOperation removeMember(final String id) throws Exception {
+    return PatchOperationBuilder.builder()
+      .operation(REMOVE)
+      .path("members[value eq \"" + id + "\"]")
+      .build();
+  }
 }
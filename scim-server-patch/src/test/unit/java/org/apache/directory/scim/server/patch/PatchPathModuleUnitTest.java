@@ -0,0 +1,54 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.apache.directory.scim.test.ScimTestHelper.getObjectMapper;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class PatchPathModuleUnitTest {
+  private static final String OPERATION = "{\"op\":\"replace\",\"path\":\"emails[type eq \\\"work\\\"].value\",\"value\":\"bjensen@example.com\"}";
+
+  @Test
+  void readValue_valueFilter_parsedByPathParser() throws Exception {
+    final ObjectMapper objectMapper = objectMapper(new PatchPathParser(null, 16, true));
+
+    final PatchOperation first = objectMapper.readValue(OPERATION, PatchOperation.class);
+    final PatchOperation second = objectMapper.readValue(OPERATION, PatchOperation.class);
+
+    assertThat(first.getPath().getValuePathExpression().getAttributePath().getAttributeName()).isEqualTo("emails");
+    assertThat(first.getPath().getValuePathExpression().getAttributePath().getSubAttributeName()).isEqualTo("value");
+    assertThat(first.getPath().getValuePathExpression().getAttributeExpression()).isNotNull();
+    // the parser's cached instance, not a grammar run per operation
+    assertThat(second.getPath()).isSameAs(first.getPath());
+  }
+
+  @Test
+  void readValue_registry_contextParserUsed() throws Exception {
+    final Registry registry = createRegistry();
+    final ObjectMapper objectMapper = getObjectMapper(registry).registerModule(new PatchPathModule(registry));
+
+    final PatchOperation operation = objectMapper.readValue(OPERATION, PatchOperation.class);
+
+    assertThat(operation.getPath()).isSameAs(PatchEngineContext.of(registry).pathParser().parse("emails[type eq \"work\"].value"));
+  }
+
+  @Test
+  void readValue_invalidPath_throwsJsonMappingException() throws Exception {
+    final ObjectMapper objectMapper = objectMapper(new PatchPathParser(null, 16, true));
+
+    Throwable t = catchThrowable(() -> objectMapper.readValue("{\"op\":\"remove\",\"path\":\"emails[type eq\"}", PatchOperation.class));
+
+    assertThat(t).isInstanceOf(JsonMappingException.class);
+  }
+
+  private static ObjectMapper objectMapper(final PatchPathParser parser) throws Exception {
+    return getObjectMapper(createRegistry()).registerModule(new PatchPathModule(() -> parser));
+  }
+}
@@ -0,0 +1,72 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
+import org.apache.directory.scim.spec.protocol.data.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.google.common.collect.ImmutableList;
+
+class PatchPathParserUnitTest {
+  private final PatchPathParser parser = new PatchPathParser(
+    ImmutableList.of(ScimUser.SCHEMA_URI, ScimGroup.SCHEMA_URI, EnterpriseExtension.URN), 4);
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "userName",
+    "name.givenName",
+    "members",
+    EnterpriseExtension.URN + ":employeeNumber",
+    EnterpriseExtension.URN + ":manager.value",
+    ScimUser.SCHEMA_URI + ":name.familyName"
+  })
+  void simple_bracketFreePath_sameAsGrammar(final String path) throws Exception {
+    final PatchOperationPath simple = parser.simple(path);
+    final PatchOperationPath grammar = new PatchOperationPath(path);
+
+    assertThat(simple).isNotNull();
+    final AttributeReference expected = grammar.getValuePathExpression().getAttributePath();
+    final AttributeReference actual = simple.getValuePathExpression().getAttributePath();
+    assertThat(actual.getUrn()).isEqualTo(expected.getUrn());
+    assertThat(actual.getAttributeName()).isEqualTo(expected.getAttributeName());
+    assertThat(actual.getSubAttributeName()).isEqualTo(expected.getSubAttributeName());
+    assertThat(simple.getValuePathExpression().getAttributeExpression()).isNull();
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "emails[type eq \"work\"]",
+    "emails[type eq \"work\"].value",
+    "urn:example:unknown:attribute",
+    "name.givenName.other"
+  })
+  void simple_otherPath_grammarUsed(final String path) {
+    assertThat(parser.simple(path)).isNull();
+  }
+
+  @Test
+  void parse_valueFilter_parsedOnce() throws Exception {
+    final PatchOperationPath first = parser.parse("emails[type eq \"work\"].value");
+
+    assertThat(parser.parse("emails[type eq \"work\"].value")).isSameAs(first);
+    assertThat(first.getValuePathExpression().getAttributeExpression()).isNotNull();
+  }
+
+  @Test
+  void parse_cacheFull_cacheDropped() throws Exception {
+    for (String path : ImmutableList.of("userName", "displayName", "nickName", "title")) {
+      parser.parse(path);
+    }
+    assertThat(parser.size()).isEqualTo(4);
+
+    parser.parse("locale");
+
+    assertThat(parser.size()).isEqualTo(1);
+  }
+}
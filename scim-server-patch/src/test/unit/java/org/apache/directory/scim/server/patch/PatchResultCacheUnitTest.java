@@ -0,0 +1,154 @@
+package org.apache.directory.scim.server.patch;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.apache.directory.scim.test.workload.CanonicalPatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
+class PatchResultCacheUnitTest {
+  private PatchResultCache resultCache;
+  private PatchOperations patchOperations;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    final Registry registry = createRegistry();
+    resultCache = new PatchResultCache(16);
+    patchOperations = new PatchOperations(registry, resultCache);
+  }
+
+  @Test
+  void apply_retriedRequest_previousResultReturned() throws Exception {
+    final ScimUser result = patchOperations.apply(user("v1", "Babs Jensen"), operations("Barbara Jensen"));
+
+    // same id and version, the resource isn't looked at again
+    final ScimUser retried = patchOperations.apply(user("v1", "Somebody Else"), operations("Barbara Jensen"));
+
+    assertThat(retried).isEqualTo(result).isNotSameAs(result);
+    assertThat(retried.getDisplayName()).isEqualTo("Barbara Jensen");
+    assertThat(resultCache.size()).isEqualTo(1);
+  }
+
+  @Test
+  void apply_newVersion_patchApplied() throws Exception {
+    patchOperations.apply(user("v1", "Babs Jensen"), operations("Barbara Jensen"));
+
+    final ScimUser actual = patchOperations.apply(user("v2", "Somebody Else"), operations("Barbara Jensen"));
+
+    assertThat(actual.getMeta().getVersion()).isEqualTo("v2");
+    assertThat(resultCache.size()).isEqualTo(1);
+  }
+
+  @Test
+  void apply_otherOperations_patchApplied() throws Exception {
+    patchOperations.apply(user("v1", "Babs Jensen"), operations("Barbara Jensen"));
+
+    final ScimUser actual = patchOperations.apply(user("v1", "Babs Jensen"), operations("B. Jensen"));
+
+    assertThat(actual.getDisplayName()).isEqualTo("B. Jensen");
+  }
+
+  @Test
+  void apply_beyondMaximumSize_oldestEvicted() throws Exception {
+    final PatchResultCache small = new PatchResultCache(1);
+    final PatchOperations smallOperations = new PatchOperations(createRegistry(), small);
+    final ScimUser first = user("v1", "Babs Jensen");
+    final ScimUser second = user("v1", "Babs Jensen");
+    second.setId(first.getId() + "-2");
+
+    final ScimUser retried = user("v1", "Babs Jensen");
+    retried.setNickName("Evicted");
+
+    smallOperations.apply(first, operations("Barbara Jensen"));
+    smallOperations.apply(second, operations("Barbara Jensen"));
+    final ScimUser actual = smallOperations.apply(retried, operations("Barbara Jensen"));
+
+    // the first user's result was evicted, the retried request is applied again
+    assertThat(actual.getNickName()).isEqualTo("Evicted");
+    assertThat(small.size()).isEqualTo(1);
+  }
+
+  @Test
+  void put_evictedResourceInsertedAgain_evictedInInsertionOrder() throws Exception {
+    final PatchResultCache small = new PatchResultCache(2);
+    final ObjectMapper objectMapper = new ObjectMapper();
+    final List<PatchResultCache.Key> keys = new ArrayList<>();
+    for (String id : new String[] {"a", "b", "c", "a", "d"}) {
+      final ScimUser user = user("v1", "Babs Jensen");
+      user.setId(id);
+      final PatchResultCache.Key key = small.key(user, operations("Barbara Jensen"), 0, objectMapper);
+      small.put(key, user);
+      keys.add(key);
+    }
+
+    // a, evicted by c, was inserted again and only b and c were evicted since
+    assertThat((ScimUser) small.get(keys.get(3))).isNotNull();
+    assertThat((ScimUser) small.get(keys.get(4))).isNotNull();
+    assertThat((ScimUser) small.get(keys.get(1))).isNull();
+    assertThat((ScimUser) small.get(keys.get(2))).isNull();
+    assertThat(small.size()).isEqualTo(2);
+  }
+
+  @Test
+  void put_resultAlreadyStored_firstResultKept() throws Exception {
+    final PatchResultCache.Key key = resultCache.key(user("v1", "Babs Jensen"), operations("Barbara Jensen"), 0,
+      new ObjectMapper());
+
+    resultCache.put(key, user("v1", "Barbara Jensen"));
+    resultCache.put(key, user("v1", "Somebody Else"));
+
+    assertThat(resultCache.<ScimUser>get(key).getDisplayName()).isEqualTo("Barbara Jensen");
+  }
+
+  @Test
+  void apply_cachedResultChanged_cacheUnchanged() throws Exception {
+    final ScimUser result = patchOperations.apply(user("v1", "Babs Jensen"), operations("Barbara Jensen"));
+    result.setDisplayName("Changed");
+
+    final ScimUser retried = patchOperations.apply(user("v1", "Babs Jensen"), operations("Barbara Jensen"));
+
+    assertThat(retried.getDisplayName()).isEqualTo("Barbara Jensen");
+  }
+
+  @Test
+  void apply_noVersion_notCached() throws Exception {
+    patchOperations.apply(user(null, "Babs Jensen"), operations("Barbara Jensen"));
+
+    assertThat(resultCache.size()).isZero();
+  }
+
+  @Test
+  void apply_disabled_notCached() throws Exception {
+    final PatchResultCache disabled = new PatchResultCache(0);
+    new PatchOperations(createRegistry(), disabled).apply(user("v1", "Babs Jensen"), operations("Barbara Jensen"));
+
+    assertThat(disabled.isEnabled()).isFalse();
+    assertThat(disabled.size()).isZero();
+  }
+
+  private static ScimUser user(final String version, final String displayName) {
+    final ScimUser user = CanonicalPatch.user();
+    user.getMeta().setVersion(version);
+    user.setDisplayName(displayName);
+    return user;
+  }
+
+  private static List<PatchOperation> operations(final String displayName) throws Exception {
+    return ImmutableList.of(PatchOperationBuilder.builder()
+      .operation(PatchOperation.Type.REPLACE)
+      .path("displayName")
+      .value(displayName)
+      .build());
+  }
+}
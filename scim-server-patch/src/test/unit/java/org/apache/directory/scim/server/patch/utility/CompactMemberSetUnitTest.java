@@ -0,0 +1,190 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class CompactMemberSetUnitTest {
+
+  @Test
+  void contains_addedUuids_found() {
+    final CompactMemberSet memberSet = new CompactMemberSet(false, 2);
+    final String[] ids = new String[1000];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = UUID.randomUUID().toString();
+      memberSet.add(ids[i]);
+    }
+
+    for (String id : ids) {
+      assertThat(memberSet.contains(id)).isTrue();
+    }
+    assertThat(memberSet.contains(UUID.randomUUID().toString())).isFalse();
+    assertThat(memberSet.size()).isEqualTo(ids.length);
+  }
+
+  @Test
+  void remove_duplicateIds_allPositionsMarked() {
+    final CompactMemberSet memberSet = new CompactMemberSet(false, 4);
+    final String id = UUID.randomUUID().toString();
+    memberSet.add(id);
+    memberSet.add(UUID.randomUUID().toString());
+    memberSet.add(id);
+
+    assertThat(memberSet.remove(id)).isEqualTo(2);
+    assertThat(memberSet.remove(id)).isZero();
+    assertThat(memberSet.contains(id)).isFalse();
+    assertThat(memberSet.removed().stream().toArray()).containsExactly(0, 2);
+    assertThat(memberSet.size()).isEqualTo(1);
+  }
+
+  @Test
+  void remove_caseIgnored_upperCaseMatches() {
+    final CompactMemberSet memberSet = new CompactMemberSet(false, 4);
+    final String id = UUID.randomUUID().toString();
+    memberSet.add(id);
+    memberSet.add("bjensen");
+
+    assertThat(memberSet.remove(id.toUpperCase(Locale.ROOT))).isEqualTo(1);
+    assertThat(memberSet.remove("BJensen")).isEqualTo(1);
+  }
+
+  @Test
+  void remove_caseExact_upperCaseDoesNotMatch() {
+    final CompactMemberSet memberSet = new CompactMemberSet(true, 4);
+    final String id = UUID.randomUUID().toString();
+    final String upperCaseId = UUID.randomUUID().toString().toUpperCase(Locale.ROOT);
+    memberSet.add(id);
+    memberSet.add(upperCaseId);
+
+    assertThat(memberSet.remove(id.toUpperCase(Locale.ROOT))).isZero();
+    assertThat(memberSet.remove(upperCaseId.toLowerCase(Locale.ROOT))).isZero();
+    assertThat(memberSet.remove(upperCaseId)).isEqualTo(1);
+  }
+
+  @Test
+  void add_nullValue_neverMatched() {
+    final CompactMemberSet memberSet = new CompactMemberSet(false, 1);
+
+    assertThat(memberSet.add(null)).isZero();
+    assertThat(memberSet.contains(null)).isFalse();
+    assertThat(memberSet.remove(null)).isZero();
+    assertThat(memberSet.size()).isEqualTo(1);
+  }
+
+  @Test
+  void add_offHeapBeyondExpected_grownAndFound() {
+    try (CompactMemberSet memberSet = new CompactMemberSet(false, 4, true)) {
+      final String[] ids = new String[500];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = UUID.randomUUID().toString();
+        memberSet.add(ids[i]);
+      }
+      memberSet.add("bjensen");
+
+      assertThat(memberSet.offHeap()).isTrue();
+      for (String id : ids) {
+        assertThat(memberSet.contains(id)).isTrue();
+      }
+      assertThat(memberSet.remove(ids[250])).isEqualTo(1);
+      assertThat(memberSet.remove("BJENSEN")).isEqualTo(1);
+      assertThat(memberSet.removed().stream().toArray()).containsExactly(250, 500);
+    }
+  }
+
+  @Test
+  void remove_manyOtherIds_grownAndFound() {
+    final CompactMemberSet memberSet = new CompactMemberSet(false, 4);
+    for (int i = 0; i < 100; i++) {
+      memberSet.add("member-" + i);
+    }
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(memberSet.contains("member-" + i)).isTrue();
+    }
+    assertThat(memberSet.contains("member-100")).isFalse();
+    assertThat(memberSet.remove("member-42")).isEqualTo(1);
+    assertThat(memberSet.removed().stream().toArray()).containsExactly(42);
+    assertThat(memberSet.size()).isEqualTo(99);
+  }
+
+  @Test
+  void new_belowThreshold_onHeap() {
+    try (CompactMemberSet memberSet = new CompactMemberSet(false, 4)) {
+      assertThat(memberSet.offHeap()).isEqualTo(CompactMemberSet.OFF_HEAP_THRESHOLD > 0 && CompactMemberSet.OFF_HEAP_THRESHOLD <= 4);
+    }
+  }
+
+  @Test
+  void close_twice_noFailure() {
+    final CompactMemberSet memberSet = new CompactMemberSet(false, 4, true);
+    memberSet.add(UUID.randomUUID().toString());
+
+    memberSet.close();
+    memberSet.close();
+  }
+
+  @Test
+  void forEach_mixedMembers_attributesRebuilt() {
+    final CompactMemberSet memberSet = new CompactMemberSet(false, 4);
+    final String id = UUID.randomUUID().toString();
+    final String upperCaseId = UUID.randomUUID().toString().toUpperCase(Locale.ROOT);
+    memberSet.add(id, "https://example.com/v2/Users/" + id, "Babs", 0);
+    memberSet.add(upperCaseId, "https://example.com/v2/Users/" + upperCaseId, null, -1);
+    memberSet.add("BJensen", "https://example.com/v2/Users/bjensen", "Barbara", 1);
+    memberSet.addNull();
+    memberSet.add("removed");
+    memberSet.add(null, "https://example.com/v2/Groups/admins", null, 1);
+    memberSet.remove("removed");
+
+    final List<String> members = new ArrayList<>();
+    memberSet.forEach((value, ref, display, type) -> members.add(value + " " + ref + " " + display + " " + type));
+
+    assertThat(members).containsExactly(
+      id + " https://example.com/v2/Users/" + id + " Babs 0",
+      upperCaseId + " https://example.com/v2/Users/" + upperCaseId + " null -1",
+      "BJensen https://example.com/v2/Users/bjensen Barbara 1",
+      "null null null " + CompactMemberSet.NULL_MEMBER_TYPE,
+      "null https://example.com/v2/Groups/admins null 1");
+  }
+
+  @Test
+  void forEach_refTemplatesExhausted_refsKeptAsIs() {
+    final CompactMemberSet memberSet = new CompactMemberSet(true, 4);
+    final String[] refs = new String[CompactMemberSet.MAX_TEMPLATES + 10];
+    for (int i = 0; i < refs.length; i++) {
+      refs[i] = "https://tenant" + i + ".example.com/v2/Users/member-" + i;
+      memberSet.add("member-" + i, refs[i], null, -1);
+    }
+
+    final List<String> actual = new ArrayList<>();
+    memberSet.forEach((value, ref, display, type) -> actual.add(ref));
+
+    assertThat(actual).containsExactly(refs);
+  }
+
+  @Test
+  void forEach_offHeapGrown_membersRebuiltInOrder() {
+    try (CompactMemberSet memberSet = new CompactMemberSet(false, 4, true)) {
+      final List<String> expected = new ArrayList<>();
+      for (int i = 0; i < 2000; i++) {
+        final String id = i % 2 == 0 ? UUID.randomUUID().toString().toUpperCase(Locale.ROOT) : "Member-" + i;
+        final String ref = "https://example.com/v2/Users/" + (i % 3 == 0 ? i : id);
+        memberSet.add(id, ref, "member " + i + " \u00e9", 0);
+        expected.add(id + " " + ref + " member " + i + " \u00e9");
+      }
+      memberSet.remove("member-1");
+      expected.remove(1);
+
+      final List<String> actual = new ArrayList<>();
+      memberSet.forEach((value, ref, display, type) -> actual.add(value + " " + ref + " " + display));
+
+      assertThat(memberSet.offHeap()).isTrue();
+      assertThat(actual).containsExactlyElementsOf(expected);
+    }
+  }
+}
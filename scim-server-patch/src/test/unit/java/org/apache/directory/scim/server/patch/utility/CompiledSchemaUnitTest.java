@@ -0,0 +1,103 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.ResourceReference;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.junit.jupiter.api.Test;
+
+class CompiledSchemaUnitTest {
+
+  @Test
+  void attribute_schemaAttribute_flagsMatch() throws Exception {
+    final Registry registry = createRegistry();
+    final Schema schema = registry.getSchema(ScimUser.SCHEMA_URI);
+    final CompiledSchema compiled = CompiledSchemas.of(registry).schema(ScimUser.SCHEMA_URI);
+
+    for (Schema.Attribute attribute : schema.getAttributes()) {
+      final CompiledAttribute it = compiled.attribute(attribute.getName());
+
+      assertThat(it.attribute()).isSameAs(attribute);
+      assertThat(compiled.attribute(it.slot())).isSameAs(it);
+      assertThat(it.type()).isEqualTo(attribute.getType());
+      assertThat(it.isMultiValued()).isEqualTo(attribute.isMultiValued());
+      assertThat(it.isRequired()).isEqualTo(attribute.isRequired());
+      assertThat(it.isCaseExact()).isEqualTo(attribute.isCaseExact());
+      assertThat(it.isUnmodifiable()).isEqualTo(Schema.Attribute.Mutability.READ_ONLY.equals(attribute.getMutability())
+        || Schema.Attribute.Mutability.IMMUTABLE.equals(attribute.getMutability()));
+    }
+    assertThat(compiled.slots()).isEqualTo(schema.getAttributes().size());
+  }
+
+  @Test
+  void elementClass_multiValuedAttribute_resolvedOnce() throws Exception {
+    final CompiledSchema compiled = CompiledSchemas.of(createRegistry()).schema(ScimUser.SCHEMA_URI);
+
+    assertThat(compiled.attribute("emails").elementClass()).isEqualTo(Email.class);
+    assertThat(compiled.attribute("userName").elementClass()).isNull();
+  }
+
+  @Test
+  void elementClass_generatedMetadata_usedWithoutReflection() throws Exception {
+    assertThat(PatchMetadataIndex.elementClass(ScimUser.SCHEMA_URI, "emails")).isEqualTo(Email.class);
+    assertThat(PatchMetadataIndex.elementClass(ScimGroup.SCHEMA_URI, "members")).isEqualTo(ResourceReference.class);
+    assertThat(PatchMetadataIndex.elementClass(ScimUser.SCHEMA_URI, "userName")).isNull();
+    assertThat(PatchMetadataIndex.elementClass(null, "emails")).isNull();
+  }
+
+  @Test
+  void subAttribute_name_resolvedLikeSchema() throws Exception {
+    final Registry registry = createRegistry();
+    final Schema.Attribute emails = registry.getSchema(ScimUser.SCHEMA_URI).getAttribute("emails");
+    final CompiledAttribute compiled = CompiledSchemas.of(registry).schema(ScimUser.SCHEMA_URI).attribute("emails");
+
+    assertThat(compiled.isMultiValuedComplex()).isTrue();
+    assertThat(compiled.subAttribute("value").attribute()).isSameAs(emails.getAttribute("value"));
+    assertThat(compiled.subAttribute("unknown")).isNull();
+    assertThat(compiled.subAttribute(null)).isNull();
+  }
+
+  @Test
+  void declaring_attributeName_firstSchemaInRegistryOrder() throws Exception {
+    final CompiledSchemas schemas = CompiledSchemas.of(createRegistry());
+
+    assertThat(schemas.declaring("userName").id()).isEqualTo(ScimUser.SCHEMA_URI);
+    assertThat(schemas.declaring("members").id()).isEqualTo(ScimGroup.SCHEMA_URI);
+    assertThat(schemas.declaring("employeeNumber").id()).isEqualTo(EnterpriseExtension.URN);
+    assertThat(schemas.declaring("unknown")).isNull();
+  }
+
+  @Test
+  void declaring_urnQualified_namedSchemaOnly() throws Exception {
+    final CompiledSchemas schemas = CompiledSchemas.of(createRegistry());
+
+    assertThat(schemas.declaring(EnterpriseExtension.URN, "employeeNumber").id()).isEqualTo(EnterpriseExtension.URN);
+    assertThat(schemas.declaring(ScimUser.SCHEMA_URI, "employeeNumber")).isNull();
+    assertThat(schemas.declaring("urn:example:unknown", "userName")).isNull();
+  }
+
+  @Test
+  void declaring_schemaMissingFromSnapshot_foundInRegistry() throws Exception {
+    final Registry registry = createRegistry();
+    final Collection<Schema> all = registry.getAllSchemas();
+    when(registry.getAllSchemas())
+      .thenReturn(Arrays.asList(registry.getSchema(ScimUser.SCHEMA_URI), registry.getSchema(ScimGroup.SCHEMA_URI)));
+    final CompiledSchemas schemas = CompiledSchemas.of(registry);
+    when(registry.getAllSchemas()).thenReturn(all);
+
+    assertThat(schemas.schema(EnterpriseExtension.URN)).isNull();
+    assertThat(schemas.lookup(EnterpriseExtension.URN).id()).isEqualTo(EnterpriseExtension.URN);
+    assertThat(schemas.declaring(null, "employeeNumber").id()).isEqualTo(EnterpriseExtension.URN);
+    assertThat(schemas.declaring(EnterpriseExtension.URN, "employeeNumber").id()).isEqualTo(EnterpriseExtension.URN);
+  }
+}
@@ -15,6 +15,10 @@ import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.Base64;
 import java.util.HashMap;
@@ -24,7 +28,9 @@ import java.time.LocalDateTime;
 
 import org.apache.directory.scim.server.rest.ObjectMapperFactory;
 import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.attribute.AttributeReference;
 import org.apache.directory.scim.spec.protocol.exception.ScimException;
+import org.apache.directory.scim.spec.protocol.filter.AttributeComparisonExpression;
 import org.apache.directory.scim.spec.protocol.filter.CompareOperator;
 import org.apache.directory.scim.spec.schema.Schema;
 import org.junit.jupiter.api.AfterEach;
@@ -67,6 +73,35 @@ class FilterMatchUtilTest {
     assertThat(comparisonExpression(attribute, null,  CompareOperator.EQ, null)).isTrue();
   }
 
+  @Test
+  void testComparisonExpression_withDateTimeStrings() throws ScimException {
+    final Schema.Attribute attribute = mock(Schema.Attribute.class);
+    when(attribute.getType()).thenReturn(Schema.Attribute.Type.DATE_TIME);
+    assertThat(comparisonExpression(attribute, "2008-01-23T04:56:22Z", CompareOperator.LT,
+      "2008-01-23T06:56:22+01:00")).isTrue();
+  }
+
+  @Test
+  void testComparisonExpression_withLongValue() throws ScimException {
+    final Schema.Attribute attribute = mock(Schema.Attribute.class);
+    when(attribute.getType()).thenReturn(Schema.Attribute.Type.INTEGER);
+    assertThat(comparisonExpression(attribute, 42L, CompareOperator.EQ, 42)).isTrue();
+  }
+
+  @Test
+  void matcher_dateTimeFilter_compareValueConvertedOnce() throws ScimException {
+    final Schema.Attribute attribute = mock(Schema.Attribute.class);
+    when(attribute.getType()).thenReturn(Schema.Attribute.Type.DATE_TIME);
+    final AttributeComparisonExpression expression = spy(new AttributeComparisonExpression(
+      new AttributeReference("created"), CompareOperator.LT, "2008-01-23T06:56:22+01:00"));
+
+    final FilterMatchUtil.ElementMatcher matcher = FilterMatchUtil.matcher(attribute, expression);
+
+    assertThat(matcher.matches(ImmutableMap.of("created", "2008-01-23T04:56:22Z"))).isTrue();
+    assertThat(matcher.matches(ImmutableMap.of("created", "2008-01-23T05:56:22Z"))).isFalse();
+    verify(expression, times(1)).getCompareValue();
+  }
+
   @Test
   void testPresent_is() {
     final Map<String, Object> element = ImmutableMap.of("key", "value");
@@ -8,12 +8,17 @@ import static org.apache.directory.scim.test.ScimTestHelper.faker;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import javax.ws.rs.core.Response;
 
 import org.antlr.v4.runtime.misc.Pair;
 import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
 import org.apache.directory.scim.spec.protocol.ErrorMessageType;
 import org.apache.directory.scim.spec.protocol.data.PatchOperation;
 import org.apache.directory.scim.spec.protocol.exception.ScimException;
@@ -104,6 +109,29 @@ class PatchUtilUnitTest {
     assertThat(actual).isEqualTo(schema);
   }
 
+  @Test
+  void checkSchema_pathQualifiedWithSchemaUrn_namedSchemaOnly() throws Exception {
+    final CompiledSchemas schemas = CompiledSchemas.of(registry);
+    final PatchOperation qualified = PatchOperationBuilder.builder()
+      .operation(Type.REPLACE)
+      .path(EnterpriseExtension.URN + ":employeeNumber")
+      .value("701984")
+      .build();
+    final PatchOperation otherSchema = PatchOperationBuilder.builder()
+      .operation(Type.REPLACE)
+      .path(ScimUser.SCHEMA_URI + ":employeeNumber")
+      .value("701984")
+      .build();
+
+    assertThat(PatchUtil.checkSchema(qualified, schemas).id()).isEqualTo(EnterpriseExtension.URN);
+
+    Throwable t = catchThrowable(() -> PatchUtil.checkSchema(otherSchema, schemas));
+    assertScimException(t,
+      Response.Status.BAD_REQUEST,
+      ErrorMessageType.INVALID_PATH,
+      ErrorMessageType.INVALID_PATH.getDetail());
+  }
+
   @Test
   void checkTarget_targetValid_successful() throws Exception {
     PatchOperation patchOperation = PatchOperationBuilder.builder()
@@ -323,4 +351,35 @@ class PatchUtilUnitTest {
     // since the patch isn't applied we should end up with no address elements set to primary
     assertThat(optional).isEmpty();
   }
+
+  @Test
+  void removeMarked_scatteredMarks_unmarkedKeptInOrder() {
+    List<Integer> list = new ArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7));
+    BitSet marked = new BitSet();
+    marked.set(0);
+    marked.set(3);
+    marked.set(4);
+    marked.set(7);
+
+    assertThat(PatchUtil.removeMarked(list, marked)).isEqualTo(4);
+    assertThat(list).containsExactly(1, 2, 5, 6);
+  }
+
+  @Test
+  void removeMarked_nothingMarked_unchanged() {
+    List<Integer> list = new ArrayList<>(Arrays.asList(0, 1, 2));
+
+    assertThat(PatchUtil.removeMarked(list, new BitSet())).isZero();
+    assertThat(list).containsExactly(0, 1, 2);
+  }
+
+  @Test
+  void removeMarked_allMarked_empty() {
+    List<Integer> list = new ArrayList<>(Arrays.asList(0, 1, 2));
+    BitSet marked = new BitSet();
+    marked.set(0, 3);
+
+    assertThat(PatchUtil.removeMarked(list, marked)).isEqualTo(3);
+    assertThat(list).isEmpty();
+  }
 }
@@ -0,0 +1,125 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation;
+import org.apache.directory.scim.spec.protocol.data.PatchOperation.Type;
+import org.apache.directory.scim.test.builder.PatchOperationBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class PrimaryTrackerUnitTest {
+  private static Registry registry;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    registry = createRegistry();
+  }
+
+  @Test
+  void enforce_otherElementPrimary_demoted() throws Exception {
+    final Map<String, Object> resource = resource("home", "work", "other");
+    primary(resource, 0, true);
+    primary(resource, 1, true);
+
+    new PrimaryTracker(registry).enforce(resource, operation("emails[type EQ \"work\"].primary"), null);
+
+    assertThat(primaries(resource)).containsExactly(1);
+  }
+
+  @Test
+  void enforce_noFilter_unchanged() throws Exception {
+    final Map<String, Object> resource = resource("home", "work");
+    primary(resource, 0, true);
+    primary(resource, 1, true);
+
+    new PrimaryTracker(registry).enforce(resource, operation("emails.primary"), null);
+
+    assertThat(primaries(resource)).containsExactly(0, 1);
+  }
+
+  @Test
+  void enforce_aboveThreshold_primariesRemembered() throws Exception {
+    final PrimaryTracker tracker = new PrimaryTracker(registry, 2);
+    final Map<String, Object> resource = resource("home", "work", "other");
+    primary(resource, 2, true);
+
+    tracker.enforce(resource, operation("emails[type EQ \"other\"].primary"), null);
+    assertThat(tracker.remembered("emails")).containsExactly(2);
+
+    // the next operation only reports the element it modified
+    primary(resource, 0, true);
+    tracker.enforce(resource, operation("emails[type EQ \"home\"].primary"), new int[] {0});
+
+    assertThat(primaries(resource)).containsExactly(0);
+    assertThat(tracker.remembered("emails")).containsExactly(0);
+  }
+
+  @Test
+  void enforce_belowThreshold_nothingRemembered() throws Exception {
+    final PrimaryTracker tracker = new PrimaryTracker(registry, 10);
+    final Map<String, Object> resource = resource("home", "work");
+
+    tracker.enforce(resource, operation("emails[type EQ \"home\"].primary"), null);
+
+    assertThat(tracker.remembered("emails")).isNull();
+  }
+
+  @Test
+  void enforce_unfilteredOperation_rememberedDropped() throws Exception {
+    final PrimaryTracker tracker = new PrimaryTracker(registry, 2);
+    final Map<String, Object> resource = resource("home", "work");
+    tracker.enforce(resource, operation("emails[type EQ \"home\"].primary"), null);
+
+    tracker.enforce(resource, operation("emails.display"), null);
+
+    assertThat(tracker.remembered("emails")).isNull();
+  }
+
+  private static PatchOperation operation(final String path) throws Exception {
+    return PatchOperationBuilder.builder()
+      .operation(Type.REPLACE)
+      .path(path)
+      .value(true)
+      .build();
+  }
+
+  private static Map<String, Object> resource(final String... types) {
+    final List<Map<String, Object>> emails = new ArrayList<>();
+    for (String type : types) {
+      final Map<String, Object> email = new HashMap<>();
+      email.put("type", type);
+      email.put("value", type + "@example.com");
+      email.put("primary", false);
+      emails.add(email);
+    }
+
+    final Map<String, Object> resource = new HashMap<>();
+    resource.put("emails", emails);
+    return resource;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void primary(final Map<String, Object> resource, final int index, final boolean primary) {
+    ((List<Map<String, Object>>) resource.get("emails")).get(index).put("primary", primary);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Integer> primaries(final Map<String, Object> resource) {
+    final List<Map<String, Object>> emails = (List<Map<String, Object>>) resource.get("emails");
+    final List<Integer> primaries = new ArrayList<>();
+    for (int i = 0; i < emails.size(); i++) {
+      if (Boolean.TRUE.equals(emails.get(i).get("primary"))) {
+        primaries.add(i);
+      }
+    }
+    return primaries;
+  }
+}
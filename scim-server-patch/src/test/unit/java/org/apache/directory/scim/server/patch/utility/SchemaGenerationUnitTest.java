@@ -0,0 +1,72 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.apache.directory.scim.test.ScimTestHelper.createRegistry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.scim.server.schema.Registry;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.junit.jupiter.api.Test;
+
+class SchemaGenerationUnitTest {
+
+  @Test
+  void of_sameRegistry_sameInstance() throws Exception {
+    final Registry registry = createRegistry();
+
+    assertThat(SchemaGeneration.of(registry)).isSameAs(SchemaGeneration.of(registry));
+  }
+
+  @Test
+  void bump_generationAdvanced() throws Exception {
+    final SchemaGeneration generation = SchemaGeneration.of(createRegistry());
+    final long before = generation.current();
+
+    final long bumped = generation.bump();
+
+    assertThat(bumped).isGreaterThan(before);
+    assertThat(generation.current()).isEqualTo(bumped);
+  }
+
+  @Test
+  void current_schemaRegistered_generationAdvanced() throws Exception {
+    final Registry registry = createRegistry();
+    final SchemaGeneration generation = SchemaGeneration.of(registry);
+    final long before = generation.current();
+    final List<Schema> schemas = new ArrayList<>(registry.getAllSchemas());
+    schemas.add(mock(Schema.class));
+
+    when(registry.getAllSchemas()).thenReturn(schemas);
+
+    assertThat(generation.current()).isGreaterThan(before);
+    assertThat(generation.current()).isEqualTo(generation.current());
+  }
+
+  @Test
+  void current_schemaReplaced_generationAdvanced() throws Exception {
+    final Registry registry = createRegistry();
+    final SchemaGeneration generation = SchemaGeneration.of(registry);
+    final long before = generation.current();
+    final List<Schema> schemas = new ArrayList<>(registry.getAllSchemas());
+    schemas.set(0, mock(Schema.class));
+
+    when(registry.getAllSchemas()).thenReturn(schemas);
+
+    assertThat(generation.current()).isGreaterThan(before);
+  }
+
+  @Test
+  void current_sameSchemasInNewCollection_generationKept() throws Exception {
+    final Registry registry = createRegistry();
+    final SchemaGeneration generation = SchemaGeneration.of(registry);
+    final long before = generation.current();
+
+    when(registry.getAllSchemas()).thenReturn(new ArrayList<>(registry.getAllSchemas()));
+
+    assertThat(generation.current()).isEqualTo(before);
+  }
+}
@@ -0,0 +1,65 @@
+package org.apache.directory.scim.server.patch.utility;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.net.URI;
+import java.time.LocalDateTime;
+
+import org.apache.directory.scim.spec.schema.Schema;
+import org.junit.jupiter.api.Test;
+
+class ValueCoercionUnitTest {
+
+  @Test
+  void coerce_jsonTypes_canonicalTypes() {
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.INTEGER, 42L)).isEqualTo(42);
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.DECIMAL, 42)).isEqualTo(42.0);
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.BOOLEAN, "TRUE")).isEqualTo(Boolean.TRUE);
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.REFERENCE, "https://example.com/Users/1"))
+      .isEqualTo(URI.create("https://example.com/Users/1"));
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.DATE_TIME, "2008-01-23T04:56:22Z"))
+      .isEqualTo(LocalDateTime.of(2008, 1, 23, 4, 56, 22));
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.DATE_TIME, "2008-01-23T05:56:22+01:00"))
+      .isEqualTo(LocalDateTime.of(2008, 1, 23, 4, 56, 22));
+  }
+
+  @Test
+  void coerce_notConvertible_valueReturned() {
+    final Object value = "not a date";
+
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.DATE_TIME, value)).isSameAs(value);
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.INTEGER, Long.MAX_VALUE)).isEqualTo(Long.MAX_VALUE);
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.BOOLEAN, "yes")).isEqualTo("yes");
+  }
+
+  @Test
+  void assignable_dateTime_offsetKept() {
+    final CompiledAttribute dateTime = CompiledAttribute.compile(attribute(Schema.Attribute.Type.DATE_TIME), 0);
+    final CompiledAttribute integer = CompiledAttribute.compile(attribute(Schema.Attribute.Type.INTEGER), 0);
+    final Object value = "2008-01-23T05:56:00+01:00";
+
+    assertThat(ValueCoercion.assignable(dateTime, value)).isSameAs(value);
+    assertThat(ValueCoercion.coerce(dateTime, value)).isEqualTo(LocalDateTime.of(2008, 1, 23, 4, 56));
+    assertThat(ValueCoercion.assignable(integer, 42L)).isEqualTo(42);
+  }
+
+  @Test
+  void coerce_multiValued_elementsConverted() {
+    final List<Object> strings = Arrays.asList("a", "b");
+    final Object integers = ValueCoercion.coerce(Schema.Attribute.Type.INTEGER, true, Arrays.asList(1L, 2));
+
+    assertThat(ValueCoercion.coerce(Schema.Attribute.Type.STRING, true, strings)).isSameAs(strings);
+    assertThat(integers).isEqualTo(Arrays.asList(1, 2));
+  }
+
+  private static Schema.Attribute attribute(final Schema.Attribute.Type type) {
+    final Schema.Attribute attribute = mock(Schema.Attribute.class);
+    when(attribute.getName()).thenReturn("attribute");
+    when(attribute.getType()).thenReturn(type);
+    return attribute;
+  }
+}